@@ -0,0 +1,170 @@
+package com.example.warda_therapist;
+
+import static org.junit.Assert.assertEquals;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Decoding a synthetic 10k-message /chat/history response on a device: the previous
+ * String + org.json path against JsonStreamDecoder. Prints median time, GC count and the
+ * heap held at the end of decoding (the body, tree and records for the old path; only
+ * the records for the streaming one). The only assertion is that both agree.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HistoryDecoderBenchmark {
+    private static final String TAG = "HistoryDecoderBenchmark";
+    private static final int HISTORY_SIZE = 10_000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+
+    @Test
+    public void decodeHistoryOf10kMessages() throws Exception {
+        byte[] payload = syntheticHistory();
+
+        // Both decoders must agree before timings mean anything
+        List<ApiService.ChatHistoryItem> expected = decodeWithOrgJson(payload).items;
+        List<ApiService.ChatHistoryItem> actual = decodeStreaming(payload);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+            assertEquals(expected.get(i).getResponse(), actual.get(i).getResponse());
+            assertEquals(expected.get(i).getTimestampMillis(), actual.get(i).getTimestampMillis());
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            decodeWithOrgJson(payload);
+            decodeStreaming(payload);
+        }
+
+        long[] legacyNanos = new long[MEASURED_ROUNDS];
+        long[] streamingNanos = new long[MEASURED_ROUNDS];
+        long legacyHeld = 0;
+        long streamingHeld = 0;
+
+        // GC counts include the two explicit collections per heap sample, the same for both decoders
+        long gcBefore = gcCount();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long baseline = usedHeapAfterGc();
+            long start = System.nanoTime();
+            LegacyResult result = decodeWithOrgJson(payload);
+            legacyNanos[i] = System.nanoTime() - start;
+            // Everything the old path kept alive at once is still reachable here
+            legacyHeld = Math.max(legacyHeld, usedHeapAfterGc() - baseline);
+            assertEquals(HISTORY_SIZE, result.tree.length());
+            assertEquals(HISTORY_SIZE, result.items.size());
+        }
+        long legacyGcs = gcCount() - gcBefore;
+
+        gcBefore = gcCount();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long baseline = usedHeapAfterGc();
+            long start = System.nanoTime();
+            List<ApiService.ChatHistoryItem> items = decodeStreaming(payload);
+            streamingNanos[i] = System.nanoTime() - start;
+            streamingHeld = Math.max(streamingHeld, usedHeapAfterGc() - baseline);
+            assertEquals(HISTORY_SIZE, items.size());
+        }
+        long streamingGcs = gcCount() - gcBefore;
+
+        Arrays.sort(legacyNanos);
+        Arrays.sort(streamingNanos);
+        report("String + org.json", payload.length, legacyNanos[MEASURED_ROUNDS / 2], legacyHeld, legacyGcs);
+        report("JsonStreamDecoder", payload.length, streamingNanos[MEASURED_ROUNDS / 2], streamingHeld, streamingGcs);
+    }
+
+    private static final class LegacyResult {
+        final String body;
+        final JSONArray tree;
+        final List<ApiService.ChatHistoryItem> items;
+
+        LegacyResult(String body, JSONArray tree, List<ApiService.ChatHistoryItem> items) {
+            this.body = body;
+            this.tree = tree;
+            this.items = items;
+        }
+    }
+
+    // What ApiService used to do: body to String, String to JSONArray, JSONArray to records
+    private static LegacyResult decodeWithOrgJson(byte[] payload) throws JSONException {
+        String body = new String(payload, StandardCharsets.UTF_8);
+        JSONArray jsonArray = new JSONArray(body);
+        List<ApiService.ChatHistoryItem> items = new ArrayList<>();
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject jsonObject = jsonArray.getJSONObject(i);
+            items.add(new ApiService.ChatHistoryItem(
+                    jsonObject.getInt("id"),
+                    jsonObject.getString("query"),
+                    jsonObject.getString("response"),
+                    jsonObject.getString("timestamp")));
+        }
+        return new LegacyResult(body, jsonArray, items);
+    }
+
+    private static List<ApiService.ChatHistoryItem> decodeStreaming(byte[] payload) throws IOException {
+        return JsonStreamDecoder.readHistory(
+                new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8));
+    }
+
+    private static void report(String name, int payloadBytes, long medianNanos, long heldBytes, long gcs) {
+        Log.i(TAG, String.format(Locale.US,
+                "%s: %.1f ms per %d KB history, %.1f MB held at peak, %d GCs over %d rounds",
+                name, medianNanos / 1e6, payloadBytes / 1024, heldBytes / (1024.0 * 1024.0), gcs, MEASURED_ROUNDS));
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount() {
+        String count = Debug.getRuntimeStat("art.gc.gc-count");
+        return count != null ? Long.parseLong(count) : 0;
+    }
+
+    // Backend-shaped history: messages a few minutes apart, with the emotion object the route adds
+    private static byte[] syntheticHistory() throws JSONException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        JSONArray history = new JSONArray();
+        long time = 1_700_000_000L;
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            time += 60L * (1 + (i * 7) % 45);
+            JSONObject emotion = new JSONObject()
+                    .put("emotion", "neutral")
+                    .put("confidence", 0.5)
+                    .put("color", "#34C759");
+            history.put(new JSONObject()
+                    .put("id", i + 1)
+                    .put("query", "I have been feeling a bit anxious about work lately, message " + i)
+                    .put("response", "It sounds like work has been weighing on you. What part of it feels "
+                            + "heaviest right now? Sometimes naming the specific worry helps. (" + i + ")")
+                    .put("timestamp", format.format(new Date(time * 1000L)))
+                    .put("emotion", emotion));
+        }
+        return history.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
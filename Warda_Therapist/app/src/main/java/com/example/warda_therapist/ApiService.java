@@ -4,31 +4,29 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
+import androidx.lifecycle.LifecycleOwner;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-
-// Add these imports if they don't exist
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
 public class ApiService {
     private static final String TAG = "ApiService";
@@ -41,19 +39,41 @@ public class ApiService {
     // IMPORTANT: Change this to your actual server IP if needed
     private static final String BASE_URL = "http://10.0.2.2:8000";
 
-    private final OkHttpClient client;
+    // Messages per request when syncing history
+    private static final int HISTORY_PAGE_SIZE = 100;
+
+    // Ask for MessagePack on history and timeline calls; the backend falls back to JSON
+    private static final boolean PREFER_MSGPACK = true;
+    private static final String ACCEPT_COMPACT = MessagePackDecoder.MEDIA_TYPE + ", application/json;q=0.5";
+
+    // Lets the backend recognise a retried chat message
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    // History lives in ChatHistoryStore, so its pages are kept out of the HTTP cache
+    private static final CacheControl NO_STORE = new CacheControl.Builder().noStore().build();
+
+    private final RequestScheduler scheduler;
+    private final RequestCoalescer coalescer;
+    // Server stage timings are added to the same per-endpoint histograms as the network phases
+    private final NetworkTimings timings;
+    // Calls made for a screen end with it; null for callers that outlive every screen
+    private final CallScope scope;
     private final Context context;
     private final SharedPreferences preferences;
 
     // Constructor with context
     public ApiService(Context context) {
         this.context = context;
-        // Configure OkHttp client with appropriate timeouts
-        client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
+        // Reuse the process-wide OkHttp client so connections and threads outlive this screen
+        HttpClientProvider provider = HttpClientProvider.getInstance(context);
+        // Every network call is ordered by the priority tagged on its request; untagged ones
+        // are treated as data for the visible screen
+        scheduler = provider.getScheduler();
+        // GETs go through the coalescer so concurrent identical requests share one call
+        coalescer = provider.getCoalescer();
+        timings = provider.getTimings();
+        // A screen's calls are cancelled, and their callbacks dropped, when it is destroyed
+        scope = context instanceof LifecycleOwner ? CallScope.of((LifecycleOwner) context) : null;
 
         // Initialize SharedPreferences
         preferences = context.getSharedPreferences("user_prefs", Context.MODE_PRIVATE);
@@ -68,6 +88,67 @@ public class ApiService {
         void onError(String errorMessage);
     }
 
+    // Interface for chat message callbacks carrying the full typed result. statusCode is the
+    // HTTP status of a rejected request, or 0 when no response arrived.
+    public interface ChatResultCallback {
+        void onResponse(ChatResult result);
+        void onError(String errorMessage, int statusCode);
+    }
+
+    // Interface for streamed chat callbacks; statusCode as in ChatResultCallback
+    public interface ChatStreamCallback {
+        void onChunk(String text);
+        void onComplete(ChatResult result);
+        void onError(String errorMessage, int statusCode);
+    }
+
+    // Chat reply model, including the emotion the backend detected for the message
+    public static class ChatResult {
+        private final String query;
+        private final String response;
+        private final String emotionalState;
+        private final float confidence;
+        private final String error;
+        // Backend stage durations in ms (emotion, retrieval, llm, ...); empty if not reported
+        private final Map<String, Double> serverTiming;
+
+        public ChatResult(String query, String response, String emotionalState, float confidence, String error) {
+            this(query, response, emotionalState, confidence, error, Collections.emptyMap());
+        }
+
+        public ChatResult(String query, String response, String emotionalState, float confidence, String error,
+                          Map<String, Double> serverTiming) {
+            this.query = query;
+            this.response = response;
+            this.emotionalState = emotionalState;
+            this.confidence = confidence;
+            this.error = error;
+            this.serverTiming = serverTiming;
+        }
+
+        // serverTiming is the Server-Timing header; streamed replies carry it in the JSON instead
+        static ChatResult fromJson(JSONObject json, String fallbackResponse, String serverTiming) {
+            if (serverTiming == null && !json.isNull("server_timing")) {
+                serverTiming = json.optString("server_timing", null);
+            }
+            return new ChatResult(
+                    json.optString("query", ""),
+                    json.optString("response", fallbackResponse),
+                    json.isNull("emotional_state") ? "neutral" : json.optString("emotional_state", "neutral"),
+                    json.isNull("confidence") ? 0.5f : (float) json.optDouble("confidence", 0.5),
+                    json.isNull("error") ? null : json.optString("error", null),
+                    ServerTiming.parse(serverTiming)
+            );
+        }
+
+        public String getQuery() { return query; }
+        public String getResponse() { return response; }
+        public String getEmotionalState() { return emotionalState; }
+        public float getConfidence() { return confidence; }
+        public String getError() { return error; }
+        public Map<String, Double> getServerTiming() { return serverTiming; }
+    }
+
     // Interface for authentication callbacks
     public interface AuthCallback {
         void onSuccess(int userId, String name, String email);
@@ -86,12 +167,14 @@ public class ApiService {
         private final String message;
         private final String response;
         private final String timestamp;
+        private final long timestampMillis;
 
         public ChatHistoryItem(int id, String message, String response, String timestamp) {
             this.id = id;
             this.message = message;
             this.response = response;
             this.timestamp = timestamp;
+            this.timestampMillis = TimestampCodec.parseEpochMillis(timestamp);
         }
 
         public int getId() {
@@ -109,6 +192,11 @@ public class ApiService {
         public String getTimestamp() {
             return timestamp;
         }
+
+        // Epoch millis, or TimestampCodec.INVALID if the timestamp could not be parsed
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
     }
 
     // Register a new user
@@ -129,10 +217,11 @@ public class ApiService {
 
             Request request = new Request.Builder()
                     .url(url)
+                    .tag(RequestScheduler.Priority.class, RequestScheduler.Priority.INTERACTIVE)
                     .post(body)
                     .build();
 
-            client.newCall(request).enqueue(new Callback() {
+            enqueue(request, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     Log.e(TAG, "Register API call failed: " + e.getMessage(), e);
@@ -189,10 +278,11 @@ public class ApiService {
 
             Request request = new Request.Builder()
                     .url(url)
+                    .tag(RequestScheduler.Priority.class, RequestScheduler.Priority.INTERACTIVE)
                     .post(body)
                     .build();
 
-            client.newCall(request).enqueue(new Callback() {
+            enqueue(request, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     Log.e(TAG, "Login API call failed: " + e.getMessage(), e);
@@ -262,10 +352,11 @@ public class ApiService {
 
             Request request = new Request.Builder()
                     .url(url)
+                    .tag(RequestScheduler.Priority.class, RequestScheduler.Priority.INTERACTIVE)
                     .post(body)
                     .build();
 
-            client.newCall(request).enqueue(new Callback() {
+            enqueue(request, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     Log.e(TAG, "Password reset API call failed: " + e.getMessage(), e);
@@ -307,15 +398,19 @@ public class ApiService {
     }
 
     // Send chat request
-    public void sendChatRequest(String query, ChatCallback callback) {
+    public void sendChatRequest(String query, ChatResultCallback callback) {
+        sendChatRequest(query, preferences.getInt("user_id", -1), null, callback);
+    }
+
+    // Send chat request for the given user. A retried message reuses its idempotency key so the
+    // backend answers it once; pass null to send without one.
+    public void sendChatRequest(String query, int userId, String idempotencyKey, ChatResultCallback callback) {
         try {
             Log.d(TAG, "Preparing to send chat request: " + query);
 
             JSONObject jsonBody = new JSONObject();
             jsonBody.put("query", query);
 
-            // Add user_id if available from SharedPreferences
-            int userId = preferences.getInt("user_id", -1);
             if (userId != -1) {
                 jsonBody.put("user_id", userId);
                 Log.d(TAG, "Including user_id in request: " + userId);
@@ -328,16 +423,20 @@ public class ApiService {
 
             Log.d(TAG, "Making chat request to: " + url);
 
-            Request request = new Request.Builder()
+            Request.Builder builder = new Request.Builder()
                     .url(url)
-                    .post(body)
-                    .build();
+                    .tag(RequestScheduler.Priority.class, RequestScheduler.Priority.INTERACTIVE)
+                    .post(body);
+            if (idempotencyKey != null) {
+                builder.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+            }
+            Request request = builder.build();
 
-            client.newCall(request).enqueue(new Callback() {
+            enqueue(request, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     Log.e(TAG, "Chat API call failed: " + e.getMessage(), e);
-                    callback.onError("Network error: " + e.getMessage());
+                    callback.onError("Network error: " + e.getMessage(), 0);
                 }
 
                 @Override
@@ -348,25 +447,145 @@ public class ApiService {
 
                         if (response.isSuccessful()) {
                             JSONObject jsonResponse = new JSONObject(responseBody);
+                            // Validate the required field before building the typed result
                             String responseText = jsonResponse.getString("response");
-                            Log.d(TAG, "Received successful chat response (length: " + responseText.length() + ")");
-                            callback.onResponse(responseText);
+                            ChatResult result = ChatResult.fromJson(jsonResponse, responseText,
+                                    response.header(ServerTiming.HEADER));
+                            timings.recordServerTiming(call, result.getServerTiming());
+                            Log.d(TAG, "Received successful chat response (length: " + responseText.length()
+                                    + ", emotion: " + result.getEmotionalState() + ")");
+                            callback.onResponse(result);
                         } else {
                             Log.e(TAG, "Chat request failed with code: " + response.code() + ", body: " + responseBody);
-                            callback.onError("Server error: " + response.code());
+                            callback.onError("Server error: " + response.code(), response.code());
                         }
                     } catch (JSONException e) {
                         Log.e(TAG, "JSON parsing error for response: " + responseBody, e);
-                        callback.onError("Response parsing error: " + e.getMessage());
+                        callback.onError("Response parsing error: " + e.getMessage(), 0);
                     }
                 }
             });
         } catch (JSONException e) {
             Log.e(TAG, "JSON creation error", e);
-            callback.onError("Request creation error: " + e.getMessage());
+            callback.onError("Request creation error: " + e.getMessage(), 0);
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error in send chat request", e);
-            callback.onError("Unexpected error: " + e.getMessage());
+            callback.onError("Unexpected error: " + e.getMessage(), 0);
+        }
+    }
+
+    // Send chat request and receive the reply as server-sent events, chunk by chunk
+    public void streamChatRequest(String query, ChatStreamCallback callback) {
+        streamChatRequest(query, preferences.getInt("user_id", -1), null, callback);
+    }
+
+    // Streaming variant of sendChatRequest(String, int, String, ChatResultCallback)
+    public void streamChatRequest(String query, int userId, String idempotencyKey, ChatStreamCallback callback) {
+        try {
+            Log.d(TAG, "Preparing to stream chat request: " + query);
+
+            JSONObject jsonBody = new JSONObject();
+            jsonBody.put("query", query);
+
+            if (userId != -1) {
+                jsonBody.put("user_id", userId);
+            } else {
+                Log.w(TAG, "No user_id found in preferences, sending anonymous request");
+            }
+
+            RequestBody body = RequestBody.create(jsonBody.toString(), JSON);
+            String url = BASE_URL + "/chat/message/stream";
+
+            Log.d(TAG, "Making streaming chat request to: " + url);
+
+            Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .tag(RequestScheduler.Priority.class, RequestScheduler.Priority.INTERACTIVE)
+                    .header("Accept", "text/event-stream")
+                    .post(body);
+            if (idempotencyKey != null) {
+                builder.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+            }
+            Request request = builder.build();
+
+            enqueue(request, new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.e(TAG, "Streaming chat API call failed: " + e.getMessage(), e);
+                    callback.onError("Network error: " + e.getMessage(), 0);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    try {
+                        if (!response.isSuccessful() || response.body() == null) {
+                            Log.e(TAG, "Streaming chat request failed with code: " + response.code());
+                            callback.onError("Server error: " + response.code(), response.code());
+                            return;
+                        }
+
+                        BufferedSource source = response.body().source();
+                        StringBuilder fullResponse = new StringBuilder();
+                        String event = null;
+                        boolean completed = false;
+                        long firstChunkAt = 0;
+                        long startedAt = System.currentTimeMillis();
+
+                        // Minimal SSE reader: "event:" names the next "data:" line, blank lines end an event
+                        String line;
+                        while ((line = source.readUtf8Line()) != null) {
+                            if (line.isEmpty()) {
+                                event = null;
+                                continue;
+                            }
+                            if (line.startsWith("event:")) {
+                                event = line.substring(6).trim();
+                                continue;
+                            }
+                            if (!line.startsWith("data:")) {
+                                continue;
+                            }
+
+                            JSONObject data = new JSONObject(line.substring(5).trim());
+                            if ("done".equals(event)) {
+                                ChatResult result = ChatResult.fromJson(data, fullResponse.toString(),
+                                        response.header(ServerTiming.HEADER));
+                                timings.recordServerTiming(call, result.getServerTiming());
+                                Log.d(TAG, "Chat stream finished (length: " + result.getResponse().length()
+                                        + ", first chunk after " + (firstChunkAt - startedAt) + " ms)");
+                                completed = true;
+                                callback.onComplete(result);
+                                break;
+                            }
+
+                            String token = data.optString("token", "");
+                            if (!token.isEmpty()) {
+                                if (firstChunkAt == 0) {
+                                    firstChunkAt = System.currentTimeMillis();
+                                }
+                                fullResponse.append(token);
+                                callback.onChunk(token);
+                            }
+                        }
+
+                        if (!completed) {
+                            Log.e(TAG, "Chat stream ended without a completion event");
+                            callback.onError("Stream ended unexpectedly", 0);
+                        }
+                    } catch (JSONException e) {
+                        Log.e(TAG, "JSON parsing error in chat stream", e);
+                        callback.onError("Response parsing error: " + e.getMessage(), 0);
+                    } finally {
+                        response.close();
+                    }
+                }
+            });
+        } catch (JSONException e) {
+            Log.e(TAG, "JSON creation error", e);
+            callback.onError("Request creation error: " + e.getMessage(), 0);
+        } catch (Exception e) {
+            Log.e(TAG, "Unexpected error in stream chat request", e);
+            callback.onError("Unexpected error: " + e.getMessage(), 0);
         }
     }
 
@@ -378,10 +597,11 @@ public class ApiService {
 
             Request request = new Request.Builder()
                     .url(url)
+                    .tag(RequestScheduler.Priority.class, RequestScheduler.Priority.BACKGROUND)
                     .get()
                     .build();
 
-            client.newCall(request).enqueue(new Callback() {
+            enqueueShared(request, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
                     Log.e(TAG, "Server health check failed: " + e.getMessage(), e);
@@ -424,92 +644,145 @@ public class ApiService {
         }
     }
 
-    // Get chat history
-    public void getChatHistory(int userId, ChatHistoryCallback callback) {
+    // Request builder that asks for MessagePack when enabled
+    private static Request.Builder compactRequest(String url) {
+        Request.Builder builder = new Request.Builder().url(url);
+        if (PREFER_MSGPACK) {
+            builder.header("Accept", ACCEPT_COMPACT);
+        }
+        return builder;
+    }
+
+    // The backend answers in MessagePack only when asked, so the Content-Type decides the decoder
+    private static boolean isMessagePack(ResponseBody body) {
+        MediaType type = body.contentType();
+        return type != null && (type.subtype().equals("msgpack") || type.subtype().equals("x-msgpack"));
+    }
+
+    private static List<ChatHistoryItem> decodeHistory(ResponseBody body) throws IOException {
+        if (isMessagePack(body)) {
+            return MessagePackDecoder.readHistory(body.source());
+        }
+        return JsonStreamDecoder.readHistory(body.charStream());
+    }
+
+    private static void decodeDashboard(ResponseBody body, DashboardCallback callback) throws IOException {
+        if (isMessagePack(body)) {
+            MessagePackDecoder.readDashboard(body.source(), callback);
+        } else {
+            JsonStreamDecoder.readDashboard(body.charStream(), callback);
+        }
+    }
+
+    // Get one page of chat history. Pass sinceId to page forward or beforeId to page backward (-1 for unset).
+    public void getChatHistoryPage(int userId, int sinceId, int beforeId, int limit, ChatHistoryCallback callback) {
         try {
-            String url = BASE_URL + "/chat/history/" + userId;
-            Log.d(TAG, "Fetching chat history from: " + url);
+            StringBuilder url = new StringBuilder(BASE_URL + "/chat/history/" + userId)
+                    .append("?limit=").append(limit)
+                    .append("&include_emotion=false");
+            if (sinceId >= 0) {
+                url.append("&since_id=").append(sinceId);
+            } else if (beforeId >= 0) {
+                url.append("&before_id=").append(beforeId);
+            }
+            Log.d(TAG, "Fetching chat history page from: " + url);
 
-            Request request = new Request.Builder()
-                    .url(url)
+            Request request = compactRequest(url.toString())
+                    .tag(RequestScheduler.Priority.class, RequestScheduler.Priority.BACKGROUND)
+                    .cacheControl(NO_STORE)
                     .get()
                     .build();
 
-            client.newCall(request).enqueue(new Callback() {
+            enqueueShared(request, new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Chat history API call failed: " + e.getMessage(), e);
+                    Log.e(TAG, "Chat history page API call failed: " + e.getMessage(), e);
                     callback.onError("Network error: " + e.getMessage());
                 }
 
                 @Override
                 public void onResponse(Call call, Response response) throws IOException {
-                    String responseBody = "No response body";
-                    try {
-                        responseBody = response.body() != null ? response.body().string() : "Empty response body";
-                        Log.d(TAG, "Chat history response received (length: " + responseBody.length() + ")");
-
-                        if (response.isSuccessful()) {
-                            JSONArray jsonArray = new JSONArray(responseBody);
-                            List<ChatHistoryItem> historyItems = new ArrayList<>();
-
-                            for (int i = 0; i < jsonArray.length(); i++) {
-                                JSONObject jsonObject = jsonArray.getJSONObject(i);
-                                int id = jsonObject.getInt("id");
-                                String message = jsonObject.getString("query"); // Changed from "message" to "query"
-                                String responseText = jsonObject.getString("response");
-                                String timestamp = jsonObject.getString("timestamp");
-
-                                historyItems.add(new ChatHistoryItem(id, message, responseText, timestamp));
-                            }
-
-                            Log.d(TAG, "Parsed " + historyItems.size() + " chat history items");
-                            callback.onSuccess(historyItems);
+                    try (ResponseBody body = response.body()) {
+                        if (response.isSuccessful() && body != null) {
+                            callback.onSuccess(decodeHistory(body));
                         } else {
-                            Log.e(TAG, "Chat history request failed with code: " + response.code());
+                            Log.e(TAG, "Chat history page request failed with code: " + response.code());
                             callback.onError("Server error: " + response.code());
                         }
-                    } catch (JSONException e) {
-                        Log.e(TAG, "JSON parsing error for response: " + responseBody, e);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Error decoding chat history page: " + e.getMessage(), e);
                         callback.onError("Response parsing error: " + e.getMessage());
                     }
                 }
             });
         } catch (Exception e) {
-            Log.e(TAG, "Unexpected error in get chat history", e);
+            Log.e(TAG, "Unexpected error in get chat history page", e);
             callback.onError("Unexpected error: " + e.getMessage());
         }
     }
 
-    // Session data model
+    // Bring the local history store up to date, fetching only messages newer than the last id seen.
+    // The callback receives a snapshot of the user's complete history, oldest first, on a background
+    // thread; the snapshot copies nothing, so a refresh costs only the messages it fetched.
+    // Reading the last id may load the user's whole file, so it runs on the store's disk thread.
+    public void syncChatHistory(int userId, ChatHistoryCallback callback) {
+        ChatHistoryStore store = ChatHistoryStore.getInstance(context);
+        store.runOnDisk(() -> fetchHistoryPagesSince(userId, store.getLastId(userId), 0, store, callback));
+    }
+
+    private void fetchHistoryPagesSince(int userId, int sinceId, int fetchedSoFar, ChatHistoryStore store,
+                                        ChatHistoryCallback callback) {
+        getChatHistoryPage(userId, sinceId, -1, HISTORY_PAGE_SIZE, new ChatHistoryCallback() {
+            @Override
+            public void onSuccess(List<ChatHistoryItem> page) {
+                // Written on the disk thread, so an OkHttp thread never waits on the file
+                store.runOnDisk(() -> {
+                    store.append(userId, page);
+                    int fetched = fetchedSoFar + page.size();
+
+                    if (page.size() == HISTORY_PAGE_SIZE) {
+                        // Full page, there may be more
+                        fetchHistoryPagesSince(userId, page.get(page.size() - 1).getId(), fetched, store, callback);
+                    } else {
+                        Log.d(TAG, "History sync fetched " + fetched + " new messages, "
+                                + store.size(userId) + " held locally");
+                        callback.onSuccess(store.getAll(userId));
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                callback.onError(errorMessage);
+            }
+        });
+    }
+
+    // Session data model. Title, label and preview are worked out once, when the session is created.
     public static class SessionData {
         private final String title;
         private final String date;
         private final List<ChatHistoryItem> messages;
         private final String formattedDateTime;
+        private final String previewText;
 
+        // date is already a display label (TimestampCodec.SESSION_LABEL), so it is used as-is
         public SessionData(String title, String date, List<ChatHistoryItem> messages) {
+            this(title, date, messages, previewOf(messages));
+        }
+
+        private SessionData(String title, String date, List<ChatHistoryItem> messages, String previewText) {
             this.title = title;
             this.date = date;
             this.messages = messages;
-
-            String formatted = date; // fallback
-            try {
-                Log.d("SessionData", "Original date string: " + date); // DEBUG
-
-                SimpleDateFormat inputFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.US);
-                Date sessionDate = inputFormat.parse(date);
-
-                SimpleDateFormat outputFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.US);
-                assert sessionDate != null;
-                formatted = outputFormat.format(sessionDate);
-            } catch (ParseException e) {
-                Log.e("SessionData", "Date parsing failed for: " + date, e);
-            }
-
-            this.formattedDateTime = formatted;
+            this.formattedDateTime = date;
+            this.previewText = previewText;
         }
 
+        // Same session with more messages; the first message, and so everything derived from it, is unchanged
+        SessionData withMessages(List<ChatHistoryItem> messages) {
+            return new SessionData(title, date, messages, previewText);
+        }
 
         public String getTitle() {
             return title;
@@ -528,6 +801,10 @@ public class ApiService {
         }
 
         public String getPreviewText() {
+            return previewText;
+        }
+
+        private static String previewOf(List<ChatHistoryItem> messages) {
             if (messages != null && !messages.isEmpty()) {
                 String message = messages.get(0).getMessage();
                 if (message.length() > 50) {
@@ -547,71 +824,15 @@ public class ApiService {
 
     // Get chat history grouped into sessions
     public void getSessionHistory(int userId, final SessionHistoryCallback callback) {
-        getChatHistory(userId, new ChatHistoryCallback() {
+        syncChatHistory(userId, new ChatHistoryCallback() {
             @Override
             public void onSuccess(List<ChatHistoryItem> history) {
                 try {
-                    if (history.isEmpty()) {
-                        callback.onSuccess(new ArrayList<>());
-                        return;
-                    }
-
-                    // Group messages by session (using timestamp proximity as a heuristic)
-                    List<SessionData> sessions = new ArrayList<>();
-                    List<ChatHistoryItem> currentSessionItems = new ArrayList<>();
-
-                    // Define session break time (e.g., 30 minutes)
-                    final long SESSION_BREAK_MS = 30 * 60 * 1000;
-                    SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
-                    SimpleDateFormat outputFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.US);
-                    inputFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-                    Date lastMessageTime = null;
-
-                    for (ChatHistoryItem item : history) {
-                        try {
-                            Date currentMessageTime = inputFormat.parse(item.getTimestamp());
-
-                            // Start a new session if this is the first message or too much time has passed
-                            if (lastMessageTime == null ||
-                                    (currentMessageTime.getTime() - lastMessageTime.getTime() > SESSION_BREAK_MS)) {
-
-                                // Save previous session if it exists
-                                if (!currentSessionItems.isEmpty()) {
-                                    ChatHistoryItem firstMsg = currentSessionItems.get(0);
-                                    Date sessionDate = inputFormat.parse(firstMsg.getTimestamp());
-                                    String sessionTitle = "Session: " + outputFormat.format(sessionDate);
-                                    sessions.add(new SessionData(sessionTitle,
-                                            outputFormat.format(sessionDate),
-                                            new ArrayList<>(currentSessionItems)));
-                                    currentSessionItems.clear();
-                                }
-                            }
-
-                            // Add current message to the current session
-                            currentSessionItems.add(item);
-                            lastMessageTime = currentMessageTime;
-
-                        } catch (ParseException e) {
-                            Log.e(TAG, "Error parsing date: " + e.getMessage(), e);
-                        }
-                    }
-
-                    // Don't forget to add the last session
-                    if (!currentSessionItems.isEmpty()) {
-                        try {
-                            ChatHistoryItem firstMsg = currentSessionItems.get(0);
-                            Date sessionDate = inputFormat.parse(firstMsg.getTimestamp());
-                            String sessionTitle = "Session: " + outputFormat.format(sessionDate);
-                            sessions.add(new SessionData(sessionTitle,
-                                    outputFormat.format(sessionDate),
-                                    currentSessionItems));
-                        } catch (ParseException e) {
-                            Log.e(TAG, "Error parsing date for last session: " + e.getMessage(), e);
-                        }
-                    }
-
-                    Log.d(TAG, "Created " + sessions.size() + " sessions from " + history.size() + " messages");
+                    Sessionizer sessionizer = Sessionizer.forUser(userId);
+                    int firstChanged = sessionizer.update(history);
+                    List<SessionData> sessions = sessionizer.getSessions();
+                    Log.d(TAG, "Sessions up to date: " + sessions.size() + " from " + history.size()
+                            + " messages, first changed at " + firstChanged);
                     callback.onSuccess(sessions);
 
                 } catch (Exception e) {
@@ -631,19 +852,15 @@ public class ApiService {
 
     // Interface for emotional state callbacks
     public interface EmotionalStateCallback {
-        void onSuccess(String state, float confidence, String trend, String colorCode, String description);
-        void onError(String errorMessage);
-    }
-
-    // Interface for timeline callbacks
-    public interface TimelineCallback {
-        void onSuccess(List<TimelineEntry> timelineEntries, Map<String, String> summary);
+        void onSuccess(String state, float confidence, String trend, String colorCode, String description,
+                       List<String> recentEmotions);
         void onError(String errorMessage);
     }
 
     // Timeline entry data model
     public static class TimelineEntry {
         private final String timestamp;
+        private final long timestampMillis;
         private final String emotion;
         private final float confidence;
         private final String color;
@@ -653,6 +870,7 @@ public class ApiService {
         public TimelineEntry(String timestamp, String emotion, float confidence,
                              String color, int value, String message) {
             this.timestamp = timestamp;
+            this.timestampMillis = TimestampCodec.parseEpochMillis(timestamp);
             this.emotion = emotion;
             this.confidence = confidence;
             this.color = color;
@@ -662,6 +880,7 @@ public class ApiService {
 
         // Getters
         public String getTimestamp() { return timestamp; }
+        public long getTimestampMillis() { return timestampMillis; }
         public String getEmotion() { return emotion; }
         public float getConfidence() { return confidence; }
         public String getColor() { return color; }
@@ -669,7 +888,7 @@ public class ApiService {
         public String getMessage() { return message; }
     }
 
-    // Get current emotional state
+    // Get current emotional state. A cached copy, if any, is delivered first and then revalidated.
     public void getCurrentEmotionalState(int userId, EmotionalStateCallback callback) {
         try {
             String url = BASE_URL + "/state/current/" + userId;
@@ -680,174 +899,161 @@ public class ApiService {
                     .get()
                     .build();
 
-            client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Emotional state API call failed: " + e.getMessage(), e);
-                    callback.onError("Network error: " + e.getMessage());
-                }
-
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    String responseBody = "No response body";
-                    try {
-                        responseBody = response.body() != null ? response.body().string() : "Empty response body";
-                        Log.d(TAG, "Emotional state response received");
+            getCachedThenRevalidate(request, "Emotional state", response -> {
+                String responseBody = response.body() != null ? response.body().string() : "Empty response body";
 
-                        if (response.isSuccessful()) {
-                            JSONObject jsonObject = new JSONObject(responseBody);
+                if (response.isSuccessful()) {
+                    JSONObject jsonObject = new JSONObject(responseBody);
 
-                            String state = jsonObject.getString("state");
-                            float confidence = (float) jsonObject.getDouble("confidence");
-                            String trend = jsonObject.getString("trend");
-                            String colorCode = jsonObject.getString("color_code");
-                            String description = jsonObject.getString("description");
+                    String state = jsonObject.getString("state");
+                    float confidence = (float) jsonObject.getDouble("confidence");
+                    String trend = jsonObject.getString("trend");
+                    String colorCode = jsonObject.getString("color_code");
+                    String description = jsonObject.getString("description");
 
-                            callback.onSuccess(state, confidence, trend, colorCode, description);
-                        } else {
-                            Log.e(TAG, "Emotional state request failed with code: " + response.code());
-                            callback.onError("Server error: " + response.code());
+                    // Oldest first, as returned by the backend
+                    List<String> recentEmotions = new ArrayList<>();
+                    JSONArray historyArray = jsonObject.optJSONArray("history");
+                    if (historyArray != null) {
+                        for (int i = 0; i < historyArray.length(); i++) {
+                            recentEmotions.add(historyArray.getJSONObject(i).getString("emotion"));
                         }
-                    } catch (JSONException e) {
-                        Log.e(TAG, "JSON parsing error for response: " + responseBody, e);
-                        callback.onError("Response parsing error: " + e.getMessage());
                     }
+
+                    callback.onSuccess(state, confidence, trend, colorCode, description, recentEmotions);
+                } else {
+                    Log.e(TAG, "Emotional state request failed with code: " + response.code());
+                    callback.onError("Server error: " + response.code());
                 }
-            });
+            }, callback::onError);
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error in get emotional state", e);
             callback.onError("Unexpected error: " + e.getMessage());
         }
     }
 
-    // Get emotional state timeline
-    public void getEmotionalTimeline(int userId, int days, TimelineCallback callback) {
+    // Sections of the emotional state dashboard, each delivered as soon as it is decoded.
+    // The order is current state, summary, recommendations, then timeline.
+    public interface DashboardCallback {
+        void onCurrentState(String state, float confidence, String trend, String colorCode, String description);
+        void onSummary(Map<String, String> summary);
+        void onRecommendations(List<String> recommendations);
+        void onTimeline(List<TimelineEntry> timelineEntries);
+        void onError(String errorMessage);
+    }
+
+    // Get the emotional state screen's data in one request. A cached copy, if any, is delivered
+    // first and then revalidated.
+    public void getDashboard(int userId, int days, DashboardCallback callback) {
         try {
-            String url = BASE_URL + "/state/timeline/" + userId + "?days=" + days;
-            Log.d(TAG, "Fetching emotional timeline from: " + url);
+            String url = BASE_URL + "/state/dashboard/" + userId + "?days=" + days;
+            Log.d(TAG, "Fetching dashboard from: " + url);
 
-            Request request = new Request.Builder()
-                    .url(url)
+            Request request = compactRequest(url)
                     .get()
                     .build();
 
-            client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Timeline API call failed: " + e.getMessage(), e);
-                    callback.onError("Network error: " + e.getMessage());
-                }
-
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    String responseBody = "No response body";
-                    try {
-                        responseBody = response.body() != null ? response.body().string() : "Empty response body";
-                        Log.d(TAG, "Timeline response received");
-
-                        if (response.isSuccessful()) {
-                            JSONObject jsonObject = new JSONObject(responseBody);
-                            JSONArray timelineArray = jsonObject.getJSONArray("timeline");
-                            JSONObject summaryObject = jsonObject.getJSONObject("summary");
-
-                            // Parse timeline entries
-                            List<TimelineEntry> timelineEntries = new ArrayList<>();
-                            for (int i = 0; i < timelineArray.length(); i++) {
-                                JSONObject entry = timelineArray.getJSONObject(i);
-                                timelineEntries.add(new TimelineEntry(
-                                        entry.getString("timestamp"),
-                                        entry.getString("emotion"),
-                                        (float) entry.getDouble("confidence"),
-                                        entry.getString("color"),
-                                        entry.getInt("value"),
-                                        entry.getString("short_message")
-                                ));
-                            }
-
-                            // Parse summary
-                            Map<String, String> summary = new HashMap<>();
-                            summary.put("state", summaryObject.getString("state"));
-                            summary.put("trend", summaryObject.getString("trend"));
-                            summary.put("color", summaryObject.getString("color"));
-                            summary.put("description", summaryObject.getString("description"));
-
-                            callback.onSuccess(timelineEntries, summary);
-                        } else {
-                            Log.e(TAG, "Timeline request failed with code: " + response.code());
-                            callback.onError("Server error: " + response.code());
-                        }
-                    } catch (JSONException e) {
-                        Log.e(TAG, "JSON parsing error for response: " + responseBody, e);
-                        callback.onError("Response parsing error: " + e.getMessage());
-                    }
+            getCachedThenRevalidate(request, "Dashboard", response -> {
+                ResponseBody body = response.body();
+                if (response.isSuccessful() && body != null) {
+                    // Sections reach the callback while the rest of the body is still being read
+                    decodeDashboard(body, callback);
+                } else {
+                    Log.e(TAG, "Dashboard request failed with code: " + response.code());
+                    callback.onError("Server error: " + response.code());
                 }
-            });
+            }, callback::onError);
         } catch (Exception e) {
-            Log.e(TAG, "Unexpected error in get timeline", e);
+            Log.e(TAG, "Unexpected error in get dashboard", e);
             callback.onError("Unexpected error: " + e.getMessage());
         }
     }
 
-    // Get recommendations based on emotional state
-    public void getRecommendations(int userId, RecommendationsCallback callback) {
-        try {
-            String url = BASE_URL + "/state/recommendations/" + userId;
-            Log.d(TAG, "Fetching recommendations from: " + url);
+    private void enqueue(Request request, Callback callback) {
+        scheduler.enqueue(inScope(request), callback);
+    }
 
-            Request request = new Request.Builder()
-                    .url(url)
-                    .get()
-                    .build();
+    // GET that may share its network call with an identical one already in flight
+    private void enqueueShared(Request request, Callback callback) {
+        coalescer.enqueue(inScope(request), callback);
+    }
 
-            client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Recommendations API call failed: " + e.getMessage(), e);
-                    callback.onError("Network error: " + e.getMessage());
-                }
+    private Request inScope(Request request) {
+        return scope != null ? request.newBuilder().tag(CallScope.class, scope).build() : request;
+    }
 
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    String responseBody = "No response body";
-                    try {
-                        responseBody = response.body() != null ? response.body().string() : "Empty response body";
-                        Log.d(TAG, "Recommendations response received");
+    // Reads one response; may run twice for a request, first with the cached copy
+    private interface ResponseHandler {
+        void handle(Response response) throws IOException, JSONException;
+    }
 
-                        if (response.isSuccessful()) {
-                            JSONObject jsonObject = new JSONObject(responseBody);
-                            JSONObject currentState = jsonObject.getJSONObject("current_state");
-                            JSONArray recommendationsArray = jsonObject.getJSONArray("recommendations");
-
-                            // Parse current state
-                            String emotion = currentState.getString("emotion");
-                            String trend = currentState.getString("trend");
-
-                            // Parse recommendations
-                            List<String> recommendations = new ArrayList<>();
-                            for (int i = 0; i < recommendationsArray.length(); i++) {
-                                recommendations.add(recommendationsArray.getString(i));
-                            }
+    private interface ErrorHandler {
+        void onError(String errorMessage);
+    }
 
-                            callback.onSuccess(emotion, trend, recommendations);
-                        } else {
-                            Log.e(TAG, "Recommendations request failed with code: " + response.code());
-                            callback.onError("Server error: " + response.code());
-                        }
-                    } catch (JSONException e) {
-                        Log.e(TAG, "JSON parsing error for response: " + responseBody, e);
-                        callback.onError("Response parsing error: " + e.getMessage());
+    /**
+     * GET that answers from the disk cache first, when a stored copy exists, and then
+     * revalidates with the backend. The cache adds If-None-Match from the stored ETag, so an
+     * unchanged resource comes back as a bodiless 304, which is not delivered a second time.
+     */
+    private void getCachedThenRevalidate(Request request, String label, ResponseHandler handler,
+                                         ErrorHandler errorHandler) {
+        AtomicBoolean delivered = new AtomicBoolean(false);
+
+        Request cachedRequest = request.newBuilder()
+                .cacheControl(CacheControl.FORCE_CACHE)
+                .build();
+        enqueue(cachedRequest, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, label + " cache read failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // FORCE_CACHE answers 504 when nothing is stored
+                try (Response cached = response) {
+                    if (cached.isSuccessful() && delivered.compareAndSet(false, true)) {
+                        Log.d(TAG, label + " served from cache, revalidating");
+                        handler.handle(cached);
                     }
+                } catch (IOException | JSONException e) {
+                    // The network response follows anyway
+                    Log.e(TAG, "Error reading cached " + label + ": " + e.getMessage(), e);
                 }
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error in get recommendations", e);
-            callback.onError("Unexpected error: " + e.getMessage());
-        }
-    }
+            }
+        });
 
-    // Interface for recommendations callbacks
-    public interface RecommendationsCallback {
-        void onSuccess(String emotion, String trend, List<String> recommendations);
-        void onError(String errorMessage);
+        enqueueShared(request, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (delivered.get()) {
+                    Log.w(TAG, label + " revalidation failed, keeping cached copy: " + e.getMessage());
+                    return;
+                }
+                Log.e(TAG, label + " API call failed: " + e.getMessage(), e);
+                errorHandler.onError("Network error: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response network = response) {
+                    Response raw = network.networkResponse();
+                    boolean notModified = raw != null && raw.code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+                    if (notModified && delivered.getAndSet(true)) {
+                        Log.d(TAG, label + " not modified");
+                        return;
+                    }
+                    delivered.set(true);
+                    handler.handle(network);
+                } catch (JSONException e) {
+                    Log.e(TAG, "JSON parsing error for " + label + ": " + e.getMessage(), e);
+                    errorHandler.onError("Response parsing error: " + e.getMessage());
+                } catch (IOException e) {
+                    Log.e(TAG, "Error decoding " + label + ": " + e.getMessage(), e);
+                    errorHandler.onError("Response parsing error: " + e.getMessage());
+                }
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.example.warda_therapist;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list that only grows at the end and hands out read-only snapshots in constant time.
+ *
+ * A snapshot keeps the array and size it was taken with. Slots below a snapshot's size are
+ * never written again (growing copies into a new array), so a snapshot stays valid however
+ * much the list grows afterwards. The list itself needs outside synchronization; a snapshot
+ * can be read from any thread it has been safely handed to.
+ */
+final class AppendOnlyList<T> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] elements = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    void add(T element) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = element;
+    }
+
+    void addAll(List<? extends T> more) {
+        for (T element : more) {
+            add(element);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return (T) elements[index];
+    }
+
+    // The elements as they are now
+    List<T> snapshot() {
+        return new Snapshot<>(elements, size, null);
+    }
+
+    // The elements as they are now, followed by one that is not stored, e.g. a session still growing
+    List<T> snapshotWith(T last) {
+        return new Snapshot<>(elements, size, last);
+    }
+
+    private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] elements;
+        private final int stored;
+        private final T last;
+
+        Snapshot(Object[] elements, int stored, T last) {
+            this.elements = elements;
+            this.stored = stored;
+            this.last = last;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+            }
+            return index < stored ? (T) elements[index] : last;
+        }
+
+        @Override
+        public int size() {
+            return last == null ? stored : stored + 1;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.warda_therapist;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.Request;
+
+/**
+ * The calls made on behalf of one screen. Requests are tagged with their scope, and when the
+ * screen is destroyed every call still queued or running in it is cancelled.
+ *
+ * Cancelling also drops the call's callback. The callbacks screens pass to ApiService are
+ * anonymous classes holding the Activity, so once its scope has ended a slow response can
+ * neither touch dead views nor keep the Activity in memory.
+ */
+public final class CallScope {
+    private static final String TAG = "CallScope";
+
+    // Something started in a scope that can be stopped early
+    interface Cancellable {
+        void cancel();
+    }
+
+    private final String name;
+    private final Set<Cancellable> active = new LinkedHashSet<>();
+    private boolean cancelled;
+
+    private CallScope(String name) {
+        this.name = name;
+    }
+
+    // A scope that ends when the owner is destroyed. Must be called on the main thread.
+    public static CallScope of(LifecycleOwner owner) {
+        CallScope scope = new CallScope(owner.getClass().getSimpleName());
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner source) {
+                source.getLifecycle().removeObserver(this);
+                scope.cancel();
+            }
+        });
+        return scope;
+    }
+
+    // Scope a request was tagged with, or null for calls that outlive any screen
+    public static CallScope of(Request request) {
+        return request.tag(CallScope.class);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Track work started in this scope; returns false, without tracking it, if the scope has ended
+    synchronized boolean add(Cancellable work) {
+        if (cancelled) {
+            return false;
+        }
+        active.add(work);
+        return true;
+    }
+
+    synchronized void remove(Cancellable work) {
+        active.remove(work);
+    }
+
+    public void cancel() {
+        List<Cancellable> remaining;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            remaining = new ArrayList<>(active);
+            active.clear();
+        }
+        if (!remaining.isEmpty()) {
+            Log.d(TAG, "Cancelling " + remaining.size() + " calls for " + name);
+        }
+        for (Cancellable work : remaining) {
+            work.cancel();
+        }
+    }
+}
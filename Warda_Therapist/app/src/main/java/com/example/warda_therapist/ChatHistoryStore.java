@@ -0,0 +1,215 @@
+package com.example.warda_therapist;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-device copy of each user's chat history, ordered by message id.
+ *
+ * Every user has an append-only file under files/chat_history. History pages from the
+ * backend are appended as they arrive, so later syncs only need to ask for messages newer
+ * than {@link #getLastId(int)}, and a cold start can render from disk before any network call.
+ */
+public class ChatHistoryStore {
+    private static final String TAG = "ChatHistoryStore";
+    private static final String DIRECTORY = "chat_history";
+    private static final int RECORD_VERSION = 1;
+
+    private static volatile ChatHistoryStore instance;
+
+    private final File directory;
+    private final Map<Integer, AppendOnlyList<ApiService.ChatHistoryItem>> itemsByUser = new HashMap<>();
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+
+    private ChatHistoryStore(Context appContext) {
+        directory = new File(appContext.getFilesDir(), DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create history directory: " + directory);
+        }
+    }
+
+    public static ChatHistoryStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ChatHistoryStore.class) {
+                if (instance == null) {
+                    instance = new ChatHistoryStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Read the user's history from disk off the main thread; the callback runs on a background thread
+    public void loadAsync(int userId, ApiService.ChatHistoryCallback callback) {
+        diskExecutor.execute(() -> {
+            try {
+                callback.onSuccess(getAll(userId));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading local history: " + e.getMessage(), e);
+                callback.onError("Local history error: " + e.getMessage());
+            }
+        });
+    }
+
+    // Run disk-bound work, such as the first getLastId() or append() for a user, on the store's
+    // own thread, after any disk work queued before it
+    public void runOnDisk(Runnable task) {
+        diskExecutor.execute(task);
+    }
+
+    // Append a page sorted by id; items we already hold are skipped. Returns how many were added.
+    public synchronized int append(int userId, List<ApiService.ChatHistoryItem> page) {
+        AppendOnlyList<ApiService.ChatHistoryItem> items = itemsFor(userId);
+        int lastId = items.isEmpty() ? 0 : items.get(items.size() - 1).getId();
+        List<ApiService.ChatHistoryItem> added = new ArrayList<>();
+
+        for (ApiService.ChatHistoryItem item : page) {
+            if (item.getId() > lastId) {
+                added.add(item);
+                lastId = item.getId();
+            }
+        }
+
+        if (!added.isEmpty()) {
+            items.addAll(added);
+            writeRecords(userId, added);
+        }
+        return added.size();
+    }
+
+    // Highest message id held for this user, or 0 when nothing has been synced yet
+    public synchronized int getLastId(int userId) {
+        AppendOnlyList<ApiService.ChatHistoryItem> items = itemsFor(userId);
+        if (items.isEmpty()) {
+            return 0;
+        }
+        return items.get(items.size() - 1).getId();
+    }
+
+    public synchronized int size(int userId) {
+        return itemsFor(userId).size();
+    }
+
+    // Snapshot of the user's history, oldest first. Taking one copies nothing, so it is cheap
+    // however long the history is; later appends do not show up in it.
+    public synchronized List<ApiService.ChatHistoryItem> getAll(int userId) {
+        return itemsFor(userId).snapshot();
+    }
+
+    // Forget the user's history, on disk as well as in memory
+    public synchronized void clear(int userId) {
+        itemsByUser.remove(userId);
+        File file = fileFor(userId);
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Could not delete history file: " + file);
+        }
+    }
+
+    // Lazily loads the user's file the first time they are accessed
+    private AppendOnlyList<ApiService.ChatHistoryItem> itemsFor(int userId) {
+        AppendOnlyList<ApiService.ChatHistoryItem> items = itemsByUser.get(userId);
+        if (items == null) {
+            items = new AppendOnlyList<>();
+            items.addAll(readRecords(userId));
+            itemsByUser.put(userId, items);
+        }
+        return items;
+    }
+
+    private File fileFor(int userId) {
+        return new File(directory, "user_" + userId + ".bin");
+    }
+
+    private List<ApiService.ChatHistoryItem> readRecords(int userId) {
+        List<ApiService.ChatHistoryItem> items = new ArrayList<>();
+        File file = fileFor(userId);
+        if (!file.exists()) {
+            return items;
+        }
+
+        long start = System.currentTimeMillis();
+        boolean truncated = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int version;
+                try {
+                    version = in.readByte();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (version != RECORD_VERSION) {
+                    Log.w(TAG, "Unknown record version " + version + ", ignoring rest of file");
+                    break;
+                }
+                int id = in.readInt();
+                String message = readString(in);
+                String response = readString(in);
+                String timestamp = readString(in);
+                items.add(new ApiService.ChatHistoryItem(id, message, response, timestamp));
+            }
+        } catch (EOFException e) {
+            // A write was cut short; everything before it is intact
+            Log.w(TAG, "Truncated record at end of " + file.getName());
+            truncated = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading history file: " + e.getMessage(), e);
+        }
+
+        if (truncated) {
+            // Drop the partial tail so later appends start on a record boundary
+            if (file.delete()) {
+                writeRecords(userId, items);
+            }
+        }
+
+        Log.d(TAG, "Loaded " + items.size() + " messages for user " + userId
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+        return items;
+    }
+
+    private void writeRecords(int userId, List<ApiService.ChatHistoryItem> records) {
+        File file = fileFor(userId);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for (ApiService.ChatHistoryItem item : records) {
+                out.writeByte(RECORD_VERSION);
+                out.writeInt(item.getId());
+                writeString(out, item.getMessage());
+                writeString(out, item.getResponse());
+                writeString(out, item.getTimestamp());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing history file: " + e.getMessage(), e);
+        }
+    }
+
+    // Length-prefixed UTF-8, since replies can exceed writeUTF's 64 KB limit
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
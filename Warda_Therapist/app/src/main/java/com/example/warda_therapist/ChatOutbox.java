@@ -0,0 +1,434 @@
+package com.example.warda_therapist;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat messages waiting to be answered, kept on disk until the backend has replied.
+ *
+ * Sending a message only queues it; a single drainer thread sends queued messages one at a
+ * time, in order. A failed attempt is retried with exponential backoff and jitter, and no
+ * attempt is made while the device has no network, so nothing waits out a connect timeout
+ * offline. Each message carries an idempotency key for its whole life, so a retry after a
+ * lost response gets the reply the backend already saved rather than a second one.
+ *
+ * A message leaves the queue only once it is answered or the user discards it. Network errors
+ * and 5xx replies are retried for as long as it takes, at the capped backoff; only a 4xx that
+ * a retry cannot fix marks the message failed, and it then waits for retry() or discard().
+ */
+public class ChatOutbox {
+    private static final String TAG = "ChatOutbox";
+    private static final String FILE_NAME = "chat_outbox";
+    private static final int RECORD_VERSION = 1;
+
+    // Stream replies token by token instead of waiting for the whole reply
+    private static final boolean USE_STREAMING_CHAT = true;
+
+    // Backoff between attempts: doubles from the base up to the cap, with jitter
+    private static final long BASE_RETRY_DELAY_MS = 2_000;
+    private static final long MAX_RETRY_DELAY_MS = 5 * 60_000;
+
+    private static volatile ChatOutbox instance;
+
+    // A queued message
+    public static class Entry {
+        public final String key;
+        public final int userId;
+        public final String query;
+        public final long createdAt;
+        // Attempts that failed while online; sets the backoff
+        int attempts;
+        // Rejected by the backend; not sent again until retry()
+        volatile boolean failed;
+
+        Entry(String key, int userId, String query, long createdAt, int attempts, boolean failed) {
+            this.key = key;
+            this.userId = userId;
+            this.query = query;
+            this.createdAt = createdAt;
+            this.attempts = attempts;
+            this.failed = failed;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+
+    // Progress of queued messages; called on background threads
+    public interface Listener {
+        void onSending(Entry entry);
+        void onChunk(Entry entry, String text);
+        void onSent(Entry entry, ApiService.ChatResult result);
+        // Not sent yet; status says why, e.g. waiting for a network
+        void onWaiting(Entry entry, String status);
+        // Rejected; the entry stays queued until retry() or discard()
+        void onFailed(Entry entry, String errorMessage);
+    }
+
+    private final File file;
+    private final ApiService apiService;
+    private final ConnectivityManager connectivityManager;
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    private final Random random = new Random();
+    private final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "warda-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Listener listener;
+
+    // Only touched on the drainer thread
+    private boolean sending;
+    private ScheduledFuture<?> scheduledRetry;
+
+    private ChatOutbox(Context appContext) {
+        file = new File(appContext.getFilesDir(), FILE_NAME);
+        apiService = new ApiService(appContext);
+        connectivityManager = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        queue.addAll(readEntries());
+
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    // Back online: no reason to sit out the rest of a backoff
+                    drainer.execute(() -> {
+                        cancelScheduledRetry();
+                        attemptNext();
+                    });
+                }
+            });
+        }
+
+        if (!queue.isEmpty()) {
+            Log.d(TAG, queue.size() + " queued messages restored");
+        }
+    }
+
+    public static ChatOutbox getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ChatOutbox.class) {
+                if (instance == null) {
+                    instance = new ChatOutbox(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Detach the listener, unless another one has replaced it since
+    public void removeListener(Listener listener) {
+        if (this.listener == listener) {
+            this.listener = null;
+        }
+    }
+
+    // Queue a message for the user; call drain() to start sending
+    public Entry enqueue(int userId, String query) {
+        Entry entry = new Entry(UUID.randomUUID().toString(), userId, query, System.currentTimeMillis(), 0, false);
+        synchronized (this) {
+            queue.addLast(entry);
+        }
+        drainer.execute(this::persist);
+        return entry;
+    }
+
+    // Send whatever is queued, unless a send is already under way
+    public void drain() {
+        drainer.execute(this::attemptNext);
+    }
+
+    // Send a failed message again, from a fresh backoff
+    public void retry(Entry entry) {
+        drainer.execute(() -> {
+            entry.failed = false;
+            entry.attempts = 0;
+            persist();
+            attemptNext();
+        });
+    }
+
+    // Drop a queued message the user no longer wants sent
+    public void discard(Entry entry) {
+        drainer.execute(() -> remove(entry));
+    }
+
+    // Messages still waiting for a reply, oldest first, failed ones included
+    public synchronized List<Entry> getPending(int userId) {
+        List<Entry> pending = new ArrayList<>();
+        for (Entry entry : queue) {
+            if (entry.userId == userId) {
+                pending.add(entry);
+            }
+        }
+        return pending;
+    }
+
+    // Drop a user's queued messages, e.g. on logout
+    public void clear(int userId) {
+        synchronized (this) {
+            queue.removeIf(entry -> entry.userId == userId);
+        }
+        drainer.execute(this::persist);
+    }
+
+    private void attemptNext() {
+        Entry entry = firstUnfailed();
+        if (sending || entry == null) {
+            return;
+        }
+
+        if (!isOnline()) {
+            Log.d(TAG, "Offline, holding " + entry.key + " until a network is available");
+            notifyWaiting(entry, "Waiting for network");
+            return;
+        }
+
+        sending = true;
+        Listener current = listener;
+        if (current != null) {
+            current.onSending(entry);
+        }
+        Log.d(TAG, "Sending queued message " + entry.key + " (attempt " + (entry.attempts + 1) + ")");
+
+        if (USE_STREAMING_CHAT) {
+            apiService.streamChatRequest(entry.query, entry.userId, entry.key, new ApiService.ChatStreamCallback() {
+                @Override
+                public void onChunk(String text) {
+                    Listener current = listener;
+                    if (current != null) {
+                        current.onChunk(entry, text);
+                    }
+                }
+
+                @Override
+                public void onComplete(ApiService.ChatResult result) {
+                    drainer.execute(() -> onAttemptSucceeded(entry, result));
+                }
+
+                @Override
+                public void onError(String errorMessage, int statusCode) {
+                    drainer.execute(() -> onAttemptFailed(entry, errorMessage, statusCode));
+                }
+            });
+        } else {
+            apiService.sendChatRequest(entry.query, entry.userId, entry.key, new ApiService.ChatResultCallback() {
+                @Override
+                public void onResponse(ApiService.ChatResult result) {
+                    drainer.execute(() -> onAttemptSucceeded(entry, result));
+                }
+
+                @Override
+                public void onError(String errorMessage, int statusCode) {
+                    drainer.execute(() -> onAttemptFailed(entry, errorMessage, statusCode));
+                }
+            });
+        }
+    }
+
+    // A failed message waits for the user without holding up the ones after it
+    private synchronized Entry firstUnfailed() {
+        for (Entry entry : queue) {
+            if (!entry.failed) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void onAttemptSucceeded(Entry entry, ApiService.ChatResult result) {
+        sending = false;
+        remove(entry);
+        Listener current = listener;
+        if (current != null) {
+            current.onSent(entry, result);
+        }
+        attemptNext();
+    }
+
+    private void onAttemptFailed(Entry entry, String errorMessage, int statusCode) {
+        sending = false;
+
+        if (isPermanent(statusCode)) {
+            Log.e(TAG, "Backend rejected " + entry.key + ": " + errorMessage);
+            entry.failed = true;
+            persist();
+            Listener current = listener;
+            if (current != null) {
+                current.onFailed(entry, errorMessage);
+            }
+            attemptNext();
+            return;
+        }
+
+        if (!isOnline()) {
+            // Offline failures do not grow the backoff; the network callback resumes the queue
+            notifyWaiting(entry, "Waiting for network");
+            return;
+        }
+
+        entry.attempts++;
+        persist();
+
+        long delay = retryDelay(entry.attempts);
+        Log.w(TAG, "Attempt " + entry.attempts + " for " + entry.key + " failed (" + errorMessage
+                + "), retrying in " + delay + " ms");
+        notifyWaiting(entry, "Not sent, retrying in " + Math.max(1, delay / 1000) + "s");
+        cancelScheduledRetry();
+        scheduledRetry = drainer.schedule(this::attemptNext, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // A 4xx means the request itself is wrong, except timeouts, rate limits and 409, which the
+    // backend sends while an earlier attempt with the same key is still being answered
+    private static boolean isPermanent(int statusCode) {
+        return statusCode >= 400 && statusCode < 500
+                && statusCode != 408 && statusCode != 409 && statusCode != 429;
+    }
+
+    // Exponential backoff with "equal jitter": half the step is fixed, the other half random,
+    // so retries from many clients spread out without ever retrying immediately
+    private long retryDelay(int attempts) {
+        long step = Math.min(MAX_RETRY_DELAY_MS, BASE_RETRY_DELAY_MS << Math.min(attempts - 1, 20));
+        long half = step / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+
+    private void cancelScheduledRetry() {
+        if (scheduledRetry != null) {
+            scheduledRetry.cancel(false);
+            scheduledRetry = null;
+        }
+    }
+
+    private void notifyWaiting(Entry entry, String status) {
+        Listener current = listener;
+        if (current != null) {
+            current.onWaiting(entry, status);
+        }
+    }
+
+    private boolean isOnline() {
+        if (connectivityManager == null) {
+            return true;
+        }
+        Network network = connectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? connectivityManager.getNetworkCapabilities(network) : null;
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    private void remove(Entry entry) {
+        synchronized (this) {
+            Iterator<Entry> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == entry) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        persist();
+    }
+
+    // Rewrite the whole queue; it only ever holds a few messages. Runs on the drainer thread.
+    private void persist() {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(queue);
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (Entry entry : snapshot) {
+                out.writeByte(RECORD_VERSION);
+                writeString(out, entry.key);
+                out.writeInt(entry.userId);
+                writeString(out, entry.query);
+                out.writeLong(entry.createdAt);
+                out.writeInt(entry.attempts);
+                out.writeBoolean(entry.failed);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing outbox: " + e.getMessage(), e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Could not replace outbox file " + file);
+        }
+    }
+
+    private List<Entry> readEntries() {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists()) {
+            return entries;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int version;
+                try {
+                    version = in.readUnsignedByte();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (version != RECORD_VERSION) {
+                    Log.w(TAG, "Unknown outbox record version " + version + ", ignoring the rest");
+                    break;
+                }
+                entries.add(new Entry(readString(in), in.readInt(), readString(in), in.readLong(), in.readInt(),
+                        in.readBoolean()));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading outbox: " + e.getMessage(), e);
+        }
+        return entries;
+    }
+
+    // Length-prefixed UTF-8, since a pasted message can exceed writeUTF's 64 KB limit
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.warda_therapist;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * On-device guess at the emotion of a message, shown on the emotional state card the moment
+ * the message is sent. The backend's label replaces it when the reply arrives.
+ *
+ * Mirrors analyze_message_emotion in enhanced_rag.py: the same seven labels, and the same
+ * keyword overrides (shared with KeywordScreen) checked in the same order with the same 0.9
+ * confidence. The backend
+ * compares the message with its prototype phrases using sentence embeddings; here those
+ * phrases are reduced to a weighted word and two-word lexicon, which is scored in one pass
+ * over the message, in microseconds. A cue preceded by a negation ("not happy", "don't
+ * worry") counts towards the opposite side instead.
+ */
+public final class EmotionClassifier {
+
+    public static final String DISTRESSED = "distressed";
+    public static final String SAD = "sad";
+    public static final String ANXIOUS = "anxious";
+    public static final String ANGRY = "angry";
+    public static final String NEUTRAL = "neutral";
+    public static final String CONTENT = "content";
+    public static final String HOPEFUL = "hopeful";
+
+    // Order matters only for ties, which go to the earlier label
+    private static final String[] LABELS = {DISTRESSED, SAD, ANXIOUS, ANGRY, NEUTRAL, CONTENT, HOPEFUL};
+    private static final int NEUTRAL_INDEX = 4;
+    private static final int SAD_INDEX = 1;
+
+    private static final float KEYWORD_CONFIDENCE = 0.9f;
+
+    // Same fallback as the backend when nothing matches
+    private static final float NEUTRAL_CONFIDENCE = 0.5f;
+    // Lexicon guesses stay below the keyword confidence; they are only a preview
+    private static final float MAX_LEXICON_CONFIDENCE = 0.8f;
+
+    private static final String[] NEGATIONS = {"not", "no", "never", "don't", "dont", "isn't", "isnt",
+            "wasn't", "aren't", "can't", "cant", "won't", "didn't", "doesn't", "hardly"};
+
+    // Cue to label index and weight; two-word cues are keyed "first second"
+    private static final Map<String, Cue> LEXICON = new HashMap<>();
+
+    static {
+        // From the backend's prototype phrases, plus close synonyms
+        add(DISTRESSED, 1.5f, "breakdown", "falling apart", "lowest point", "can't take", "cant take",
+                "overwhelmed", "unbearable", "desperate", "can't cope", "cant cope", "terrible", "hopeless");
+        add(SAD, 1f, "sad", "unhappy", "depressed", "empty", "lonely", "alone", "crying", "cry", "cried",
+                "upset", "miserable", "hurt", "hurting", "heartbroken", "grief", "grieving", "feeling down");
+        add(SAD, 0.5f, "down", "tired", "lost");
+        add(ANXIOUS, 1f, "worried", "worry", "worrying", "anxious", "anxiety", "nervous", "panicking",
+                "panic", "scared", "afraid", "stressed", "stress", "overthinking", "fear", "terrified", "uneasy");
+        add(ANGRY, 1f, "angry", "frustrated", "frustrating", "irritated", "furious", "hate", "annoyed",
+                "mad", "rage", "resent", "pissed", "fed up");
+        add(NEUTRAL, 0.75f, "okay", "ok", "normal", "alright", "just here", "don't feel", "nothing much");
+        add(NEUTRAL, 0.5f, "fine");
+        add(CONTENT, 1f, "happy", "good", "content", "great", "glad", "calm", "relaxed", "grateful",
+                "peaceful", "doing well", "feel good");
+        add(CONTENT, 0.5f, "fine", "well");
+        add(HOPEFUL, 1f, "hopeful", "optimistic", "hope", "progress", "looking forward", "improving",
+                "getting better", "excited", "motivated", "future");
+        add(HOPEFUL, 0.5f, "better");
+    }
+
+    private EmotionClassifier() {
+    }
+
+    public static final class Prediction {
+        public final String emotion;
+        public final float confidence;
+
+        Prediction(String emotion, float confidence) {
+            this.emotion = emotion;
+            this.confidence = confidence;
+        }
+    }
+
+    public static Prediction classify(String message) {
+        if (message == null || message.isEmpty()) {
+            return new Prediction(NEUTRAL, NEUTRAL_CONFIDENCE);
+        }
+        return classify(message, KeywordScreen.scan(message));
+    }
+
+    // For a message already scanned by KeywordScreen
+    public static Prediction classify(String message, long keywords) {
+        String override = KeywordScreen.emotionOverride(keywords);
+        if (override != null) {
+            return new Prediction(override, KEYWORD_CONFIDENCE);
+        }
+
+        // Typed apostrophes vary by keyboard
+        return scoreLexicon(message.toLowerCase(Locale.ROOT).replace('\u2019', '\''));
+    }
+
+    private static Prediction scoreLexicon(String text) {
+        float[] scores = new float[LABELS.length];
+        String previous = null;
+        String beforePrevious = null;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // Words are runs of letters and apostrophes
+            while (i < length && !isWordChar(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            // Quotes around a word are not part of it
+            int end = i;
+            while (start < end && text.charAt(start) == '\'') {
+                start++;
+            }
+            while (end > start && text.charAt(end - 1) == '\'') {
+                end--;
+            }
+            if (start == end) {
+                continue;
+            }
+            String word = text.substring(start, end);
+
+            boolean negated = isNegation(previous) || isNegation(beforePrevious);
+            Cue cue = LEXICON.get(word);
+            if (cue != null) {
+                score(scores, cue, negated);
+            }
+            if (previous != null) {
+                Cue pair = LEXICON.get(previous + " " + word);
+                if (pair != null) {
+                    // The pair's own first word may be the negation ("can't take")
+                    score(scores, pair, isNegation(beforePrevious));
+                }
+            }
+            beforePrevious = previous;
+            previous = word;
+        }
+
+        int best = NEUTRAL_INDEX;
+        float bestScore = 0;
+        float total = 0;
+        for (int label = 0; label < scores.length; label++) {
+            total += scores[label];
+            if (scores[label] > bestScore) {
+                bestScore = scores[label];
+                best = label;
+            }
+        }
+        if (bestScore == 0) {
+            return new Prediction(NEUTRAL, NEUTRAL_CONFIDENCE);
+        }
+        // Grows with the winner's share of the evidence
+        float confidence = NEUTRAL_CONFIDENCE + (MAX_LEXICON_CONFIDENCE - NEUTRAL_CONFIDENCE) * (bestScore / total);
+        return new Prediction(LABELS[best], confidence);
+    }
+
+    // A negated negative cue reads as neutral, a negated positive one as sad
+    private static void score(float[] scores, Cue cue, boolean negated) {
+        if (!negated) {
+            scores[cue.label] += cue.weight;
+        } else if (cue.label < NEUTRAL_INDEX) {
+            scores[NEUTRAL_INDEX] += cue.weight / 2;
+        } else if (cue.label > NEUTRAL_INDEX) {
+            scores[SAD_INDEX] += cue.weight / 2;
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetter(c) || c == '\'';
+    }
+
+    private static boolean isNegation(String word) {
+        if (word == null) {
+            return false;
+        }
+        for (String negation : NEGATIONS) {
+            if (negation.equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void add(String label, float weight, String... cues) {
+        int index = indexOf(label);
+        for (String cue : cues) {
+            Cue existing = LEXICON.get(cue);
+            // A cue listed under two labels keeps the stronger one
+            if (existing == null || existing.weight < weight) {
+                LEXICON.put(cue, new Cue(index, weight));
+            }
+        }
+    }
+
+    private static int indexOf(String label) {
+        for (int i = 0; i < LABELS.length; i++) {
+            if (LABELS[i].equals(label)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown emotion " + label);
+    }
+
+    private static final class Cue {
+        final int label;
+        final float weight;
+
+        Cue(int label, float weight) {
+            this.label = label;
+            this.weight = weight;
+        }
+    }
+}
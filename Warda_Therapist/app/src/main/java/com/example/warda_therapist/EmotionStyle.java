@@ -0,0 +1,86 @@
+package com.example.warda_therapist;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client-side copy of the emotion colours, descriptions and trend rule used by
+ * state_tracking_routes.py, so the emotional state card can be updated from a chat
+ * reply without another round trip.
+ */
+public final class EmotionStyle {
+
+    public static final String DEFAULT_COLOR = "#34C759";
+
+    private static final Map<String, String> COLORS = new HashMap<>();
+    private static final Map<String, String> DESCRIPTIONS = new HashMap<>();
+    private static final Map<String, String> TREND_DESCRIPTIONS = new HashMap<>();
+    private static final Map<String, Integer> VALUES = new HashMap<>();
+
+    static {
+        COLORS.put("distressed", "#FF3B30");
+        COLORS.put("sad", "#FF9500");
+        COLORS.put("anxious", "#FFCC00");
+        COLORS.put("angry", "#FF6347");
+        COLORS.put("neutral", "#34C759");
+        COLORS.put("content", "#30B0C7");
+        COLORS.put("hopeful", "#5856D6");
+
+        DESCRIPTIONS.put("distressed", "You appear to be experiencing significant distress. It's important to be gentle with yourself during difficult times.");
+        DESCRIPTIONS.put("sad", "You seem to be feeling down or sad. Remember that all emotions are valid and temporary.");
+        DESCRIPTIONS.put("anxious", "Your messages suggest you may be feeling anxious or worried. This is a common response to uncertainty.");
+        DESCRIPTIONS.put("angry", "You appear to be feeling frustrated or angry. These emotions often signal that something important to you is being affected.");
+        DESCRIPTIONS.put("neutral", "Your emotional state appears balanced at the moment.");
+        DESCRIPTIONS.put("content", "You seem to be in a positive emotional state. It's wonderful to recognize and appreciate these moments.");
+        DESCRIPTIONS.put("hopeful", "Your messages reflect a sense of hope and optimism. This resilience is a powerful resource.");
+
+        TREND_DESCRIPTIONS.put("improving", "Your emotional wellbeing appears to be improving over recent conversations.");
+        TREND_DESCRIPTIONS.put("stable", "Your emotional state has been relatively stable recently.");
+        TREND_DESCRIPTIONS.put("declining", "There seems to be an increase in challenging emotions in recent conversations.");
+
+        VALUES.put("distressed", -3);
+        VALUES.put("sad", -2);
+        VALUES.put("anxious", -1);
+        VALUES.put("angry", -1);
+        VALUES.put("neutral", 0);
+        VALUES.put("content", 1);
+        VALUES.put("hopeful", 2);
+    }
+
+    private EmotionStyle() {
+    }
+
+    public static String colorFor(String emotion) {
+        String color = COLORS.get(emotion);
+        return color != null ? color : DEFAULT_COLOR;
+    }
+
+    public static int valueOf(String emotion) {
+        Integer value = VALUES.get(emotion);
+        return value != null ? value : 0;
+    }
+
+    // Same text the /state/current route builds: emotion description followed by trend description
+    public static String describe(String emotion, String trend) {
+        String emotionDesc = DESCRIPTIONS.containsKey(emotion) ? DESCRIPTIONS.get(emotion) : "";
+        String trendDesc = TREND_DESCRIPTIONS.containsKey(trend) ? TREND_DESCRIPTIONS.get(trend) : "";
+        return (emotionDesc + " " + trendDesc).trim();
+    }
+
+    // Mirrors track_emotional_state: compare the newest of the last three emotions with the oldest
+    public static String trendOf(List<String> emotions) {
+        int size = emotions.size();
+        if (size < 3) {
+            return "stable";
+        }
+        int newest = valueOf(emotions.get(size - 1));
+        int oldest = valueOf(emotions.get(size - 3));
+        if (newest > oldest) {
+            return "improving";
+        } else if (newest < oldest) {
+            return "declining";
+        }
+        return "stable";
+    }
+}
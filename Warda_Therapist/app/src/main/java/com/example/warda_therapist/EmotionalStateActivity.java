@@ -24,14 +24,9 @@ import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
 
 public class EmotionalStateActivity extends AppCompatActivity {
     private static final String TAG = "EmotionalStateActivity";
@@ -65,8 +60,7 @@ public class EmotionalStateActivity extends AppCompatActivity {
         setupChart();
 
         // Load data
-        loadEmotionalTimeline();
-        loadRecommendations();
+        loadDashboard();
     }
 
     private void setupChart() {
@@ -100,7 +94,8 @@ public class EmotionalStateActivity extends AppCompatActivity {
         chart.getLegend().setEnabled(false);
     }
 
-    private void loadEmotionalTimeline() {
+    // One request for the whole screen; each section is drawn as soon as it is decoded
+    private void loadDashboard() {
         try {
             int userId = preferences.getInt("user_id", -1);
             if (userId == -1) {
@@ -109,25 +104,46 @@ public class EmotionalStateActivity extends AppCompatActivity {
                 return;
             }
 
-            apiService.getEmotionalTimeline(userId, 7, new ApiService.TimelineCallback() {
+            apiService.getDashboard(userId, 7, new ApiService.DashboardCallback() {
                 @Override
-                public void onSuccess(List<ApiService.TimelineEntry> timelineEntries, Map<String, String> summary) {
+                public void onCurrentState(String state, float confidence, String trend, String colorCode,
+                                           String description) {
                     runOnUiThread(() -> {
                         try {
-                            updateChart(timelineEntries);
+                            updateCurrentState(state, confidence, trend, colorCode, description);
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error updating current state: " + e.getMessage(), e);
+                        }
+                    });
+                }
 
-                            // Update summary info
-                            TextView tvSummaryState = findViewById(R.id.tvSummaryState);
-                            TextView tvSummaryDescription = findViewById(R.id.tvSummaryDescription);
+                @Override
+                public void onSummary(Map<String, String> summary) {
+                    runOnUiThread(() -> {
+                        try {
+                            updateSummary(summary);
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error updating summary: " + e.getMessage(), e);
+                        }
+                    });
+                }
 
-                            if (tvSummaryState != null && summary.containsKey("state")) {
-                                String state = summary.get("state");
-                                tvSummaryState.setText("Current State: " + capitalize(state));
-                            }
+                @Override
+                public void onRecommendations(List<String> recommendations) {
+                    runOnUiThread(() -> {
+                        try {
+                            updateRecommendations(recommendations);
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error updating recommendations: " + e.getMessage(), e);
+                        }
+                    });
+                }
 
-                            if (tvSummaryDescription != null && summary.containsKey("description")) {
-                                tvSummaryDescription.setText(summary.get("description"));
-                            }
+                @Override
+                public void onTimeline(List<ApiService.TimelineEntry> timelineEntries) {
+                    runOnUiThread(() -> {
+                        try {
+                            updateChart(timelineEntries);
                         } catch (Exception e) {
                             Log.e(TAG, "Error updating chart: " + e.getMessage(), e);
                         }
@@ -138,15 +154,48 @@ public class EmotionalStateActivity extends AppCompatActivity {
                 public void onError(String errorMessage) {
                     runOnUiThread(() -> {
                         Toast.makeText(EmotionalStateActivity.this,
-                                "Error loading timeline: " + errorMessage, Toast.LENGTH_SHORT).show();
+                                "Error loading emotional state: " + errorMessage, Toast.LENGTH_SHORT).show();
                     });
                 }
             });
         } catch (Exception e) {
-            Log.e(TAG, "Error loading emotional timeline: " + e.getMessage(), e);
+            Log.e(TAG, "Error loading dashboard: " + e.getMessage(), e);
+        }
+    }
+
+    // The state over the backend's recent window, as on the chat screen's card
+    private void updateCurrentState(String state, float confidence, String trend, String colorCode,
+                                    String description) {
+        TextView tvSummaryState = findViewById(R.id.tvSummaryState);
+        EmotionalStateView currentStateView = findViewById(R.id.currentStateView);
+        TextView tvSummaryDescription = findViewById(R.id.tvSummaryDescription);
+
+        if (tvSummaryState != null) {
+            tvSummaryState.setText("Current State: " + capitalize(state));
+        }
+        if (currentStateView != null) {
+            currentStateView.updateState(state, confidence, trend, colorCode);
+        }
+        if (tvSummaryDescription != null) {
+            tvSummaryDescription.setText(description);
         }
     }
 
+    // The prevailing state over the timeline's days, shown under the chart's heading
+    private void updateSummary(Map<String, String> summary) {
+        TextView tvTimelineSummary = findViewById(R.id.tvTimelineSummary);
+        if (tvTimelineSummary == null || !summary.containsKey("state")) {
+            return;
+        }
+
+        String text = "Mostly " + capitalize(summary.get("state"));
+        if (summary.containsKey("trend")) {
+            text += ", " + summary.get("trend");
+        }
+        tvTimelineSummary.setText(text);
+        tvTimelineSummary.setVisibility(View.VISIBLE);
+    }
+
     private void updateChart(List<ApiService.TimelineEntry> entries) {
         if (entries.isEmpty()) {
             chart.setNoDataText("No emotional data available");
@@ -155,19 +204,16 @@ public class EmotionalStateActivity extends AppCompatActivity {
 
         List<Entry> chartEntries = new ArrayList<>();
         List<String> labels = new ArrayList<>();
-        SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
-        SimpleDateFormat outputFormat = new SimpleDateFormat("MM/dd HH:mm", Locale.US);
-        inputFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
 
         for (int i = 0; i < entries.size(); i++) {
             ApiService.TimelineEntry entry = entries.get(i);
             chartEntries.add(new Entry(i, entry.getValue()));
 
             // Format date for label
-            try {
-                Date date = inputFormat.parse(entry.getTimestamp());
-                labels.add(outputFormat.format(date));
-            } catch (ParseException e) {
+            long timestampMillis = entry.getTimestampMillis();
+            if (timestampMillis != TimestampCodec.INVALID) {
+                labels.add(TimestampCodec.CHART_LABEL.format(timestampMillis));
+            } else {
                 labels.add(""); // Empty label on error
             }
         }
@@ -196,35 +242,6 @@ public class EmotionalStateActivity extends AppCompatActivity {
         chart.invalidate();
     }
 
-    private void loadRecommendations() {
-        try {
-            int userId = preferences.getInt("user_id", -1);
-            if (userId == -1) {
-                return;
-            }
-
-            apiService.getRecommendations(userId, new ApiService.RecommendationsCallback() {
-                @Override
-                public void onSuccess(String emotion, String trend, List<String> recommendations) {
-                    runOnUiThread(() -> {
-                        try {
-                            updateRecommendations(recommendations);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error updating recommendations: " + e.getMessage(), e);
-                        }
-                    });
-                }
-
-                @Override
-                public void onError(String errorMessage) {
-                    Log.e(TAG, "Error loading recommendations: " + errorMessage);
-                }
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Error loading recommendations: " + e.getMessage(), e);
-        }
-    }
-
     private void updateRecommendations(List<String> recommendations) {
         if (recommendationsContainer == null) {
             return;
@@ -0,0 +1,208 @@
+package com.example.warda_therapist;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Process-wide holder for the OkHttpClient used by every ApiService instance.
+ *
+ * Activities create their own ApiService, but they all share this single client so that
+ * connections, dispatcher threads and keep-alive sockets to the backend survive screen changes.
+ */
+public final class HttpClientProvider {
+    private static final String TAG = "HttpClientProvider";
+
+    // Pool tuning: a handful of keep-alive sockets to one backend host is plenty
+    private static final int MAX_IDLE_CONNECTIONS = 6;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    // On-disk cache for the state endpoints, revalidated with ETags
+    private static final String CACHE_DIRECTORY = "http_cache";
+    private static final long CACHE_SIZE_BYTES = 10L * 1024 * 1024;
+
+    // Dispatcher bounds
+    private static final int MAX_THREADS = 8;
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+
+    private static volatile HttpClientProvider instance;
+
+    private final OkHttpClient client;
+    private final ConnectionPool connectionPool;
+    private final PoolStats stats = new PoolStats();
+    private final NetworkTimings timings = new NetworkTimings();
+    private final RequestScheduler scheduler;
+    private final RequestCoalescer coalescer;
+
+    private HttpClientProvider(Context appContext) {
+        connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+
+        // Bounded executor instead of OkHttp's default unbounded cached pool
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_THREADS, MAX_THREADS,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "warda-http");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        // HTTP/2 is negotiated over TLS via ALPN; the plain-HTTP dev backend falls back to
+        // HTTP/1.1 keep-alive, which the shared pool reuses just the same.
+        client = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .retryOnConnectionFailure(true)
+                .cache(new Cache(new File(appContext.getCacheDir(), CACHE_DIRECTORY), CACHE_SIZE_BYTES))
+                // Per-call phase timings, which also feed the pool counters
+                .eventListenerFactory(timings.listenerFactory(stats.listener))
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .build();
+        scheduler = new RequestScheduler(client, MAX_REQUESTS_PER_HOST, timings);
+        coalescer = new RequestCoalescer(scheduler);
+
+        Log.d(TAG, "Shared HTTP client created");
+    }
+
+    public static HttpClientProvider getInstance(Context context) {
+        if (instance == null) {
+            synchronized (HttpClientProvider.class) {
+                if (instance == null) {
+                    instance = new HttpClientProvider(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    // Orders calls by priority before they reach the dispatcher
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // Shared so that identical GETs from different screens are coalesced too
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    public PoolStats getStats() {
+        return stats;
+    }
+
+    // Per-endpoint phase histograms, shown on the network stats screen
+    public NetworkTimings getTimings() {
+        return timings;
+    }
+
+    public int getIdleConnectionCount() {
+        return connectionPool.idleConnectionCount();
+    }
+
+    public int getActiveConnectionCount() {
+        return connectionPool.connectionCount() - connectionPool.idleConnectionCount();
+    }
+
+    // Log a one-line summary of the pool, useful when checking reuse from logcat
+    public void logStats() {
+        Log.d(TAG, "Pool stats: idle=" + getIdleConnectionCount()
+                + ", active=" + getActiveConnectionCount()
+                + ", calls=" + stats.getCallCount()
+                + ", newConnections=" + stats.getNewConnectionCount()
+                + ", reuseRatio=" + String.format(Locale.US, "%.2f", stats.getReuseRatio())
+                + ", coalesced=" + coalescer.getCoalescedCount() + "/"
+                + (coalescer.getCoalescedCount() + coalescer.getNetworkCallCount()) + " GETs"
+                + ", queued=" + scheduler.getQueuedCount()
+                + ", backgroundLimit=" + scheduler.getBackgroundLimit());
+    }
+
+    // Counts calls and fresh connections so the reuse ratio can be derived
+    public static class PoolStats {
+        private final AtomicLong callCount = new AtomicLong();
+        private final AtomicLong connectionAcquiredCount = new AtomicLong();
+        private final AtomicLong newConnectionCount = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final EventListener listener = new EventListener() {
+            @Override
+            public void callStart(Call call) {
+                callCount.incrementAndGet();
+                inFlight.incrementAndGet();
+            }
+
+            @Override
+            public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+                newConnectionCount.incrementAndGet();
+            }
+
+            @Override
+            public void connectionAcquired(Call call, Connection connection) {
+                connectionAcquiredCount.incrementAndGet();
+            }
+
+            @Override
+            public void callEnd(Call call) {
+                inFlight.decrementAndGet();
+            }
+
+            @Override
+            public void callFailed(Call call, IOException ioe) {
+                inFlight.decrementAndGet();
+            }
+        };
+
+        public long getCallCount() {
+            return callCount.get();
+        }
+
+        public long getNewConnectionCount() {
+            return newConnectionCount.get();
+        }
+
+        public int getInFlightCount() {
+            return inFlight.get();
+        }
+
+        // Share of acquired connections that came from the pool rather than a new handshake
+        public double getReuseRatio() {
+            long acquired = connectionAcquiredCount.get();
+            if (acquired == 0) {
+                return 0.0;
+            }
+            return Math.max(0.0, (double) (acquired - newConnectionCount.get()) / acquired);
+        }
+    }
+}
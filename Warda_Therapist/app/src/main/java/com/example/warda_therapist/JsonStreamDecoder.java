@@ -0,0 +1,243 @@
+package com.example.warda_therapist;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the history and dashboard responses straight from the response stream into the
+ * typed models, one token at a time.
+ *
+ * Unlike reading the body into a String and building an org.json tree first, only the
+ * records themselves are kept in memory, which matters once a history has thousands of
+ * messages. Fields the app does not use are skipped without being materialised.
+ */
+public final class JsonStreamDecoder {
+
+    private JsonStreamDecoder() {
+    }
+
+    // A /chat/history response: a JSON array of messages
+    public static List<ApiService.ChatHistoryItem> readHistory(Reader source) throws IOException {
+        List<ApiService.ChatHistoryItem> items = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                items.add(readHistoryItem(reader));
+            }
+            reader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens this way
+            throw new IOException("Malformed history: " + e.getMessage(), e);
+        }
+        return items;
+    }
+
+    // A /state/dashboard response. Each section goes to the callback as soon as it is decoded,
+    // so the summary and recommendations can be shown while the timeline is still arriving.
+    public static void readDashboard(Reader source, ApiService.DashboardCallback callback) throws IOException {
+        boolean hasSummary = false;
+        boolean hasTimeline = false;
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "current_state":
+                        readCurrentState(reader, callback);
+                        break;
+                    case "summary":
+                        callback.onSummary(readSummary(reader));
+                        hasSummary = true;
+                        break;
+                    case "recommendations":
+                        callback.onRecommendations(readStrings(reader));
+                        break;
+                    case "timeline":
+                        callback.onTimeline(readTimelineEntries(reader));
+                        hasTimeline = true;
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed dashboard: " + e.getMessage(), e);
+        }
+
+        if (!hasSummary || !hasTimeline) {
+            throw new IOException("Dashboard response is missing " + (hasSummary ? "timeline" : "summary"));
+        }
+    }
+
+    private static ApiService.ChatHistoryItem readHistoryItem(JsonReader reader) throws IOException {
+        int id = -1;
+        String message = null;
+        String response = null;
+        String timestamp = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextInt();
+                    break;
+                case "query":
+                    message = nextString(reader);
+                    break;
+                case "response":
+                    response = nextString(reader);
+                    break;
+                case "timestamp":
+                    timestamp = nextString(reader);
+                    break;
+                default:
+                    // e.g. the optional emotion object
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (id < 0 || message == null || response == null || timestamp == null) {
+            throw new IOException("History item is missing a field");
+        }
+        return new ApiService.ChatHistoryItem(id, message, response, timestamp);
+    }
+
+    private static List<ApiService.TimelineEntry> readTimelineEntries(JsonReader reader) throws IOException {
+        List<ApiService.TimelineEntry> entries = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            entries.add(readTimelineEntry(reader));
+        }
+        reader.endArray();
+        return entries;
+    }
+
+    private static ApiService.TimelineEntry readTimelineEntry(JsonReader reader) throws IOException {
+        String timestamp = null;
+        String emotion = null;
+        double confidence = Double.NaN;
+        String color = null;
+        int value = 0;
+        boolean hasValue = false;
+        String message = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "timestamp":
+                    timestamp = nextString(reader);
+                    break;
+                case "emotion":
+                    emotion = nextString(reader);
+                    break;
+                case "confidence":
+                    confidence = reader.nextDouble();
+                    break;
+                case "color":
+                    color = nextString(reader);
+                    break;
+                case "value":
+                    value = reader.nextInt();
+                    hasValue = true;
+                    break;
+                case "short_message":
+                    message = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (timestamp == null || emotion == null || Double.isNaN(confidence) || color == null
+                || !hasValue || message == null) {
+            throw new IOException("Timeline entry is missing a field");
+        }
+        return new ApiService.TimelineEntry(timestamp, emotion, (float) confidence, color, value, message);
+    }
+
+    // The dashboard's current_state object, passed to the callback as its fields
+    private static void readCurrentState(JsonReader reader, ApiService.DashboardCallback callback) throws IOException {
+        String state = null;
+        double confidence = Double.NaN;
+        String trend = null;
+        String colorCode = null;
+        String description = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "state":
+                    state = nextString(reader);
+                    break;
+                case "confidence":
+                    confidence = reader.nextDouble();
+                    break;
+                case "trend":
+                    trend = nextString(reader);
+                    break;
+                case "color_code":
+                    colorCode = nextString(reader);
+                    break;
+                case "description":
+                    description = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (state == null || Double.isNaN(confidence) || trend == null || colorCode == null || description == null) {
+            throw new IOException("Current state is missing a field");
+        }
+        callback.onCurrentState(state, (float) confidence, trend, colorCode, description);
+    }
+
+    private static Map<String, String> readSummary(JsonReader reader) throws IOException {
+        Map<String, String> summary = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("state") || name.equals("trend") || name.equals("color") || name.equals("description")) {
+                summary.put(name, nextString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return summary;
+    }
+
+    private static List<String> readStrings(JsonReader reader) throws IOException {
+        List<String> strings = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            strings.add(nextString(reader));
+        }
+        reader.endArray();
+        return strings;
+    }
+
+    // Strings as org.json's getString would return them, so null comes back as "null"
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "null";
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.warda_therapist;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick matcher for groups of lowercase phrases, compiled once into a DFA.
+ *
+ * {@link #match} answers which groups have at least one phrase occurring anywhere in the
+ * text, with the same substring semantics as Python's {@code phrase in text.lower()}, in a
+ * single pass over the text that reads each character once and allocates nothing, however
+ * many phrases there are.
+ *
+ * Phrases may only use a-z, space and apostrophe. Text is lowercased character by character
+ * and a typographic apostrophe is read as a plain one; every other character cannot be part
+ * of a phrase and sends the automaton back to its root.
+ */
+public final class KeywordMatcher {
+
+    // Up to 64 groups, one bit each in the result of match()
+    public static final int MAX_GROUPS = Long.SIZE;
+
+    // Symbol 0 is "any character that no phrase contains"
+    private static final int OTHER = 0;
+    private static final int SPACE = 27;
+    private static final int APOSTROPHE = 28;
+    private static final int ALPHABET = 29;
+
+    // State s on symbol c goes to next[s * ALPHABET + c]
+    private final int[] next;
+    // Groups with a phrase ending at each state, including phrases that are suffixes of it
+    private final long[] output;
+
+    public KeywordMatcher(String[][] groups) {
+        if (groups.length > MAX_GROUPS) {
+            throw new IllegalArgumentException("At most " + MAX_GROUPS + " groups, got " + groups.length);
+        }
+
+        // Trie of all phrases
+        List<int[]> trie = new ArrayList<>();
+        List<Long> outputs = new ArrayList<>();
+        trie.add(newRow());
+        outputs.add(0L);
+        for (int group = 0; group < groups.length; group++) {
+            for (String phrase : groups[group]) {
+                if (phrase.isEmpty()) {
+                    throw new IllegalArgumentException("Empty phrase in group " + group);
+                }
+                int state = 0;
+                for (int i = 0; i < phrase.length(); i++) {
+                    int symbol = symbolOf(phrase.charAt(i));
+                    if (symbol == OTHER || phrase.charAt(i) != Character.toLowerCase(phrase.charAt(i))) {
+                        throw new IllegalArgumentException("Unsupported character in \"" + phrase + "\"");
+                    }
+                    int child = trie.get(state)[symbol];
+                    if (child < 0) {
+                        child = trie.size();
+                        trie.add(newRow());
+                        outputs.add(0L);
+                        trie.get(state)[symbol] = child;
+                    }
+                    state = child;
+                }
+                outputs.set(state, outputs.get(state) | (1L << group));
+            }
+        }
+
+        // Breadth-first: fill in failure transitions so every state has a move on every symbol
+        int states = trie.size();
+        next = new int[states * ALPHABET];
+        output = new long[states];
+        int[] failure = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+
+        int[] root = trie.get(0);
+        for (int symbol = 0; symbol < ALPHABET; symbol++) {
+            int child = root[symbol];
+            if (child < 0) {
+                next[symbol] = 0;
+            } else {
+                next[symbol] = child;
+                failure[child] = 0;
+                queue.add(child);
+            }
+        }
+        output[0] = outputs.get(0);
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            output[state] = outputs.get(state) | output[failure[state]];
+            int[] row = trie.get(state);
+            for (int symbol = 0; symbol < ALPHABET; symbol++) {
+                int child = row[symbol];
+                int fallback = next[failure[state] * ALPHABET + symbol];
+                if (child < 0) {
+                    next[state * ALPHABET + symbol] = fallback;
+                } else {
+                    next[state * ALPHABET + symbol] = child;
+                    failure[child] = fallback;
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    // Bit i is set when some phrase of group i occurs in the text
+    public long match(CharSequence text) {
+        long found = 0;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = next[state * ALPHABET + symbolOf(Character.toLowerCase(text.charAt(i)))];
+            found |= output[state];
+        }
+        return found;
+    }
+
+    // Whether group occurs in the text; stops at the first phrase of that group
+    public boolean contains(CharSequence text, int group) {
+        long bit = 1L << group;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = next[state * ALPHABET + symbolOf(Character.toLowerCase(text.charAt(i)))];
+            if ((output[state] & bit) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int symbolOf(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 1;
+        }
+        if (c == ' ') {
+            return SPACE;
+        }
+        if (c == '\'' || c == '\u2019') {
+            return APOSTROPHE;
+        }
+        return OTHER;
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[ALPHABET];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.warda_therapist;
+
+import java.util.Arrays;
+
+/**
+ * Client-side copy of the backend's keyword checks in enhanced_rag.py: the crisis phrases of
+ * check_for_crisis_content and the emotion overrides of analyze_message_emotion, compiled
+ * into one KeywordMatcher so a message is screened for all of them in a single pass before
+ * it is sent.
+ */
+public final class KeywordScreen {
+
+    // Group indices; the emotion groups are in the order the backend checks them
+    private static final int CRISIS = 0;
+    private static final int FIRST_EMOTION = 1;
+
+    // check_for_crisis_content
+    private static final String[] CRISIS_PHRASES = {
+            "suicide", "kill myself", "end my life", "don't want to live",
+            "want to die", "better off dead", "hurt myself", "harm myself",
+            "no reason to live", "can't go on", "ending it all"
+    };
+
+    // Keyword overrides of analyze_message_emotion, each led by its label
+    private static final String[][] EMOTION_OVERRIDES = {
+            {"distressed", "suicide", "kill myself", "want to die", "end my life", "better off dead"},
+            {"sad", "depressed", "hopeless", "miserable", "heartbroken", "grief"},
+            {"anxious", "panic attack", "terrified", "anxious", "worried sick", "fear"},
+            {"angry", "furious", "hate", "rage", "fed up", "pissed off"},
+    };
+
+    private static final KeywordMatcher MATCHER = compile();
+
+    private KeywordScreen() {
+    }
+
+    // Every group found in the message, for isCrisis() and emotionOverride()
+    public static long scan(CharSequence message) {
+        return MATCHER.match(message);
+    }
+
+    public static boolean isCrisis(long found) {
+        return (found & (1L << CRISIS)) != 0;
+    }
+
+    // The label the backend's keyword override would give, or null if none applies
+    public static String emotionOverride(long found) {
+        for (int i = 0; i < EMOTION_OVERRIDES.length; i++) {
+            if ((found & (1L << (FIRST_EMOTION + i))) != 0) {
+                return EMOTION_OVERRIDES[i][0];
+            }
+        }
+        return null;
+    }
+
+    // Phrases of each group, indexed like the bits of scan()
+    static String[][] phraseGroups() {
+        String[][] groups = new String[FIRST_EMOTION + EMOTION_OVERRIDES.length][];
+        groups[CRISIS] = CRISIS_PHRASES;
+        for (int i = 0; i < EMOTION_OVERRIDES.length; i++) {
+            String[] override = EMOTION_OVERRIDES[i];
+            groups[FIRST_EMOTION + i] = Arrays.copyOfRange(override, 1, override.length);
+        }
+        return groups;
+    }
+
+    private static KeywordMatcher compile() {
+        return new KeywordMatcher(phraseGroups());
+    }
+}
@@ -3,11 +3,13 @@ package com.example.warda_therapist;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
@@ -28,8 +30,10 @@ import com.google.android.material.navigation.NavigationView;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
@@ -45,14 +49,27 @@ public class MainActivity extends AppCompatActivity {
     private LinearLayout dashboardSubmenu;
     private ImageView ivExpandDashboard;
     private TextView tvChatTitle;
+    // Debug builds only: backend stage timings of the last reply
+    private TextView tvServerTiming;
+    private boolean debuggable;
 
     private List<MessageModel> list;
     private MessageAdapter adapter;
     private ApiService apiService;
+    private StartupPipeline startup;
+    private ChatOutbox outbox;
+    private ChatOutbox.Listener outboxListener;
+    // Rows of messages still in the outbox and of their replies, by idempotency key
+    private final Map<String, MessageModel> outboxRows = new HashMap<>();
+    private final Map<String, MessageModel> replyRows = new HashMap<>();
+    // Status of a message the backend rejected; its row offers retry and discard
+    private static final String NOT_SENT_STATUS = "Not sent \u00b7 tap to retry";
     private SharedPreferences preferences;
 
     // Added for session management
-    private LinearLayout sessionsContainer;
+    private RecyclerView sessionsRecyclerView;
+    private SessionAdapter sessionAdapter;
+    private TextView tvNoSessions;
     private View currentSessionItem;
     private TextView tvCurrentSessionTitle;
     private Button btnEndSession;
@@ -65,6 +82,15 @@ public class MainActivity extends AppCompatActivity {
     private TextView tvEmotionalDescription;
     private View emotionalStateCard;
     private String currentEmotionalState = "neutral";
+    private String currentEmotionalTrend = "stable";
+    // Last few detected emotions, oldest first, used to predict the trend locally
+    private final List<String> recentEmotions = new ArrayList<>();
+    private int messagesSinceStateSync = 0;
+    // Full /state/current refresh at least this often even if the trend looks unchanged
+    private static final int STATE_RESYNC_INTERVAL = 5;
+
+    // Load the next page of older sessions when the drawer is scrolled this close to the end
+    private static final int SESSIONS_PREFETCH_DISTANCE = 5;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -96,6 +122,16 @@ public class MainActivity extends AppCompatActivity {
                 Log.e(TAG, "Menu button not found in layout");
             }
 
+            // Debug builds: long-press the title for per-endpoint network timings
+            debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+            tvServerTiming = findViewById(R.id.tvServerTiming);
+            if (tvChatTitle != null && debuggable) {
+                tvChatTitle.setOnLongClickListener(v -> {
+                    startActivity(new Intent(MainActivity.this, NetworkStatsActivity.class));
+                    return true;
+                });
+            }
+
             // Initialize chat UI components
             recyclerView = findViewById(R.id.recyclerView);
             message = findViewById(R.id.message);
@@ -128,6 +164,11 @@ public class MainActivity extends AppCompatActivity {
             // Initialize API Service with context
             apiService = new ApiService(this);
 
+            // Results of the calls the splash started, if it started any
+            startup = StartupPipeline.take(preferences.getInt("user_id", -1));
+            StartupMetrics.mark(this, StartupMetrics.MAIN_CREATED);
+            recordFirstFrame();
+
             // Initialize chat list and adapter
             list = new ArrayList<>();
 
@@ -136,7 +177,8 @@ public class MainActivity extends AppCompatActivity {
                 layoutManager.setStackFromEnd(true);
                 recyclerView.setLayoutManager(layoutManager);
 
-                adapter = new MessageAdapter(list);
+                adapter = new MessageAdapter();
+                adapter.setOnMessageClickListener(this::onMessageClick);
                 recyclerView.setAdapter(adapter);
                 Log.d(TAG, "RecyclerView set up successfully");
             }
@@ -150,7 +192,8 @@ public class MainActivity extends AppCompatActivity {
             // Set up sessions container in the sidebar
             setupSessionManagement();
 
-            // Load chat history
+            // Render sessions saved on the device first, then sync with the backend
+            renderLocalHistory();
             loadChatHistory();
 
             // Set up session as active by default
@@ -169,6 +212,9 @@ public class MainActivity extends AppCompatActivity {
             // Add welcome message
             addToChat(greeting, MessageModel.SENT_BY_BOT);
 
+            // Deliver queued messages, including any left from a previous run
+            setupOutbox();
+
             // Set up send button click listener
             if (send != null) {
                 send.setOnClickListener(v -> {
@@ -178,15 +224,16 @@ public class MainActivity extends AppCompatActivity {
                         if (userMessage.isEmpty()) {
                             Toast.makeText(MainActivity.this, "Please type a message", Toast.LENGTH_SHORT).show();
                         } else {
-                            // Add user message to chat
-                            addToChat(userMessage, MessageModel.SENT_BY_ME);
                             message.setText("");
 
-                            // Show typing indicator
-                            addToChat("Typing...", MessageModel.SENT_BY_BOT);
+                            // Screened locally first, so crisis resources never wait on the network
+                            long keywords = KeywordScreen.scan(userMessage);
+                            if (KeywordScreen.isCrisis(keywords)) {
+                                showCrisisResources();
+                            }
 
-                            // Call API to get response
-                            sendMessageToApi(userMessage);
+                            // Queue the message; it is shown pending until the reply arrives
+                            sendMessageToApi(userMessage, keywords);
                         }
                     }
                 });
@@ -205,6 +252,19 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // Mark the first frame MainActivity draws
+    private void recordFirstFrame() {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupMetrics.mark(MainActivity.this, StartupMetrics.FIRST_FRAME);
+                return true;
+            }
+        });
+    }
+
     private void setupEmotionalStateTracking() {
         try {
             // Find emotional state card view
@@ -258,13 +318,21 @@ public class MainActivity extends AppCompatActivity {
             }
 
             Log.d(TAG, "Updating emotional state for user ID: " + userId);
-            apiService.getCurrentEmotionalState(userId, new ApiService.EmotionalStateCallback() {
+            ApiService.EmotionalStateCallback callback = new ApiService.EmotionalStateCallback() {
                 @Override
-                public void onSuccess(String state, float confidence, String trend, String colorCode, String description) {
+                public void onSuccess(String state, float confidence, String trend, String colorCode, String description,
+                                      List<String> history) {
                     runOnUiThread(() -> {
                         try {
                             // Update UI components
                             currentEmotionalState = state;
+                            currentEmotionalTrend = trend;
+                            messagesSinceStateSync = 0;
+
+                            // Re-seed the local trend window from the authoritative history
+                            recentEmotions.clear();
+                            int from = Math.max(0, history.size() - 2);
+                            recentEmotions.addAll(history.subList(from, history.size()));
 
                             if (emotionalStateView != null) {
                                 emotionalStateView.updateState(state, confidence, trend, colorCode);
@@ -278,6 +346,7 @@ public class MainActivity extends AppCompatActivity {
                                 tvEmotionalDescription.setText(description);
                             }
 
+                            StartupMetrics.mark(MainActivity.this, StartupMetrics.FIRST_DATA);
                             Log.d(TAG, "Updated emotional state: " + state + " (confidence: " + confidence + ")");
                         } catch (Exception e) {
                             Log.e(TAG, "Error updating emotional state UI: " + e.getMessage(), e);
@@ -289,12 +358,84 @@ public class MainActivity extends AppCompatActivity {
                 public void onError(String errorMessage) {
                     Log.e(TAG, "Error fetching emotional state: " + errorMessage);
                 }
-            });
+            };
+
+            if (startup == null || !startup.takeEmotionalState(callback)) {
+                apiService.getCurrentEmotionalState(userId, callback);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error in updateEmotionalState: " + e.getMessage(), e);
         }
     }
 
+    // Optimistic update from the on-device classifier; the reply's label replaces it through
+    // applyChatEmotion, so the guess is not added to recentEmotions
+    private void showLocalEmotion(String userMessage, long keywords) {
+        try {
+            EmotionClassifier.Prediction prediction = EmotionClassifier.classify(userMessage, keywords);
+            List<String> withGuess = new ArrayList<>(recentEmotions);
+            withGuess.add(prediction.emotion);
+            while (withGuess.size() > 3) {
+                withGuess.remove(0);
+            }
+            String predictedTrend = EmotionStyle.trendOf(withGuess);
+
+            if (emotionalStateView != null) {
+                emotionalStateView.updateState(prediction.emotion, prediction.confidence, predictedTrend,
+                        EmotionStyle.colorFor(prediction.emotion));
+            }
+
+            if (tvEmotionalState != null) {
+                tvEmotionalState.setText(capitalize(prediction.emotion));
+            }
+
+            if (tvEmotionalDescription != null) {
+                tvEmotionalDescription.setText(EmotionStyle.describe(prediction.emotion, predictedTrend));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing local emotion: " + e.getMessage(), e);
+        }
+    }
+
+    // Apply the emotion returned with a chat reply, and only ask the server for the
+    // full state when the local trend prediction changes or a resync is due
+    private void applyChatEmotion(ApiService.ChatResult result) {
+        runOnUiThread(() -> {
+            try {
+                String state = result.getEmotionalState();
+                recentEmotions.add(state);
+                while (recentEmotions.size() > 3) {
+                    recentEmotions.remove(0);
+                }
+                String predictedTrend = EmotionStyle.trendOf(recentEmotions);
+
+                currentEmotionalState = state;
+
+                if (emotionalStateView != null) {
+                    emotionalStateView.updateState(state, result.getConfidence(), predictedTrend,
+                            EmotionStyle.colorFor(state));
+                }
+
+                if (tvEmotionalState != null) {
+                    tvEmotionalState.setText(capitalize(state));
+                }
+
+                if (tvEmotionalDescription != null) {
+                    tvEmotionalDescription.setText(EmotionStyle.describe(state, predictedTrend));
+                }
+
+                messagesSinceStateSync++;
+                if (!predictedTrend.equals(currentEmotionalTrend) || messagesSinceStateSync >= STATE_RESYNC_INTERVAL) {
+                    Log.d(TAG, "Trend may have changed (" + currentEmotionalTrend + " -> " + predictedTrend
+                            + "), refreshing emotional state");
+                    updateEmotionalState();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error applying chat emotion: " + e.getMessage(), e);
+            }
+        });
+    }
+
     private void setupUserInfo() {
         try {
             // Find user name TextView directly instead of using the header view
@@ -324,8 +465,8 @@ public class MainActivity extends AppCompatActivity {
     // Set up the sessions container in the sidebar
     private void setupSessionManagement() {
         try {
-            // Find the sessions container
-            sessionsContainer = findViewById(R.id.sessionsContainer);
+            // Set up the past sessions list
+            setupSessionsList();
 
             // Find current session elements
             currentSessionItem = findViewById(R.id.currentSessionItem);
@@ -422,6 +563,65 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // Show the drawer and the last session from the on-device store without waiting for the network
+    private void renderLocalHistory() {
+        int userId = preferences.getInt("user_id", -1);
+        if (userId == -1) {
+            return;
+        }
+
+        ChatHistoryStore.getInstance(this).loadAsync(userId, new ApiService.ChatHistoryCallback() {
+            @Override
+            public void onSuccess(List<ApiService.ChatHistoryItem> history) {
+                if (history.isEmpty()) {
+                    return;
+                }
+                Sessionizer sessionizer = Sessionizer.forUser(userId);
+                sessionizer.update(history);
+                List<ApiService.SessionData> sessions = sessionizer.getSessions();
+                runOnUiThread(() -> {
+                    try {
+                        // A network sync may already have landed; it is at least as fresh
+                        if (!sessionsList.isEmpty()) {
+                            return;
+                        }
+                        sessionsList = sessions;
+                        updateSessionsView(sessions);
+                        showPreviousSession(sessions.get(sessions.size() - 1));
+                        StartupMetrics.mark(MainActivity.this, StartupMetrics.FIRST_DATA);
+                        Log.d(TAG, "Rendered " + sessions.size() + " sessions from local store");
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error rendering local history: " + e.getMessage(), e);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                Log.e(TAG, "Error reading local history: " + errorMessage);
+            }
+        });
+    }
+
+    // Put the last session's messages above the greeting, unless the user has already started chatting
+    private void showPreviousSession(ApiService.SessionData session) {
+        if (list == null || adapter == null || list.size() > 1) {
+            return;
+        }
+
+        List<MessageModel> previous = new ArrayList<>();
+        for (ApiService.ChatHistoryItem item : session.getMessages()) {
+            previous.add(MessageModel.fromHistory(item, MessageModel.SENT_BY_ME));
+            previous.add(MessageModel.fromHistory(item, MessageModel.SENT_BY_BOT));
+        }
+        list.addAll(0, previous);
+        adapter.submitList(list, () -> {
+            if (recyclerView != null) {
+                recyclerView.scrollToPosition(adapter.getItemCount() - 1);
+            }
+        });
+    }
+
     private void loadChatHistory() {
         try {
             int userId = preferences.getInt("user_id", -1);
@@ -431,7 +631,7 @@ public class MainActivity extends AppCompatActivity {
             }
 
             Log.d(TAG, "Loading session history for user ID: " + userId);
-            apiService.getSessionHistory(userId, new ApiService.SessionHistoryCallback() {
+            ApiService.SessionHistoryCallback callback = new ApiService.SessionHistoryCallback() {
                 @Override
                 public void onSuccess(List<ApiService.SessionData> sessions) {
                     sessionsList = sessions;
@@ -441,6 +641,7 @@ public class MainActivity extends AppCompatActivity {
 
                             // Update sessions in sidebar
                             updateSessionsView(sessions);
+                            StartupMetrics.mark(MainActivity.this, StartupMetrics.FIRST_DATA);
                         } catch (Exception e) {
                             Log.e(TAG, "Error updating sessions view: " + e.getMessage(), e);
                         }
@@ -456,67 +657,68 @@ public class MainActivity extends AppCompatActivity {
                                 Toast.LENGTH_SHORT).show();
                     });
                 }
-            });
+            };
+
+            // The first load after launch is usually already in flight from the splash
+            if (startup == null || !startup.takeSessions(callback)) {
+                apiService.getSessionHistory(userId, callback);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error loading chat history: " + e.getMessage(), e);
         }
     }
 
-    // Update the sessions view in the sidebar
-    private void updateSessionsView(List<ApiService.SessionData> sessions) {
-        try {
-            if (sessionsContainer != null) {
-                // Clear existing sessions
-                sessionsContainer.removeAllViews();
-
-                // No sessions yet
-                if (sessions.isEmpty()) {
-                    TextView emptyText = new TextView(this);
-                    emptyText.setText("No previous sessions");
-                    emptyText.setTextColor(getResources().getColor(android.R.color.white));
-                    emptyText.setPadding(32, 16, 16, 16);
-                    sessionsContainer.addView(emptyText);
-                    return;
-                }
-
-                // Add each session
-                LayoutInflater inflater = getLayoutInflater();
-
-                for (int i = 0; i < sessions.size(); i++) {
-                    final ApiService.SessionData session = sessions.get(i);
-                    final int sessionIndex = i;
+    // Recycled list of past sessions; older sessions are paged in as the list nears its end
+    private void setupSessionsList() {
+        sessionsRecyclerView = findViewById(R.id.sessionsRecyclerView);
+        tvNoSessions = findViewById(R.id.tvNoSessions);
+        if (sessionsRecyclerView == null) {
+            Log.e(TAG, "Sessions list view not found");
+            return;
+        }
 
-                    // Inflate a session item view
-                    View sessionView = inflater.inflate(R.layout.item_session, sessionsContainer, false);
+        sessionAdapter = new SessionAdapter((session, sessionIndex) -> {
+            // Load this session's messages
+            loadSessionMessages(session, sessionIndex);
+            // Close drawer
+            closeDrawer();
+            // Update UI to show we're viewing a past session
+            isInActiveSession = false;
+            updateCurrentSessionUI();
+            // Update chat title
+            updateChatTitle(session.getTitle());
+        });
 
-                    TextView tvSessionTitle = sessionView.findViewById(R.id.tvSessionTitle);
-                    TextView tvSessionPreview = sessionView.findViewById(R.id.tvSessionPreview);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        sessionsRecyclerView.setLayoutManager(layoutManager);
+        sessionsRecyclerView.setAdapter(sessionAdapter);
+        sessionsRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (dy > 0 && sessionAdapter.hasMore()
+                        && lastVisible >= sessionAdapter.getItemCount() - SESSIONS_PREFETCH_DISTANCE) {
+                    // Adapter changes are not allowed inside a scroll callback
+                    recyclerView.post(sessionAdapter::showMore);
+                }
+            }
+        });
+    }
 
-                    // Set session data - use formatted date or fallback to session title
-                    String title = "Session: " + (session.getFormattedDateTime() != null ?
-                            session.getFormattedDateTime() : session.getDate());
-                    tvSessionTitle.setText(title);
-                    tvSessionPreview.setText(session.getPreviewText());
+    // Update the sessions view in the sidebar
+    private void updateSessionsView(List<ApiService.SessionData> sessions) {
+        try {
+            if (sessionAdapter == null) {
+                Log.e(TAG, "Sessions list not set up");
+                return;
+            }
 
-                    // Set click listener
-                    sessionView.setOnClickListener(v -> {
-                        // Load this session's messages
-                        loadSessionMessages(session, sessionIndex);
-                        // Close drawer
-                        closeDrawer();
-                        // Update UI to show we're viewing a past session
-                        isInActiveSession = false;
-                        updateCurrentSessionUI();
-                        // Update chat title
-                        updateChatTitle(title);
-                    });
+            sessionAdapter.setSessions(sessions);
 
-                    // Add to container
-                    sessionsContainer.addView(sessionView);
-                }
-            } else {
-                Log.e(TAG, "Sessions container view not found");
-            }
+            // No sessions yet
+            boolean empty = sessions.isEmpty();
+            tvNoSessions.setVisibility(empty ? View.VISIBLE : View.GONE);
+            sessionsRecyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
         } catch (Exception e) {
             Log.e(TAG, "Error updating sessions view: " + e.getMessage(), e);
         }
@@ -530,17 +732,17 @@ public class MainActivity extends AppCompatActivity {
 
             // Add all messages from this session
             for (ApiService.ChatHistoryItem item : session.getMessages()) {
-                list.add(new MessageModel(item.getMessage(), MessageModel.SENT_BY_ME));
-                list.add(new MessageModel(item.getResponse(), MessageModel.SENT_BY_BOT));
+                list.add(MessageModel.fromHistory(item, MessageModel.SENT_BY_ME));
+                list.add(MessageModel.fromHistory(item, MessageModel.SENT_BY_BOT));
             }
 
-            // Notify adapter of changes
-            adapter.notifyDataSetChanged();
-
-            // Scroll to bottom
-            if (recyclerView != null && adapter.getItemCount() > 0) {
-                recyclerView.scrollToPosition(adapter.getItemCount() - 1);
-            }
+            // Diff against what is on screen; rows shared with it are kept as they are
+            adapter.submitList(list, () -> {
+                // Scroll to bottom
+                if (recyclerView != null && adapter.getItemCount() > 0) {
+                    recyclerView.scrollToPosition(adapter.getItemCount() - 1);
+                }
+            });
 
             Log.d(TAG, "Loaded " + session.getMessages().size() + " messages from session " + sessionIndex);
         } catch (Exception e) {
@@ -554,7 +756,7 @@ public class MainActivity extends AppCompatActivity {
         try {
             // Clear chat
             list.clear();
-            adapter.notifyDataSetChanged();
+            adapter.submitList(list);
 
             // Set active session flag
             isInActiveSession = true;
@@ -583,6 +785,30 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // Helpline details shown as soon as a crisis phrase is typed, online or not
+    private void showCrisisResources() {
+        try {
+            Log.w(TAG, "Crisis phrase detected in outgoing message, showing resources");
+            new androidx.appcompat.app.AlertDialog.Builder(this)
+                    .setTitle("You don't have to face this alone")
+                    .setMessage("If you're having thoughts of hurting yourself, please reach out now. "
+                            + "The 988 Suicide & Crisis Lifeline (call or text 988, or 1-800-273-8255) "
+                            + "has trained counselors available 24/7. If you are in immediate danger, "
+                            + "call your local emergency number.")
+                    .setPositiveButton("Call 988", (dialog, which) -> {
+                        try {
+                            startActivity(new Intent(Intent.ACTION_DIAL, Uri.parse("tel:988")));
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error opening dialer: " + e.getMessage(), e);
+                        }
+                    })
+                    .setNegativeButton("Close", null)
+                    .show();
+        } catch (Exception e) {
+            Log.e(TAG, "Error showing crisis resources: " + e.getMessage(), e);
+        }
+    }
+
     private void endCurrentSession() {
         try {
             if (!isInActiveSession || list.isEmpty()) {
@@ -604,7 +830,7 @@ public class MainActivity extends AppCompatActivity {
                         // Clear chat - the messages are already saved in the database
                         // since they're sent through the API
                         list.clear();
-                        adapter.notifyDataSetChanged();
+                        adapter.submitList(list);
 
                         // Reload chat history to get the new session
                         loadChatHistory();
@@ -679,7 +905,14 @@ public class MainActivity extends AppCompatActivity {
         try {
             Log.d(TAG, "Logging out user");
 
-            // 1. Clear shared preferences
+            // 1. Remove this user's on-device history, then clear shared preferences
+            int userId = preferences.getInt("user_id", -1);
+            if (userId != -1) {
+                ChatHistoryStore.getInstance(this).clear(userId);
+                Sessionizer.forUser(userId).reset();
+                ChatOutbox.getInstance(this).clear(userId);
+            }
+
             SharedPreferences.Editor editor = preferences.edit();
             editor.clear();
             editor.apply();
@@ -732,6 +965,19 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        // The outbox keeps sending; this screen just stops following it
+        if (outbox != null) {
+            outbox.removeListener(outboxListener);
+        }
+        // Startup calls use the app context and outlive this screen, so let go of its callbacks
+        if (startup != null) {
+            startup.release();
+        }
+        super.onDestroy();
+    }
+
     @Override
     public void onBackPressed() {
         try {
@@ -750,7 +996,8 @@ public class MainActivity extends AppCompatActivity {
         return preferences.contains("user_id");
     }
 
-    private void sendMessageToApi(String userMessage) {
+    // keywords is the message's KeywordScreen scan
+    private void sendMessageToApi(String userMessage, long keywords) {
         try {
             // If not in active session, start one
             if (!isInActiveSession) {
@@ -759,43 +1006,208 @@ public class MainActivity extends AppCompatActivity {
                 updateChatTitle("Current Session");
             }
 
-            if (apiService == null) {
-                Log.e(TAG, "Cannot send message - apiService is null");
-                removeLastMessage();
+            if (outbox == null) {
+                Log.e(TAG, "Cannot send message - outbox is null");
+                addToChat(userMessage, MessageModel.SENT_BY_ME);
                 addToChat("Sorry, I'm having trouble connecting to the server. Please restart the app.", MessageModel.SENT_BY_BOT);
                 return;
             }
 
-            Log.d(TAG, "Sending message to API: " + userMessage);
-            apiService.sendChatRequest(userMessage, new ApiService.ChatCallback() {
-                @Override
-                public void onResponse(String response) {
-                    // Remove typing indicator and add actual response
-                    removeLastMessage();
-                    addToChat(response, MessageModel.SENT_BY_BOT);
-                    Log.d(TAG, "Received response from API (length: " + response.length() + ")");
+            // Queued on disk first, so the message survives a failed send or the app closing
+            ChatOutbox.Entry entry = outbox.enqueue(preferences.getInt("user_id", -1), userMessage);
+            addOutboxRow(entry, "Sending...");
+            showLocalEmotion(userMessage, keywords);
+            Log.d(TAG, "Queued message " + entry.key);
+            outbox.drain();
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending message to API: " + e.getMessage(), e);
+            addToChat("Sorry, something went wrong. Please try again.", MessageModel.SENT_BY_BOT);
+        }
+    }
 
-                    // Update emotional state after receiving response
-                    updateEmotionalState();
-                }
+    // Debug overlay: where the backend spent its time on the last reply
+    private void showServerTiming(ApiService.ChatResult result) {
+        if (!debuggable || tvServerTiming == null || result.getServerTiming().isEmpty()) {
+            return;
+        }
+        String text = "server  " + ServerTiming.format(result.getServerTiming());
+        Log.d(TAG, "Server timing: " + text);
+        runOnUiThread(() -> {
+            tvServerTiming.setText(text);
+            tvServerTiming.setVisibility(View.VISIBLE);
+        });
+    }
 
-                @Override
-                public void onError(String errorMessage) {
-                    // Remove typing indicator and add error message
-                    removeLastMessage();
-                    addToChat("Sorry, I'm having trouble connecting to my brain. Please try again later.", MessageModel.SENT_BY_BOT);
-                    Log.e(TAG, "Error from API: " + errorMessage);
+    // Show the outbox's progress on the rows of queued messages
+    private void setupOutbox() {
+        outbox = ChatOutbox.getInstance(this);
+        outboxListener = new ChatOutbox.Listener() {
+            @Override
+            public void onSending(ChatOutbox.Entry entry) {
+                runOnUiThread(() -> {
+                    MessageModel userRow = outboxRows.get(entry.key);
+                    // Another session may be open by now
+                    if (userRow == null || list == null || !list.contains(userRow)) {
+                        return;
+                    }
+                    userRow.setPendingStatus("Sending...");
+                    refreshMessageRow(userRow, true);
 
-                    // Show detailed error in a toast
-                    runOnUiThread(() -> Toast.makeText(MainActivity.this, errorMessage, Toast.LENGTH_LONG).show());
-                }
-            });
+                    // The typing indicator becomes the bot reply and is filled in as chunks arrive
+                    MessageModel replyRow = MessageModel.typingIndicator();
+                    replyRows.put(entry.key, replyRow);
+                    addToChat(replyRow);
+                });
+            }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending message to API: " + e.getMessage(), e);
-            // Handle exception in UI
-            removeLastMessage();
-            addToChat("Sorry, something went wrong. Please try again.", MessageModel.SENT_BY_BOT);
+            @Override
+            public void onChunk(ChatOutbox.Entry entry, String text) {
+                runOnUiThread(() -> {
+                    MessageModel replyRow = replyRows.get(entry.key);
+                    if (replyRow == null) {
+                        return;
+                    }
+                    boolean firstChunk = replyRow.isTyping();
+                    if (firstChunk) {
+                        replyRow.setMessage(text);
+                    } else {
+                        replyRow.appendMessage(text);
+                    }
+                    refreshMessageRow(replyRow, firstChunk);
+                });
+            }
+
+            @Override
+            public void onSent(ChatOutbox.Entry entry, ApiService.ChatResult result) {
+                Log.d(TAG, "Queued message " + entry.key + " answered (length: " + result.getResponse().length() + ")");
+                runOnUiThread(() -> {
+                    MessageModel userRow = outboxRows.remove(entry.key);
+                    MessageModel replyRow = replyRows.remove(entry.key);
+                    if (userRow != null) {
+                        userRow.setPendingStatus(null);
+                        refreshMessageRow(userRow, true);
+                    }
+                    if (replyRow != null) {
+                        boolean firstChunk = replyRow.isTyping();
+                        replyRow.setMessage(result.getResponse());
+                        refreshMessageRow(replyRow, firstChunk);
+                    } else if (userRow != null && list != null && list.contains(userRow)) {
+                        addToChat(result.getResponse(), MessageModel.SENT_BY_BOT);
+                    }
+                });
+
+                // Update emotional state from the reply itself
+                applyChatEmotion(result);
+                showServerTiming(result);
+
+                // Pull the saved exchange into the local store and drawer
+                loadChatHistory();
+            }
+
+            @Override
+            public void onWaiting(ChatOutbox.Entry entry, String status) {
+                runOnUiThread(() -> {
+                    removeReplyRow(entry.key);
+                    MessageModel userRow = outboxRows.get(entry.key);
+                    if (userRow != null) {
+                        userRow.setPendingStatus(status);
+                        refreshMessageRow(userRow, true);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(ChatOutbox.Entry entry, String errorMessage) {
+                Log.e(TAG, "Queued message " + entry.key + " failed: " + errorMessage);
+                runOnUiThread(() -> {
+                    removeReplyRow(entry.key);
+                    // The message stays queued; tapping the row offers retry or discard
+                    MessageModel userRow = outboxRows.get(entry.key);
+                    if (userRow != null) {
+                        userRow.setPendingStatus(NOT_SENT_STATUS);
+                        refreshMessageRow(userRow, true);
+                    }
+                    Toast.makeText(MainActivity.this, errorMessage, Toast.LENGTH_LONG).show();
+                });
+            }
+        };
+        outbox.setListener(outboxListener);
+
+        // Messages queued before the app was closed are still on their way
+        for (ChatOutbox.Entry entry : outbox.getPending(preferences.getInt("user_id", -1))) {
+            addOutboxRow(entry, entry.isFailed() ? NOT_SENT_STATUS : "Waiting to send");
+        }
+        outbox.drain();
+    }
+
+    private void addOutboxRow(ChatOutbox.Entry entry, String status) {
+        MessageModel userRow = new MessageModel(entry.query, MessageModel.SENT_BY_ME);
+        userRow.setPendingStatus(status);
+        outboxRows.put(entry.key, userRow);
+        addToChat(userRow);
+    }
+
+    // A tap on a message the backend rejected offers to send it again or to drop it
+    private void onMessageClick(MessageModel model) {
+        if (outbox == null || !NOT_SENT_STATUS.equals(model.getPendingStatus())) {
+            return;
+        }
+        ChatOutbox.Entry failed = null;
+        for (ChatOutbox.Entry entry : outbox.getPending(preferences.getInt("user_id", -1))) {
+            if (entry.isFailed() && outboxRows.get(entry.key) == model) {
+                failed = entry;
+                break;
+            }
+        }
+        if (failed == null) {
+            return;
+        }
+
+        ChatOutbox.Entry entry = failed;
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Message not sent")
+                .setMessage("The server could not accept this message.")
+                .setPositiveButton("Retry", (dialog, which) -> {
+                    model.setPendingStatus("Waiting to send");
+                    refreshMessageRow(model, false);
+                    outbox.retry(entry);
+                })
+                .setNegativeButton("Discard", (dialog, which) -> {
+                    outboxRows.remove(entry.key);
+                    if (list != null && adapter != null && list.remove(model)) {
+                        adapter.submitList(list);
+                    }
+                    outbox.discard(entry);
+                })
+                .setNeutralButton("Cancel", null)
+                .show();
+    }
+
+    // Drop the typing row of an attempt that did not get through
+    private void removeReplyRow(String key) {
+        MessageModel replyRow = replyRows.remove(key);
+        if (replyRow != null && list != null && adapter != null && list.remove(replyRow)) {
+            adapter.submitList(list);
+        }
+    }
+
+    // Rebind only the row holding this message. leftTypingState is true when the row
+    // stopped being the typing indicator and so needs the bot row's view type.
+    private void refreshMessageRow(MessageModel model, boolean leftTypingState) {
+        if (list == null || adapter == null) {
+            return;
+        }
+        // Not displayed yet means a pending diff will bind it with the current text
+        int position = adapter.positionOf(model);
+        if (position >= 0) {
+            if (leftTypingState) {
+                adapter.notifyItemChanged(position);
+            } else {
+                adapter.notifyItemChanged(position, MessageAdapter.PAYLOAD_TEXT);
+            }
+            if (recyclerView != null && position == adapter.getItemCount() - 1) {
+                recyclerView.scrollToPosition(position);
+            }
         }
     }
 
@@ -807,7 +1219,7 @@ public class MainActivity extends AppCompatActivity {
             }
 
             Log.d(TAG, "Checking server health");
-            apiService.checkServerHealth(new ApiService.ChatCallback() {
+            ApiService.ChatCallback callback = new ApiService.ChatCallback() {
                 @Override
                 public void onResponse(String response) {
                     // Server is healthy, no need to notify user
@@ -824,34 +1236,28 @@ public class MainActivity extends AppCompatActivity {
                                 Toast.LENGTH_LONG).show();
                     });
                 }
-            });
+            };
+
+            // The splash may already have asked
+            if (startup == null || !startup.takeHealth(callback)) {
+                apiService.checkServerHealth(callback);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error checking server health: " + e.getMessage(), e);
         }
     }
 
-    private void removeLastMessage() {
-        try {
-            runOnUiThread(() -> {
-                if (list != null && !list.isEmpty() && adapter != null) {
-                    list.remove(list.size() - 1);
-                    adapter.notifyItemRemoved(list.size());
-                    Log.d(TAG, "Removed last message from chat");
-                }
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Error removing last message: " + e.getMessage(), e);
-        }
+    private void addToChat(String message, String sender) {
+        addToChat(new MessageModel(message, sender));
     }
 
-    private void addToChat(String message, String sender) {
+    private void addToChat(MessageModel model) {
         try {
             runOnUiThread(() -> {
                 if (list != null && adapter != null && recyclerView != null) {
-                    list.add(new MessageModel(message, sender));
-                    adapter.notifyItemInserted(list.size() - 1);
-                    recyclerView.smoothScrollToPosition(adapter.getItemCount() - 1);
-                    Log.d(TAG, "Added message to chat from " + sender);
+                    list.add(model);
+                    adapter.submitList(list, () -> recyclerView.smoothScrollToPosition(adapter.getItemCount() - 1));
+                    Log.d(TAG, "Added message to chat from " + model.getSentBy());
                 } else {
                     Log.e(TAG, "Cannot add message to chat - list, adapter, or recyclerView is null");
                 }
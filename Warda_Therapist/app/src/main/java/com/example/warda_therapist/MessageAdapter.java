@@ -1,62 +1,150 @@
 package com.example.warda_therapist;
 
-import android.annotation.SuppressLint;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.viewHolder>{
 
-    List<MessageModel> modelList;
+    // Payload for rebinding only the text of a row, e.g. while a reply streams in
+    public static final Object PAYLOAD_TEXT = new Object();
 
-    public MessageAdapter(List<MessageModel> modelList) {
-        this.modelList = modelList;
+    // Undelivered messages are drawn faded until the outbox has sent them
+    private static final float PENDING_ALPHA = 0.6f;
+
+    static final int VIEW_TYPE_USER = 0;
+    static final int VIEW_TYPE_BOT = 1;
+    static final int VIEW_TYPE_TYPING = 2;
+
+    private static final DiffUtil.ItemCallback<MessageModel> DIFF_CALLBACK = new DiffUtil.ItemCallback<MessageModel>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MessageModel oldItem, @NonNull MessageModel newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        // The same object in both lists counts as unchanged; in-place edits are notified with PAYLOAD_TEXT
+        @Override
+        public boolean areContentsTheSame(@NonNull MessageModel oldItem, @NonNull MessageModel newItem) {
+            return oldItem == newItem
+                    || (oldItem.isTyping() == newItem.isTyping()
+                    && Objects.equals(oldItem.getSentBy(), newItem.getSentBy())
+                    && Objects.equals(oldItem.getMessage(), newItem.getMessage())
+                    && Objects.equals(oldItem.getPendingStatus(), newItem.getPendingStatus()));
+        }
+    };
+
+    // Taps on a row, e.g. to retry a message that was not sent
+    public interface OnMessageClickListener {
+        void onMessageClick(MessageModel model);
+    }
+
+    // Diffs submitted lists on a background thread and applies only the resulting changes
+    private final AsyncListDiffer<MessageModel> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+
+    private OnMessageClickListener clickListener;
+
+    public MessageAdapter() {
+        setHasStableIds(true);
+    }
+
+    public void setOnMessageClickListener(OnMessageClickListener clickListener) {
+        this.clickListener = clickListener;
+    }
+
+    // Show a copy of the given messages; commitCallback runs on the main thread once it is displayed
+    public void submitList(List<MessageModel> messages, Runnable commitCallback) {
+        differ.submitList(new ArrayList<>(messages), commitCallback);
+    }
+
+    public void submitList(List<MessageModel> messages) {
+        submitList(messages, null);
+    }
+
+    // Position of this exact message in the displayed list, or -1 if it is not shown yet
+    public int positionOf(MessageModel model) {
+        return differ.getCurrentList().lastIndexOf(model);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        MessageModel model = differ.getCurrentList().get(position);
+        if (model.isTyping()) {
+            return VIEW_TYPE_TYPING;
+        }
+        return MessageModel.SENT_BY_ME.equals(model.getSentBy()) ? VIEW_TYPE_USER : VIEW_TYPE_BOT;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
     }
 
     @NonNull
     @Override
     public viewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        @SuppressLint("InflateParams") View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_message_new, null);
+        int layout;
+        if (viewType == VIEW_TYPE_USER) {
+            layout = R.layout.item_message_user;
+        } else if (viewType == VIEW_TYPE_TYPING) {
+            layout = R.layout.item_message_typing;
+        } else {
+            layout = R.layout.item_message_bot;
+        }
+        View view = LayoutInflater.from(parent.getContext()).inflate(layout, parent, false);
         return new viewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull viewHolder holder, int position) {
-        MessageModel model = modelList.get(position);
+        MessageModel model = differ.getCurrentList().get(position);
+        holder.messageText.setText(model.getMessage());
+        holder.itemView.setOnClickListener(clickListener == null ? null : v -> clickListener.onMessageClick(model));
 
-        if (model.getSentBy().equals(MessageModel.SENT_BY_ME)) {
-            holder.leftChatCard.setVisibility(View.GONE);
-            holder.rightChatCard.setVisibility(View.VISIBLE);
-            holder.rightMsg.setText(model.getMessage());
-        } else {
-            holder.rightChatCard.setVisibility(View.GONE);
-            holder.leftChatCard.setVisibility(View.VISIBLE);
-            holder.leftMsg.setText(model.getMessage());
+        // Only the user row has a status line
+        if (holder.statusText != null) {
+            if (model.isPending()) {
+                holder.statusText.setText(model.getPendingStatus());
+                holder.statusText.setVisibility(View.VISIBLE);
+                holder.messageText.setAlpha(PENDING_ALPHA);
+            } else {
+                holder.statusText.setVisibility(View.GONE);
+                holder.messageText.setAlpha(1f);
+            }
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull viewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_TEXT)) {
+            holder.messageText.setText(differ.getCurrentList().get(position).getMessage());
+            return;
         }
+        super.onBindViewHolder(holder, position, payloads);
     }
 
     @Override
     public int getItemCount() {
-        return modelList.size();
+        return differ.getCurrentList().size();
     }
 
     public static class viewHolder extends RecyclerView.ViewHolder {
-        CardView leftChatCard, rightChatCard;
-        TextView leftMsg, rightMsg;
+        TextView messageText;
+        TextView statusText;
 
         public viewHolder(@NonNull View itemView) {
             super(itemView);
-            leftChatCard = itemView.findViewById(R.id.leftChatCard);
-            rightChatCard = itemView.findViewById(R.id.rightChatCard);
-            leftMsg = itemView.findViewById(R.id.leftMsg);
-            rightMsg = itemView.findViewById(R.id.rightMsg);
+            messageText = itemView.findViewById(R.id.messageText);
+            statusText = itemView.findViewById(R.id.messageStatus);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,83 @@
 package com.example.warda_therapist;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class MessageModel {
 
     static String SENT_BY_ME = "me";
     static String SENT_BY_BOT = "bot";
 
+    // Messages typed in this session get negative ids so they never clash with history ids
+    private static final AtomicLong nextLocalId = new AtomicLong(-1);
+
+    final long id;
     String message;
     String sentBy;
+    boolean typing;
+    // Shown under a message the outbox has not delivered yet; null once it has
+    String pendingStatus;
 
     public MessageModel(String message, String sentBy) {
+        this(nextLocalId.getAndDecrement(), message, sentBy);
+    }
+
+    private MessageModel(long id, String message, String sentBy) {
+        this.id = id;
         this.message = message;
         this.sentBy = sentBy;
     }
 
+    // Rows for a saved exchange keep the same ids every time it is loaded, so reloading a session
+    // only rebinds rows that actually changed
+    public static MessageModel fromHistory(ApiService.ChatHistoryItem item, String sentBy) {
+        boolean mine = SENT_BY_ME.equals(sentBy);
+        return new MessageModel(item.getId() * 2L + (mine ? 0 : 1),
+                mine ? item.getMessage() : item.getResponse(), sentBy);
+    }
+
+    // Placeholder bot row shown until the reply arrives
+    public static MessageModel typingIndicator() {
+        MessageModel model = new MessageModel("Typing...", SENT_BY_BOT);
+        model.typing = true;
+        return model;
+    }
+
+    public long getId() {
+        return id;
+    }
+
     public String getMessage() {
         return message;
     }
 
+    public void setMessage(String message) {
+        this.message = message;
+        this.typing = false;
+    }
+
+    // Used while a streamed bot reply is still arriving
+    public void appendMessage(String chunk) {
+        this.message = this.message + chunk;
+        this.typing = false;
+    }
+
     public String getSentBy() {
         return sentBy;
     }
-}
\ No newline at end of file
+
+    public boolean isTyping() {
+        return typing;
+    }
+
+    public String getPendingStatus() {
+        return pendingStatus;
+    }
+
+    public void setPendingStatus(String pendingStatus) {
+        this.pendingStatus = pendingStatus;
+    }
+
+    public boolean isPending() {
+        return pendingStatus != null;
+    }
+}
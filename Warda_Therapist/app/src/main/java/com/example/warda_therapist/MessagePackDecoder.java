@@ -0,0 +1,359 @@
+package com.example.warda_therapist;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.BufferedSource;
+
+/**
+ * Decodes MessagePack history and dashboard responses (sent by the backend when the request
+ * asks for application/msgpack) into the same models as JsonStreamDecoder.
+ *
+ * Values are read one at a time straight from the response source; keys and fields the
+ * app does not use are skipped by length without being decoded.
+ */
+public final class MessagePackDecoder {
+
+    public static final String MEDIA_TYPE = "application/msgpack";
+
+    private MessagePackDecoder() {
+    }
+
+    // A /chat/history response: an array of maps
+    public static List<ApiService.ChatHistoryItem> readHistory(BufferedSource source) throws IOException {
+        Reader reader = new Reader(source);
+        int count = reader.nextArrayHeader();
+        List<ApiService.ChatHistoryItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(readHistoryItem(reader));
+        }
+        return items;
+    }
+
+    // A /state/dashboard response, handed to the callback section by section as it is decoded
+    public static void readDashboard(BufferedSource source, ApiService.DashboardCallback callback) throws IOException {
+        Reader reader = new Reader(source);
+        boolean hasSummary = false;
+        boolean hasTimeline = false;
+
+        int fields = reader.nextMapHeader();
+        for (int i = 0; i < fields; i++) {
+            switch (reader.nextString()) {
+                case "current_state":
+                    readCurrentState(reader, callback);
+                    break;
+                case "summary":
+                    callback.onSummary(readSummary(reader));
+                    hasSummary = true;
+                    break;
+                case "recommendations":
+                    int count = reader.nextArrayHeader();
+                    List<String> recommendations = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        recommendations.add(reader.nextString());
+                    }
+                    callback.onRecommendations(recommendations);
+                    break;
+                case "timeline":
+                    callback.onTimeline(readTimelineEntries(reader));
+                    hasTimeline = true;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+
+        if (!hasSummary || !hasTimeline) {
+            throw new IOException("Dashboard response is missing " + (hasSummary ? "timeline" : "summary"));
+        }
+    }
+
+    private static ApiService.ChatHistoryItem readHistoryItem(Reader reader) throws IOException {
+        int id = -1;
+        String message = null;
+        String response = null;
+        String timestamp = null;
+
+        int fields = reader.nextMapHeader();
+        for (int i = 0; i < fields; i++) {
+            switch (reader.nextString()) {
+                case "id":
+                    id = (int) reader.nextLong();
+                    break;
+                case "query":
+                    message = reader.nextString();
+                    break;
+                case "response":
+                    response = reader.nextString();
+                    break;
+                case "timestamp":
+                    timestamp = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+
+        if (id < 0 || message == null || response == null || timestamp == null) {
+            throw new IOException("History item is missing a field");
+        }
+        return new ApiService.ChatHistoryItem(id, message, response, timestamp);
+    }
+
+    private static List<ApiService.TimelineEntry> readTimelineEntries(Reader reader) throws IOException {
+        int count = reader.nextArrayHeader();
+        List<ApiService.TimelineEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(readTimelineEntry(reader));
+        }
+        return entries;
+    }
+
+    private static ApiService.TimelineEntry readTimelineEntry(Reader reader) throws IOException {
+        String timestamp = null;
+        String emotion = null;
+        double confidence = Double.NaN;
+        String color = null;
+        int value = 0;
+        boolean hasValue = false;
+        String message = null;
+
+        int fields = reader.nextMapHeader();
+        for (int i = 0; i < fields; i++) {
+            switch (reader.nextString()) {
+                case "timestamp":
+                    timestamp = reader.nextString();
+                    break;
+                case "emotion":
+                    emotion = reader.nextString();
+                    break;
+                case "confidence":
+                    confidence = reader.nextDouble();
+                    break;
+                case "color":
+                    color = reader.nextString();
+                    break;
+                case "value":
+                    value = (int) reader.nextLong();
+                    hasValue = true;
+                    break;
+                case "short_message":
+                    message = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+
+        if (timestamp == null || emotion == null || Double.isNaN(confidence) || color == null
+                || !hasValue || message == null) {
+            throw new IOException("Timeline entry is missing a field");
+        }
+        return new ApiService.TimelineEntry(timestamp, emotion, (float) confidence, color, value, message);
+    }
+
+    // The dashboard's current_state map, passed to the callback as its fields
+    private static void readCurrentState(Reader reader, ApiService.DashboardCallback callback) throws IOException {
+        String state = null;
+        double confidence = Double.NaN;
+        String trend = null;
+        String colorCode = null;
+        String description = null;
+
+        int fields = reader.nextMapHeader();
+        for (int i = 0; i < fields; i++) {
+            switch (reader.nextString()) {
+                case "state":
+                    state = reader.nextString();
+                    break;
+                case "confidence":
+                    confidence = reader.nextDouble();
+                    break;
+                case "trend":
+                    trend = reader.nextString();
+                    break;
+                case "color_code":
+                    colorCode = reader.nextString();
+                    break;
+                case "description":
+                    description = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+
+        if (state == null || Double.isNaN(confidence) || trend == null || colorCode == null || description == null) {
+            throw new IOException("Current state is missing a field");
+        }
+        callback.onCurrentState(state, (float) confidence, trend, colorCode, description);
+    }
+
+    private static Map<String, String> readSummary(Reader reader) throws IOException {
+        Map<String, String> summary = new HashMap<>();
+        int fields = reader.nextMapHeader();
+        for (int i = 0; i < fields; i++) {
+            String name = reader.nextString();
+            if (name.equals("state") || name.equals("trend") || name.equals("color") || name.equals("description")) {
+                summary.put(name, reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        return summary;
+    }
+
+    // Minimal pull reader for the MessagePack types the backend produces
+    private static final class Reader {
+        private final BufferedSource source;
+
+        Reader(BufferedSource source) {
+            this.source = source;
+        }
+
+        int nextMapHeader() throws IOException {
+            int b = source.readByte() & 0xff;
+            if ((b & 0xf0) == 0x80) {
+                return b & 0x0f;
+            } else if (b == 0xde) {
+                return source.readShort() & 0xffff;
+            } else if (b == 0xdf) {
+                return checkedLength(source.readInt());
+            }
+            throw unexpected("map", b);
+        }
+
+        int nextArrayHeader() throws IOException {
+            int b = source.readByte() & 0xff;
+            if ((b & 0xf0) == 0x90) {
+                return b & 0x0f;
+            } else if (b == 0xdc) {
+                return source.readShort() & 0xffff;
+            } else if (b == 0xdd) {
+                return checkedLength(source.readInt());
+            }
+            throw unexpected("array", b);
+        }
+
+        // Strings, with nil read as "null" to match the JSON decoders
+        String nextString() throws IOException {
+            int b = source.readByte() & 0xff;
+            int length;
+            if ((b & 0xe0) == 0xa0) {
+                length = b & 0x1f;
+            } else if (b == 0xd9) {
+                length = source.readByte() & 0xff;
+            } else if (b == 0xda) {
+                length = source.readShort() & 0xffff;
+            } else if (b == 0xdb) {
+                length = checkedLength(source.readInt());
+            } else if (b == 0xc0) {
+                return "null";
+            } else {
+                throw unexpected("string", b);
+            }
+            return source.readUtf8(length);
+        }
+
+        long nextLong() throws IOException {
+            int b = source.readByte() & 0xff;
+            if (b <= 0x7f) {
+                return b;
+            } else if (b >= 0xe0) {
+                return (byte) b;
+            }
+            switch (b) {
+                case 0xcc: return source.readByte() & 0xff;
+                case 0xcd: return source.readShort() & 0xffff;
+                case 0xce: return source.readInt() & 0xffffffffL;
+                case 0xcf: return source.readLong();
+                case 0xd0: return source.readByte();
+                case 0xd1: return source.readShort();
+                case 0xd2: return source.readInt();
+                case 0xd3: return source.readLong();
+                default: throw unexpected("integer", b);
+            }
+        }
+
+        // Floats, also accepting integers since Python may send 1 instead of 1.0
+        double nextDouble() throws IOException {
+            int b = peek();
+            if (b == 0xca) {
+                source.readByte();
+                return Float.intBitsToFloat(source.readInt());
+            } else if (b == 0xcb) {
+                source.readByte();
+                return Double.longBitsToDouble(source.readLong());
+            }
+            return nextLong();
+        }
+
+        void skipValue() throws IOException {
+            int b = source.readByte() & 0xff;
+            if (b <= 0x7f || b >= 0xe0 || b == 0xc0 || b == 0xc2 || b == 0xc3) {
+                return;
+            } else if ((b & 0xf0) == 0x80) {
+                skipValues(2L * (b & 0x0f));
+                return;
+            } else if ((b & 0xf0) == 0x90) {
+                skipValues(b & 0x0f);
+                return;
+            } else if ((b & 0xe0) == 0xa0) {
+                source.skip(b & 0x1f);
+                return;
+            }
+            switch (b) {
+                case 0xc4: case 0xd9: source.skip(source.readByte() & 0xff); break;
+                case 0xc5: case 0xda: source.skip(source.readShort() & 0xffff); break;
+                case 0xc6: case 0xdb: source.skip(source.readInt() & 0xffffffffL); break;
+                case 0xc7: source.skip(1 + (source.readByte() & 0xff)); break;
+                case 0xc8: source.skip(1 + (source.readShort() & 0xffff)); break;
+                case 0xc9: source.skip(1 + (source.readInt() & 0xffffffffL)); break;
+                case 0xcc: case 0xd0: source.skip(1); break;
+                case 0xcd: case 0xd1: source.skip(2); break;
+                case 0xca: case 0xce: case 0xd2: source.skip(4); break;
+                case 0xcb: case 0xcf: case 0xd3: source.skip(8); break;
+                case 0xd4: source.skip(2); break;
+                case 0xd5: source.skip(3); break;
+                case 0xd6: source.skip(5); break;
+                case 0xd7: source.skip(9); break;
+                case 0xd8: source.skip(17); break;
+                case 0xdc: skipValues(source.readShort() & 0xffff); break;
+                case 0xdd: skipValues(source.readInt() & 0xffffffffL); break;
+                case 0xde: skipValues(2L * (source.readShort() & 0xffff)); break;
+                case 0xdf: skipValues(2L * (source.readInt() & 0xffffffffL)); break;
+                default: throw unexpected("value", b);
+            }
+        }
+
+        private void skipValues(long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                skipValue();
+            }
+        }
+
+        private int peek() throws IOException {
+            source.require(1);
+            return source.getBuffer().getByte(0) & 0xff;
+        }
+
+        private static int checkedLength(int length) throws IOException {
+            if (length < 0) {
+                throw new IOException("MessagePack length too large");
+            }
+            return length;
+        }
+
+        private static IOException unexpected(String expected, int b) {
+            return new IOException("Malformed MessagePack: expected " + expected
+                    + " but found 0x" + Integer.toHexString(b));
+        }
+    }
+}
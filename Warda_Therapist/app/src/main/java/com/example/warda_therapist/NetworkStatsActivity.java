@@ -0,0 +1,102 @@
+package com.example.warda_therapist;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Debug screen listing the per-endpoint phase percentiles collected by NetworkTimings.
+ * Export writes them as CSV to the app's external files directory, where they can be
+ * pulled off the device without root.
+ */
+public class NetworkStatsActivity extends AppCompatActivity {
+    private static final String TAG = "NetworkStatsActivity";
+    private static final String EXPORT_FILE_NAME = "network_timings.csv";
+
+    private NetworkTimings timings;
+    private TextView tvTimings;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_network_stats);
+
+        ImageView btnBack = findViewById(R.id.btnBack);
+        TextView btnExport = findViewById(R.id.btnExport);
+        tvTimings = findViewById(R.id.tvTimings);
+
+        btnBack.setOnClickListener(v -> onBackPressed());
+        btnExport.setOnClickListener(v -> exportTimings());
+
+        HttpClientProvider provider = HttpClientProvider.getInstance(this);
+        timings = provider.getTimings();
+        provider.logStats();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showTimings();
+    }
+
+    private void showTimings() {
+        List<NetworkTimings.EndpointSummary> summaries = timings.getSummaries();
+        if (summaries.isEmpty()) {
+            tvTimings.setText("No calls recorded yet");
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (NetworkTimings.EndpointSummary summary : summaries) {
+            text.append(summary.endpoint)
+                    .append("  (").append(summary.calls).append(" calls, ")
+                    .append(summary.failures).append(" failed)\n");
+            text.append(String.format(Locale.US, "  %-8s %6s %8s %8s %8s %8s%n",
+                    "phase", "n", "p50", "p95", "p99", "max"));
+            for (Map.Entry<NetworkTimings.Phase, NetworkTimings.Stats> entry : summary.phases.entrySet()) {
+                NetworkTimings.Stats stats = entry.getValue();
+                text.append(String.format(Locale.US, "  %-8s %6d %8.1f %8.1f %8.1f %8.1f%n",
+                        entry.getKey().name().toLowerCase(Locale.US), stats.count,
+                        stats.p50Ms, stats.p95Ms, stats.p99Ms, stats.maxMs));
+            }
+            // Backend stages, from the Server-Timing header
+            for (Map.Entry<String, NetworkTimings.Stats> entry : summary.serverStages.entrySet()) {
+                NetworkTimings.Stats stats = entry.getValue();
+                text.append(String.format(Locale.US, "  %-8s %6d %8.1f %8.1f %8.1f %8.1f%n",
+                        "s:" + entry.getKey(), stats.count,
+                        stats.p50Ms, stats.p95Ms, stats.p99Ms, stats.maxMs));
+            }
+            text.append('\n');
+        }
+        text.append("All times in ms; s: rows are stages reported by the backend");
+        tvTimings.setText(text);
+    }
+
+    private void exportTimings() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        File file = new File(directory, EXPORT_FILE_NAME);
+        try (Writer writer = new FileWriter(file)) {
+            timings.writeCsv(writer);
+            Log.d(TAG, "Network timings exported to " + file);
+            Toast.makeText(this, "Saved to " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Error exporting network timings: " + e.getMessage(), e);
+            Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+}
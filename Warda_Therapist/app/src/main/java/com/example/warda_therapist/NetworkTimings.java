@@ -0,0 +1,483 @@
+package com.example.warda_therapist;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Where the time of each call goes, per endpoint.
+ *
+ * OkHttp reports the phases of a call through its EventListener; one listener per call turns
+ * them into durations and, once the callback has handled the response, adds them to that
+ * endpoint's histograms. Endpoints are the method and path with numeric segments folded, so
+ * every user's /chat/history/{id} lands in one set of histograms.
+ *
+ * Phases are recorded only when they happen: a pooled connection has no DNS or connect time,
+ * and a response from the disk cache has no network phases at all. Body time runs from the
+ * first to the last byte read; decoders that parse straight from the socket do their work
+ * inside it, so decode only counts what the callback does after the body has been read.
+ *
+ * Stages the backend reports through Server-Timing are kept next to the phases of the same
+ * endpoint, so a slow TTFB can be split into retrieval, classification and generation.
+ */
+public final class NetworkTimings {
+
+    public enum Phase {
+        // Waiting in the scheduler and the dispatcher for a thread
+        QUEUE,
+        DNS,
+        // TCP connect, without the TLS handshake
+        CONNECT,
+        TLS,
+        // Writing headers and body
+        REQUEST,
+        // Request sent until the first response header arrives
+        TTFB,
+        BODY,
+        DECODE,
+        // Enqueued until the callback returned
+        TOTAL
+    }
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<Call, CallTimer> running = new ConcurrentHashMap<>();
+
+    // One timer per call, forwarding every event to the pool counters as well
+    EventListener.Factory listenerFactory(EventListener delegate) {
+        return call -> {
+            CallTimer timer = new CallTimer(delegate);
+            running.put(call, timer);
+            return timer;
+        };
+    }
+
+    // The callback for the call has returned; its timings are complete
+    void finish(Call call, boolean failed) {
+        CallTimer timer = running.remove(call);
+        if (timer == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Endpoint endpoint = endpoints.computeIfAbsent(endpointOf(call.request()), Endpoint::new);
+        endpoint.record(timer, now, failed);
+    }
+
+    // Backend stages reported for the call; recorded with its phases when it finishes
+    void recordServerTiming(Call call, Map<String, Double> stages) {
+        CallTimer timer = running.get(call);
+        if (timer != null && !stages.isEmpty()) {
+            timer.serverStages = stages;
+        }
+    }
+
+    // The call was dropped before it ever started
+    void discard(Call call) {
+        running.remove(call);
+    }
+
+    // Snapshot of every endpoint's histograms, sorted by endpoint
+    public List<EndpointSummary> getSummaries() {
+        List<EndpointSummary> summaries = new ArrayList<>();
+        for (Endpoint endpoint : new TreeMap<>(endpoints).values()) {
+            summaries.add(endpoint.summarize());
+        }
+        return summaries;
+    }
+
+    public void reset() {
+        endpoints.clear();
+    }
+
+    // One row per endpoint and phase; durations in milliseconds
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("endpoint,phase,count,p50_ms,p95_ms,p99_ms,max_ms,mean_ms\n");
+        for (EndpointSummary summary : getSummaries()) {
+            for (Map.Entry<Phase, Stats> entry : summary.phases.entrySet()) {
+                Stats stats = entry.getValue();
+                writer.write(String.format(Locale.US, "%s,%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f\n",
+                        summary.endpoint, entry.getKey().name().toLowerCase(Locale.US), stats.count,
+                        stats.p50Ms, stats.p95Ms, stats.p99Ms, stats.maxMs, stats.meanMs));
+            }
+            for (Map.Entry<String, Stats> entry : summary.serverStages.entrySet()) {
+                Stats stats = entry.getValue();
+                writer.write(String.format(Locale.US, "%s,server:%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f\n",
+                        summary.endpoint, entry.getKey(), stats.count,
+                        stats.p50Ms, stats.p95Ms, stats.p99Ms, stats.maxMs, stats.meanMs));
+            }
+        }
+    }
+
+    // "GET /chat/history/{id}" for GET /chat/history/42?limit=100
+    static String endpointOf(Request request) {
+        StringBuilder endpoint = new StringBuilder(request.method()).append(' ');
+        for (String segment : request.url().pathSegments()) {
+            endpoint.append('/').append(isNumeric(segment) ? "{id}" : segment);
+        }
+        return endpoint.toString();
+    }
+
+    private static boolean isNumeric(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static final class EndpointSummary {
+        public final String endpoint;
+        public final long calls;
+        public final long failures;
+        public final Map<Phase, Stats> phases;
+        // Backend stages from Server-Timing, in the order the backend reported them
+        public final Map<String, Stats> serverStages;
+
+        EndpointSummary(String endpoint, long calls, long failures, Map<Phase, Stats> phases,
+                        Map<String, Stats> serverStages) {
+            this.endpoint = endpoint;
+            this.calls = calls;
+            this.failures = failures;
+            this.phases = phases;
+            this.serverStages = serverStages;
+        }
+    }
+
+    public static final class Stats {
+        public final long count;
+        public final double p50Ms;
+        public final double p95Ms;
+        public final double p99Ms;
+        public final double maxMs;
+        public final double meanMs;
+
+        Stats(long count, double p50Ms, double p95Ms, double p99Ms, double maxMs, double meanMs) {
+            this.count = count;
+            this.p50Ms = p50Ms;
+            this.p95Ms = p95Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+            this.meanMs = meanMs;
+        }
+    }
+
+    private static final class Endpoint {
+        final String name;
+        final Map<Phase, Histogram> histograms = new EnumMap<>(Phase.class);
+        final Map<String, Histogram> serverStages = new LinkedHashMap<>();
+        long calls;
+        long failures;
+
+        Endpoint(String name) {
+            this.name = name;
+            for (Phase phase : Phase.values()) {
+                histograms.put(phase, new Histogram());
+            }
+        }
+
+        synchronized void record(CallTimer timer, long finishedAt, boolean failed) {
+            calls++;
+            if (failed) {
+                failures++;
+            }
+            add(Phase.QUEUE, timer.createdAt, timer.dispatchedAt);
+            add(Phase.DNS, timer.dnsStart, timer.dnsEnd);
+            add(Phase.CONNECT, timer.connectStart, timer.secureConnectStart != 0 ? timer.secureConnectStart : timer.connectEnd);
+            add(Phase.TLS, timer.secureConnectStart, timer.secureConnectEnd);
+            add(Phase.REQUEST, timer.requestStart, timer.requestEnd);
+            add(Phase.TTFB, timer.requestEnd, timer.responseHeadersStart);
+            add(Phase.BODY, timer.responseBodyStart, timer.responseBodyEnd);
+            if (!failed) {
+                // A cache hit has no response events; it is decoded from when it was dispatched
+                long decodeFrom = Math.max(timer.dispatchedAt, Math.max(timer.responseBodyEnd, timer.responseHeadersEnd));
+                add(Phase.DECODE, decodeFrom, finishedAt);
+            }
+            add(Phase.TOTAL, timer.createdAt, finishedAt);
+
+            Map<String, Double> stages = timer.serverStages;
+            if (stages != null) {
+                for (Map.Entry<String, Double> stage : stages.entrySet()) {
+                    Histogram histogram = serverStages.get(stage.getKey());
+                    if (histogram == null) {
+                        histogram = new Histogram();
+                        serverStages.put(stage.getKey(), histogram);
+                    }
+                    histogram.record((long) (stage.getValue() * 1000));
+                }
+            }
+        }
+
+        // Phases that did not happen on this call have a zero start or end
+        private void add(Phase phase, long start, long end) {
+            if (start != 0 && end >= start) {
+                histograms.get(phase).record((end - start) / 1_000);
+            }
+        }
+
+        synchronized EndpointSummary summarize() {
+            Map<Phase, Stats> phases = new EnumMap<>(Phase.class);
+            for (Map.Entry<Phase, Histogram> entry : histograms.entrySet()) {
+                if (entry.getValue().count > 0) {
+                    phases.put(entry.getKey(), entry.getValue().stats());
+                }
+            }
+            Map<String, Stats> stages = new LinkedHashMap<>();
+            for (Map.Entry<String, Histogram> entry : serverStages.entrySet()) {
+                stages.put(entry.getKey(), entry.getValue().stats());
+            }
+            return new EndpointSummary(name, calls, failures, phases, stages);
+        }
+    }
+
+    /**
+     * Log-bucketed histogram of microsecond durations: eight buckets per doubling, so any
+     * percentile is within about 9% of the true value, in constant memory however many calls
+     * are recorded. Not thread-safe; Endpoint guards it.
+     */
+    static final class Histogram {
+        private static final int BUCKETS_PER_DOUBLING = 8;
+        // Up to 2^28 µs, about four and a half minutes; anything slower lands in the last bucket
+        private static final int BUCKETS = 28 * BUCKETS_PER_DOUBLING + 2;
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sumMicros;
+        private long maxMicros;
+
+        void record(long micros) {
+            buckets[bucketOf(micros)]++;
+            count++;
+            sumMicros += micros;
+            maxMicros = Math.max(maxMicros, micros);
+        }
+
+        // Upper bound of the bucket holding the given quantile, capped at the largest value seen
+        long percentileMicros(double quantile) {
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        Stats stats() {
+            return new Stats(count,
+                    percentileMicros(0.50) / 1000.0,
+                    percentileMicros(0.95) / 1000.0,
+                    percentileMicros(0.99) / 1000.0,
+                    maxMicros / 1000.0,
+                    count > 0 ? sumMicros / 1000.0 / count : 0);
+        }
+
+        private static int bucketOf(long micros) {
+            if (micros < 1) {
+                return 0;
+            }
+            int index = 1 + (int) Math.floor(Math.log(micros) / Math.log(2) * BUCKETS_PER_DOUBLING);
+            return Math.min(index, BUCKETS - 1);
+        }
+
+        private static long upperBoundOf(int bucket) {
+            if (bucket == 0) {
+                return 0;
+            }
+            return (long) Math.ceil(Math.pow(2, (double) bucket / BUCKETS_PER_DOUBLING));
+        }
+    }
+
+    // Timestamps of one call's phases, in System.nanoTime(); zero until the event happens
+    private static final class CallTimer extends EventListener {
+        private final EventListener delegate;
+        final long createdAt = System.nanoTime();
+        long dispatchedAt;
+        long dnsStart;
+        long dnsEnd;
+        long connectStart;
+        long secureConnectStart;
+        long secureConnectEnd;
+        long connectEnd;
+        long requestStart;
+        long requestEnd;
+        long responseHeadersStart;
+        long responseHeadersEnd;
+        long responseBodyStart;
+        long responseBodyEnd;
+        // Set by the callback when the response carried Server-Timing
+        volatile Map<String, Double> serverStages;
+
+        CallTimer(EventListener delegate) {
+            this.delegate = delegate;
+        }
+
+        // First event seen on a dispatcher thread: the call has left the queues
+        private void dispatched() {
+            if (dispatchedAt == 0) {
+                dispatchedAt = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void callStart(Call call) {
+            delegate.callStart(call);
+        }
+
+        @Override
+        public void cacheHit(Call call, Response response) {
+            dispatched();
+            delegate.cacheHit(call, response);
+        }
+
+        @Override
+        public void cacheMiss(Call call) {
+            dispatched();
+            delegate.cacheMiss(call);
+        }
+
+        @Override
+        public void cacheConditionalHit(Call call, Response cachedResponse) {
+            dispatched();
+            delegate.cacheConditionalHit(call, cachedResponse);
+        }
+
+        @Override
+        public void satisfactionFailure(Call call, Response response) {
+            dispatched();
+            delegate.satisfactionFailure(call, response);
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dispatched();
+            dnsStart = System.nanoTime();
+            delegate.dnsStart(call, domainName);
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsEnd = System.nanoTime();
+            delegate.dnsEnd(call, domainName, inetAddressList);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            dispatched();
+            // A retried route restarts the clock, so only the attempt that worked is timed
+            connectStart = System.nanoTime();
+            secureConnectStart = 0;
+            secureConnectEnd = 0;
+            delegate.connectStart(call, inetSocketAddress, proxy);
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = System.nanoTime();
+            delegate.secureConnectStart(call);
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            secureConnectEnd = System.nanoTime();
+            delegate.secureConnectEnd(call, handshake);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            connectEnd = System.nanoTime();
+            delegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                  Protocol protocol, IOException ioe) {
+            delegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            dispatched();
+            delegate.connectionAcquired(call, connection);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = System.nanoTime();
+            delegate.requestHeadersStart(call);
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            requestEnd = System.nanoTime();
+            delegate.requestHeadersEnd(call, request);
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            requestEnd = System.nanoTime();
+            delegate.requestBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            responseHeadersStart = System.nanoTime();
+            delegate.responseHeadersStart(call);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            responseHeadersEnd = System.nanoTime();
+            delegate.responseHeadersEnd(call, response);
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            responseBodyStart = System.nanoTime();
+            delegate.responseBodyStart(call);
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            responseBodyEnd = System.nanoTime();
+            delegate.responseBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            delegate.callEnd(call);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            delegate.callFailed(call, ioe);
+        }
+
+        @Override
+        public void canceled(Call call) {
+            delegate.canceled(call);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.warda_therapist;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Single-flight layer over the scheduler: a GET issued while an identical one is
+ * still in flight does not go to the network, it waits for the first call and gets the same
+ * response.
+ *
+ * Requests are identical when method, URL and the headers that select a different response
+ * (Accept, Cache-Control) match. A call with one waiter is handed its response untouched, so
+ * decoders still stream from the socket; with several waiters the body is read once and each
+ * gets its own copy. Anything other than a GET goes straight to the scheduler. A request that
+ * joins a flight keeps the priority the flight was scheduled with.
+ *
+ * Each waiter stays in its own {@link CallScope}: when its screen goes away it leaves the
+ * flight, and the network call is cancelled only once no waiter is left.
+ */
+public final class RequestCoalescer {
+    private static final String TAG = "RequestCoalescer";
+
+    private final RequestScheduler scheduler;
+    private final Map<String, Flight> inFlight = new HashMap<>();
+    private final AtomicLong networkCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+
+    RequestCoalescer(RequestScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void enqueue(Request request, Callback callback) {
+        if (!"GET".equals(request.method())) {
+            scheduler.enqueue(request, callback);
+            return;
+        }
+
+        Waiter waiter = new Waiter(CallScope.of(request), callback);
+        if (waiter.scope != null && !waiter.scope.add(waiter)) {
+            return;
+        }
+
+        String key = keyOf(request);
+        Flight flight;
+        synchronized (inFlight) {
+            flight = inFlight.get(key);
+            if (flight != null) {
+                waiter.flight = flight;
+                flight.waiters.add(waiter);
+                coalescedCalls.incrementAndGet();
+                Log.d(TAG, "Joined in-flight " + request.url().encodedPath());
+                return;
+            }
+            flight = new Flight(key);
+            waiter.flight = flight;
+            flight.waiters.add(waiter);
+            inFlight.put(key, flight);
+        }
+
+        networkCalls.incrementAndGet();
+        // The shared call belongs to no single screen; waiters are scoped one by one instead
+        CallScope.Cancellable handle = scheduler.enqueue(request.newBuilder().tag(CallScope.class, null).build(), flight);
+        synchronized (inFlight) {
+            if (!flight.waiters.isEmpty()) {
+                flight.handle = handle;
+                return;
+            }
+        }
+        // Every waiter left before the call was even handed over
+        handle.cancel();
+    }
+
+    // GETs that went to the network
+    public long getNetworkCallCount() {
+        return networkCalls.get();
+    }
+
+    // GETs answered by joining one already in flight, i.e. requests the backend never saw
+    public long getCoalescedCount() {
+        return coalescedCalls.get();
+    }
+
+    private static String keyOf(Request request) {
+        return request.method() + " " + request.url()
+                + " " + request.header("Accept")
+                + " " + request.header("Cache-Control");
+    }
+
+    // Waiters still on this flight when it lands; later identical requests start a new one
+    private List<Waiter> land(Flight flight) {
+        List<Waiter> waiters;
+        synchronized (inFlight) {
+            if (inFlight.get(flight.key) == flight) {
+                inFlight.remove(flight.key);
+            }
+            waiters = new ArrayList<>(flight.waiters);
+            flight.waiters.clear();
+        }
+        for (Waiter waiter : waiters) {
+            if (waiter.scope != null) {
+                waiter.scope.remove(waiter);
+            }
+        }
+        return waiters;
+    }
+
+    // Take a waiter off its flight; the last one to leave cancels the network call
+    private void leave(Waiter waiter) {
+        CallScope.Cancellable abandoned = null;
+        synchronized (inFlight) {
+            Flight flight = waiter.flight;
+            if (!flight.waiters.remove(waiter) || !flight.waiters.isEmpty()) {
+                return;
+            }
+            if (inFlight.get(flight.key) == flight) {
+                inFlight.remove(flight.key);
+            }
+            abandoned = flight.handle;
+        }
+        if (abandoned != null) {
+            abandoned.cancel();
+        }
+    }
+
+    private final class Waiter implements CallScope.Cancellable {
+        final CallScope scope;
+        final Callback callback;
+        Flight flight;
+
+        Waiter(CallScope scope, Callback callback) {
+            this.scope = scope;
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancel() {
+            leave(this);
+        }
+    }
+
+    private final class Flight implements Callback {
+        final String key;
+        final List<Waiter> waiters = new ArrayList<>();
+        // Set once the scheduler has the call
+        CallScope.Cancellable handle;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            for (Waiter waiter : land(this)) {
+                waiter.callback.onFailure(call, e);
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            List<Waiter> waiters = land(this);
+            if (waiters.isEmpty()) {
+                response.close();
+                return;
+            }
+            if (waiters.size() == 1) {
+                waiters.get(0).callback.onResponse(call, response);
+                return;
+            }
+
+            byte[] bytes;
+            MediaType contentType;
+            try (ResponseBody body = response.body()) {
+                bytes = body != null ? body.bytes() : new byte[0];
+                contentType = body != null ? body.contentType() : null;
+            } catch (IOException e) {
+                for (Waiter waiter : waiters) {
+                    waiter.callback.onFailure(call, e);
+                }
+                return;
+            }
+
+            for (Waiter waiter : waiters) {
+                Response copy = response.newBuilder()
+                        .body(ResponseBody.create(bytes, contentType))
+                        .build();
+                try {
+                    waiter.callback.onResponse(call, copy);
+                } catch (IOException e) {
+                    // Same as OkHttp: a callback that throws does not affect the others
+                    Log.e(TAG, "Callback failed for " + call.request().url().encodedPath(), e);
+                }
+            }
+        }
+    }
+}
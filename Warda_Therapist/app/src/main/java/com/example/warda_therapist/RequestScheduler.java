@@ -0,0 +1,267 @@
+package com.example.warda_therapist;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Decides when each call is handed to OkHttp's dispatcher, which on its own runs calls in
+ * the order they were enqueued.
+ *
+ * Requests carry a {@link Priority} tag. Interactive calls (chat, sign-in) are dispatched at
+ * once, and the dispatcher's last per-host slots are kept free for them. Calls for the screen
+ * in front of the user wait only for a free slot. Background calls (sync, health checks) also
+ * wait while any interactive call is running, and their concurrency follows the backend's
+ * latency: it grows while responses come back at the usual speed and halves when they slow
+ * down, so background work backs off before it can delay an LLM round trip. Only background
+ * calls are sampled, each against the best recent latency of its own endpoint, since a
+ * dashboard or a page of history is always slower than a health check.
+ *
+ * Reads that may only be answered from the HTTP cache never touch the network and start at
+ * once without taking a slot. Calls tagged with a {@link CallScope} are cancelled, queued or
+ * running, when the scope ends, and their callbacks are released without being called.
+ */
+public final class RequestScheduler {
+    private static final String TAG = "RequestScheduler";
+
+    public enum Priority {
+        INTERACTIVE,
+        VISIBLE,
+        BACKGROUND
+    }
+
+    // Per-host slots only interactive calls may use
+    private static final int RESERVED_FOR_INTERACTIVE = 2;
+
+    // Bounds of the adaptive background limit
+    private static final double MIN_BACKGROUND = 1;
+    private static final double MAX_BACKGROUND = 3;
+
+    // A response this many times slower than the endpoint's best recent one counts as congestion
+    private static final double CONGESTION_RATIO = 2.0;
+    // Each best-latency baseline drifts up by this factor per sample, so it follows network changes
+    private static final double BASELINE_DRIFT = 1.02;
+
+    private final OkHttpClient client;
+    private final NetworkTimings timings;
+    private final int sharedLimit;
+
+    // Guarded by this
+    private final Deque<Pending> visibleQueue = new ArrayDeque<>();
+    private final Deque<Pending> backgroundQueue = new ArrayDeque<>();
+    private int interactiveRunning;
+    private int visibleRunning;
+    private int backgroundRunning;
+    private double backgroundLimit = MIN_BACKGROUND;
+    // Best recent latency per endpoint, as named by NetworkTimings.endpointOf
+    private final Map<String, Double> baselinesMs = new HashMap<>();
+
+    RequestScheduler(OkHttpClient client, int maxRequestsPerHost, NetworkTimings timings) {
+        this.client = client;
+        this.timings = timings;
+        this.sharedLimit = Math.max(1, maxRequestsPerHost - RESERVED_FOR_INTERACTIVE);
+    }
+
+    // Priority a request was tagged with; untagged requests count as visible
+    public static Priority priorityOf(Request request) {
+        Priority priority = request.tag(Priority.class);
+        return priority != null ? priority : Priority.VISIBLE;
+    }
+
+    // Returns a handle that cancels the call and releases its callback
+    public CallScope.Cancellable enqueue(Request request, Callback callback) {
+        Pending pending = new Pending(client.newCall(request), priorityOf(request), CallScope.of(request), callback);
+        if (pending.scope != null && !pending.scope.add(pending)) {
+            // The screen that asked is already gone
+            pending.callback = null;
+            timings.discard(pending.call);
+            return pending;
+        }
+
+        if (request.cacheControl().onlyIfCached()) {
+            pending.counted = false;
+            pending.start();
+            return pending;
+        }
+
+        Pending startNow = pending;
+        synchronized (this) {
+            switch (pending.priority) {
+                case INTERACTIVE:
+                    interactiveRunning++;
+                    break;
+                case VISIBLE:
+                    visibleQueue.addLast(pending);
+                    startNow = null;
+                    break;
+                default:
+                    backgroundQueue.addLast(pending);
+                    startNow = null;
+                    break;
+            }
+        }
+        if (startNow != null) {
+            startNow.start();
+        }
+        promote();
+        return pending;
+    }
+
+    public synchronized int getQueuedCount() {
+        return visibleQueue.size() + backgroundQueue.size();
+    }
+
+    // Background calls currently allowed to run at once
+    public synchronized int getBackgroundLimit() {
+        return (int) backgroundLimit;
+    }
+
+    // Start queued calls while their class has room: visible ones first, then background
+    private void promote() {
+        while (true) {
+            Pending next;
+            synchronized (this) {
+                int shared = visibleRunning + backgroundRunning;
+                if (!visibleQueue.isEmpty() && shared < sharedLimit) {
+                    next = visibleQueue.pollFirst();
+                    visibleRunning++;
+                } else if (!backgroundQueue.isEmpty() && shared < sharedLimit
+                        && interactiveRunning == 0 && backgroundRunning < (int) backgroundLimit) {
+                    next = backgroundQueue.pollFirst();
+                    backgroundRunning++;
+                } else {
+                    return;
+                }
+            }
+            next.start();
+        }
+    }
+
+    // Take a call out of its queue; false if it has already been started
+    private synchronized boolean dequeue(Pending pending) {
+        return visibleQueue.remove(pending) || backgroundQueue.remove(pending);
+    }
+
+    private void finished(Pending pending) {
+        if (pending.scope != null) {
+            pending.scope.remove(pending);
+        }
+        if (!pending.counted) {
+            return;
+        }
+        synchronized (this) {
+            switch (pending.priority) {
+                case INTERACTIVE:
+                    interactiveRunning--;
+                    break;
+                case VISIBLE:
+                    visibleRunning--;
+                    break;
+                default:
+                    backgroundRunning--;
+                    break;
+            }
+        }
+        promote();
+    }
+
+    // Time from sending a background call's request to its response headers, so neither
+    // dispatcher queueing nor connection setup counts as backend load
+    private synchronized void recordLatency(String endpoint, long latencyMs) {
+        Double previous = baselinesMs.get(endpoint);
+        double baselineMs = previous == null ? latencyMs : Math.min(previous * BASELINE_DRIFT, latencyMs);
+        baselinesMs.put(endpoint, baselineMs);
+        if (latencyMs > baselineMs * CONGESTION_RATIO) {
+            double reduced = Math.max(MIN_BACKGROUND, backgroundLimit / 2);
+            if ((int) reduced < (int) backgroundLimit) {
+                Log.d(TAG, endpoint + " took " + latencyMs + " ms against a " + (long) baselineMs
+                        + " ms baseline, background limit now " + (int) reduced);
+            }
+            backgroundLimit = reduced;
+        } else {
+            // Additive increase: roughly one more slot per limit's worth of good responses
+            backgroundLimit = Math.min(MAX_BACKGROUND, backgroundLimit + 1 / backgroundLimit);
+        }
+    }
+
+    private final class Pending implements Callback, CallScope.Cancellable {
+        final Call call;
+        final Priority priority;
+        final CallScope scope;
+        // Cleared on cancel, so nothing the caller's callback holds stays reachable from OkHttp
+        volatile Callback callback;
+        // Whether the call takes one of its priority's slots
+        boolean counted = true;
+
+        Pending(Call call, Priority priority, CallScope scope, Callback callback) {
+            this.call = call;
+            this.priority = priority;
+            this.scope = scope;
+            this.callback = callback;
+        }
+
+        void start() {
+            call.enqueue(this);
+        }
+
+        @Override
+        public void cancel() {
+            callback = null;
+            if (dequeue(this)) {
+                // Never started, so there is no call to stop or slot to free
+                if (scope != null) {
+                    scope.remove(this);
+                }
+                timings.discard(call);
+                return;
+            }
+            call.cancel();
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            Callback target = callback;
+            try {
+                if (target != null) {
+                    target.onFailure(call, e);
+                }
+            } finally {
+                timings.finish(call, true);
+                finished(this);
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            // Only background calls are sampled: the limit they feed governs them alone
+            Response network = response.networkResponse();
+            if (counted && priority == Priority.BACKGROUND && network != null) {
+                recordLatency(NetworkTimings.endpointOf(call.request()),
+                        network.receivedResponseAtMillis() - network.sentRequestAtMillis());
+            }
+            Callback target = callback;
+            // The slot is held until the callback has read the body
+            try {
+                if (target != null) {
+                    target.onResponse(call, response);
+                } else {
+                    response.close();
+                }
+            } finally {
+                // Decode time ends here, once the callback has handled the body
+                timings.finish(call, false);
+                finished(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.warda_therapist;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses the backend's Server-Timing value, e.g.
+ * "emotion;dur=41.2, retrieval;dur=230.5, llm;dur=1810.0, total;dur=2110.3",
+ * into stage durations in milliseconds, in the order the backend ran them.
+ *
+ * Only the name and the dur parameter are kept; entries without a duration and
+ * malformed entries are skipped rather than failing the response they came with.
+ */
+public final class ServerTiming {
+    public static final String HEADER = "Server-Timing";
+
+    private ServerTiming() {
+    }
+
+    // Stage durations, or an empty map for a null or empty value
+    public static Map<String, Double> parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Double> stages = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(";");
+            String name = parts[0].trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (!param.regionMatches(true, 0, "dur=", 0, 4)) {
+                    continue;
+                }
+                try {
+                    stages.put(name, Double.parseDouble(param.substring(4).replace("\"", "")));
+                } catch (NumberFormatException e) {
+                    // Not a number; the stage is left out
+                }
+                break;
+            }
+        }
+        return Collections.unmodifiableMap(stages);
+    }
+
+    // "emotion 41 · retrieval 231 · llm 1810 · total 2110 ms", for debug displays
+    public static String format(Map<String, Double> stages) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Double> stage : stages.entrySet()) {
+            if (text.length() > 0) {
+                text.append(" · ");
+            }
+            text.append(stage.getKey()).append(' ')
+                    .append(String.format(Locale.US, "%.0f", stage.getValue()));
+        }
+        if (text.length() > 0) {
+            text.append(" ms");
+        }
+        return text.toString();
+    }
+}
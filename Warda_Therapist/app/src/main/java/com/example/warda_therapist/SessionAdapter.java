@@ -0,0 +1,126 @@
+package com.example.warda_therapist;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Past sessions in the drawer, newest first.
+ *
+ * Only the newest {@link #PAGE_SIZE} sessions are shown at first; {@link #showMore()} pages
+ * older ones in as the list is scrolled. Updates from the Sessionizer only touch the end of
+ * the history, so they are applied as item inserts and changes at the top of the list.
+ */
+public class SessionAdapter extends RecyclerView.Adapter<SessionAdapter.SessionViewHolder> {
+
+    static final int PAGE_SIZE = 30;
+
+    public interface OnSessionClickListener {
+        // sessionIndex is the session's position in the oldest-first list
+        void onSessionClick(ApiService.SessionData session, int sessionIndex);
+    }
+
+    private final OnSessionClickListener listener;
+
+    // Oldest first, as produced by the Sessionizer
+    private List<ApiService.SessionData> sessions = Collections.emptyList();
+
+    // How many of the newest sessions are currently shown
+    private int shownCount;
+
+    public SessionAdapter(OnSessionClickListener listener) {
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replace the sessions with a newer snapshot. Only the changed tail, as worked out by
+     * {@link SessionDiff}, is notified.
+     */
+    public void setSessions(List<ApiService.SessionData> newSessions) {
+        SessionDiff diff = SessionDiff.between(sessions, newSessions, shownCount);
+        sessions = newSessions;
+
+        if (diff.reset) {
+            // Start again from the newest page
+            shownCount = Math.min(newSessions.size(), PAGE_SIZE);
+            notifyDataSetChanged();
+            return;
+        }
+
+        if (diff.changed > 0) {
+            notifyItemRangeChanged(0, diff.changed);
+        }
+        if (diff.inserted > 0) {
+            shownCount += diff.inserted;
+            notifyItemRangeInserted(0, diff.inserted);
+        }
+    }
+
+    // Page in older sessions. Returns false when everything is already shown.
+    public boolean showMore() {
+        int remaining = sessions.size() - shownCount;
+        if (remaining <= 0) {
+            return false;
+        }
+        int page = Math.min(remaining, PAGE_SIZE);
+        int start = shownCount;
+        shownCount += page;
+        notifyItemRangeInserted(start, page);
+        return true;
+    }
+
+    public boolean hasMore() {
+        return shownCount < sessions.size();
+    }
+
+    private int sessionIndexOf(int position) {
+        return sessions.size() - 1 - position;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        // A session keeps its first message for life, so its id identifies the session
+        List<ApiService.ChatHistoryItem> messages = sessions.get(sessionIndexOf(position)).getMessages();
+        return messages.isEmpty() ? RecyclerView.NO_ID : messages.get(0).getId();
+    }
+
+    @NonNull
+    @Override
+    public SessionViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_session, parent, false);
+        return new SessionViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SessionViewHolder holder, int position) {
+        int sessionIndex = sessionIndexOf(position);
+        ApiService.SessionData session = sessions.get(sessionIndex);
+
+        holder.tvSessionTitle.setText(session.getTitle());
+        holder.tvSessionPreview.setText(session.getPreviewText());
+        holder.itemView.setOnClickListener(v -> listener.onSessionClick(session, sessionIndex));
+    }
+
+    @Override
+    public int getItemCount() {
+        return shownCount;
+    }
+
+    public static class SessionViewHolder extends RecyclerView.ViewHolder {
+        TextView tvSessionTitle, tvSessionPreview;
+
+        public SessionViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvSessionTitle = itemView.findViewById(R.id.tvSessionTitle);
+            tvSessionPreview = itemView.findViewById(R.id.tvSessionPreview);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.warda_therapist;
+
+import java.util.List;
+
+/**
+ * How SessionAdapter's newest-first list changes between two Sessionizer snapshots.
+ *
+ * Sessions the two snapshots share are the same objects, so only the changed tail is
+ * compared. Replaced sessions sit at the top of the list and new ones go above them.
+ */
+final class SessionDiff {
+
+    // The whole list must be rebound and paging starts again from the newest page
+    final boolean reset;
+
+    // Sessions replaced in place, at positions 0 until changed
+    final int changed;
+
+    // New sessions inserted at position 0, above the changed ones
+    final int inserted;
+
+    private SessionDiff(boolean reset, int changed, int inserted) {
+        this.reset = reset;
+        this.changed = changed;
+        this.inserted = inserted;
+    }
+
+    static SessionDiff between(List<ApiService.SessionData> oldSessions,
+                               List<ApiService.SessionData> newSessions, int shownCount) {
+        int oldCount = oldSessions.size();
+        int newCount = newSessions.size();
+
+        // First index where the snapshots differ, walking back from the newest
+        int firstChanged = Math.min(oldCount, newCount);
+        while (firstChanged > 0 && oldSessions.get(firstChanged - 1) != newSessions.get(firstChanged - 1)) {
+            firstChanged--;
+        }
+
+        int replaced = oldCount - firstChanged;
+        int added = newCount - oldCount;
+
+        if (firstChanged == 0 || added < 0 || replaced > shownCount) {
+            // First load, a different history or a shrink
+            return new SessionDiff(true, 0, 0);
+        }
+        return new SessionDiff(false, replaced, added);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.warda_therapist;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a user's chat history into sessions wherever two messages are more than
+ * 30 minutes apart, remembering the boundaries it has already found.
+ *
+ * History snapshots from ChatHistoryStore only ever grow at the end, so each update
+ * looks at the new messages alone: they either extend the last session or open new ones.
+ * Sessions before the last one are never touched again. Both the sessions and the last
+ * session's messages are kept in AppendOnlyLists, so an update costs the number of new
+ * messages, not the length of the history.
+ */
+public class Sessionizer {
+    private static final String TAG = "Sessionizer";
+
+    // Gap between two messages that starts a new session
+    static final long SESSION_BREAK_MS = 30 * 60 * 1000;
+
+    private static final Map<Integer, Sessionizer> instances = new HashMap<>();
+
+    // Every session but the last, which is the only one that can still grow
+    private AppendOnlyList<ApiService.SessionData> closed = new AppendOnlyList<>();
+    private ApiService.SessionData open;
+    private AppendOnlyList<ApiService.ChatHistoryItem> openItems = new AppendOnlyList<>();
+
+    // How much of the history has been consumed, and the id of the last message consumed
+    private int processedCount;
+    private int lastId;
+    private long lastMessageTime = TimestampCodec.INVALID;
+
+    Sessionizer() {
+    }
+
+    public static Sessionizer forUser(int userId) {
+        synchronized (instances) {
+            Sessionizer sessionizer = instances.get(userId);
+            if (sessionizer == null) {
+                sessionizer = new Sessionizer();
+                instances.put(userId, sessionizer);
+            }
+            return sessionizer;
+        }
+    }
+
+    /**
+     * Bring the sessions up to date with a history snapshot, oldest first. Only the messages
+     * after the ones already consumed are read.
+     *
+     * @return index of the first session that was added or replaced, or the session
+     *         count when nothing changed
+     */
+    public synchronized int update(List<ApiService.ChatHistoryItem> history) {
+        // The snapshot must continue the one we saw last; otherwise (e.g. history was cleared) start over
+        if (history.size() < processedCount
+                || (processedCount > 0 && history.get(processedCount - 1).getId() != lastId)) {
+            Log.d(TAG, "History no longer matches, regrouping " + history.size() + " messages");
+            reset();
+        }
+
+        int firstChanged = sessionCount();
+        boolean openExtended = false;
+
+        for (int i = processedCount; i < history.size(); i++) {
+            ApiService.ChatHistoryItem item = history.get(i);
+            long messageTime = item.getTimestampMillis();
+            if (messageTime == TimestampCodec.INVALID) {
+                Log.e(TAG, "Error parsing date: " + item.getTimestamp());
+                continue;
+            }
+
+            if (lastMessageTime == TimestampCodec.INVALID || messageTime - lastMessageTime > SESSION_BREAK_MS) {
+                closeOpenSession(openExtended);
+                openExtended = false;
+            } else if (!openExtended && open != null) {
+                // The last session grows; it is rebuilt once when the loop is done
+                firstChanged = Math.min(firstChanged, closed.size());
+            }
+
+            openItems.add(item);
+            lastMessageTime = messageTime;
+            openExtended = true;
+        }
+
+        if (openExtended) {
+            publishOpenSession();
+        }
+
+        if (processedCount < history.size()) {
+            processedCount = history.size();
+            lastId = history.get(processedCount - 1).getId();
+        }
+        return Math.min(firstChanged, sessionCount());
+    }
+
+    // Snapshot of the sessions, oldest first; taking one copies nothing
+    public synchronized List<ApiService.SessionData> getSessions() {
+        return open == null ? closed.snapshot() : closed.snapshotWith(open);
+    }
+
+    public synchronized void reset() {
+        closed = new AppendOnlyList<>();
+        open = null;
+        openItems = new AppendOnlyList<>();
+        processedCount = 0;
+        lastId = 0;
+        lastMessageTime = TimestampCodec.INVALID;
+    }
+
+    private int sessionCount() {
+        return open == null ? closed.size() : closed.size() + 1;
+    }
+
+    // A gap ends the open session: publish its last messages, if any arrived, and start a new one
+    private void closeOpenSession(boolean extended) {
+        if (extended) {
+            publishOpenSession();
+        }
+        if (open != null) {
+            closed.add(open);
+            open = null;
+        }
+        openItems = new AppendOnlyList<>();
+    }
+
+    // Publish the open session's messages. Sessions handed out earlier keep their own snapshot
+    // of the messages, so they never change under the UI.
+    private void publishOpenSession() {
+        List<ApiService.ChatHistoryItem> messages = openItems.snapshot();
+        if (open != null && !open.getMessages().isEmpty() && open.getMessages().get(0) == messages.get(0)) {
+            // Same session with more messages: keep the title, label and preview already computed
+            open = open.withMessages(messages);
+        } else {
+            open = newSession(messages);
+        }
+    }
+
+    // The session is labelled with its first message's time
+    private static ApiService.SessionData newSession(List<ApiService.ChatHistoryItem> items) {
+        String date = TimestampCodec.SESSION_LABEL.format(items.get(0).getTimestampMillis());
+        return new ApiService.SessionData("Session: " + date, date, items);
+    }
+}
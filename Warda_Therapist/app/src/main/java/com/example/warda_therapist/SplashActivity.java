@@ -4,8 +4,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 
 import androidx.appcompat.app.AppCompatActivity;
 
@@ -14,6 +12,7 @@ public class SplashActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupMetrics.mark(this, StartupMetrics.SPLASH_CREATED);
         setContentView(R.layout.activity_splash_screen);
 
         // Hide Action Bar
@@ -24,18 +23,19 @@ public class SplashActivity extends AppCompatActivity {
         // Initialize SharedPreferences
         SharedPreferences preferences = getSharedPreferences("user_prefs", Context.MODE_PRIVATE);
 
-        // Use Handler with Looper to avoid deprecation warning
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            // Check if user is already logged in
-            if (isUserLoggedIn(preferences)) {
-                // User is logged in, go to main activity
-                startActivity(new Intent(SplashActivity.this, MainActivity.class));
-            } else {
-                // User is not logged in, go to login activity
-                startActivity(new Intent(SplashActivity.this, login.class));
-            }
-            finish(); // Closes SplashActivity
-        }, 2000); // 2-second delay
+        // Route as soon as we know where to go, no fixed delay
+        if (isUserLoggedIn(preferences)) {
+            // Start MainActivity's network calls now so they overlap with the transition
+            StartupPipeline.start(this, preferences.getInt("user_id", -1));
+
+            // User is logged in, go to main activity
+            startActivity(new Intent(SplashActivity.this, MainActivity.class));
+        } else {
+            // User is not logged in, go to login activity
+            startActivity(new Intent(SplashActivity.this, login.class));
+        }
+        StartupMetrics.mark(this, StartupMetrics.ROUTED);
+        finish(); // Closes SplashActivity
     }
 
     /**
@@ -0,0 +1,103 @@
+package com.example.warda_therapist;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cold-start milestones for this process, in milliseconds since the process started.
+ *
+ * Each milestone is kept the first time it is marked. Once the first frame and the first
+ * data are both on screen, the run is logged and appended to files/startup_metrics.csv
+ * together with the app version, so start-up time can be compared between releases.
+ */
+public final class StartupMetrics {
+    private static final String TAG = "StartupMetrics";
+    private static final String FILE_NAME = "startup_metrics.csv";
+
+    public static final String SPLASH_CREATED = "splash_created";
+    public static final String ROUTED = "routed";
+    public static final String MAIN_CREATED = "main_created";
+    public static final String FIRST_FRAME = "first_frame";
+    public static final String FIRST_DATA = "first_data";
+
+    // Columns of the CSV, in order
+    private static final String[] MILESTONES = {SPLASH_CREATED, ROUTED, MAIN_CREATED, FIRST_FRAME, FIRST_DATA};
+
+    private static final Map<String, Long> marks = new LinkedHashMap<>();
+    private static boolean reported;
+
+    private StartupMetrics() {
+    }
+
+    // Record a milestone now, unless it has already been recorded for this process
+    public static void mark(Context context, String milestone) {
+        boolean complete;
+        synchronized (marks) {
+            if (marks.containsKey(milestone)) {
+                return;
+            }
+            long sinceStart = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+            marks.put(milestone, sinceStart);
+            Log.d(TAG, milestone + " at " + sinceStart + " ms");
+
+            complete = !reported && marks.containsKey(FIRST_FRAME) && marks.containsKey(FIRST_DATA);
+            if (complete) {
+                reported = true;
+            }
+        }
+        if (complete) {
+            report(context.getApplicationContext());
+        }
+    }
+
+    // Milliseconds from process start to the milestone, or -1 if it has not happened
+    public static long get(String milestone) {
+        synchronized (marks) {
+            Long value = marks.get(milestone);
+            return value != null ? value : -1;
+        }
+    }
+
+    private static void report(Context appContext) {
+        StringBuilder line = new StringBuilder();
+        synchronized (marks) {
+            line.append(versionOf(appContext)).append(',').append(System.currentTimeMillis());
+            for (String milestone : MILESTONES) {
+                Long value = marks.get(milestone);
+                line.append(',').append(value != null ? value : -1);
+            }
+        }
+        Log.i(TAG, "Cold start: " + line);
+
+        new Thread(() -> {
+            File file = new File(appContext.getFilesDir(), FILE_NAME);
+            boolean newFile = !file.exists();
+            try (FileWriter writer = new FileWriter(file, true)) {
+                if (newFile) {
+                    writer.write("version,wall_time_ms," + String.join(",", MILESTONES) + "\n");
+                }
+                writer.write(line + "\n");
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing startup metrics: " + e.getMessage(), e);
+            }
+        }, "startup-metrics").start();
+    }
+
+    private static String versionOf(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.versionName + "(" + info.versionCode + ")";
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.warda_therapist;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * The three calls MainActivity needs on launch (server health, session history and the
+ * current emotional state), started together from the splash screen.
+ *
+ * The splash starts the pipeline and routes straight away; MainActivity then takes it and
+ * picks up each result, whether it has already arrived or is still in flight. Each result
+ * can be taken once, after which MainActivity goes to the network as usual.
+ */
+public class StartupPipeline {
+    private static final String TAG = "StartupPipeline";
+
+    // Started by the splash, waiting for MainActivity to take it
+    private static StartupPipeline pending;
+
+    private final int userId;
+    private final Result<String> health = new Result<>();
+    private final Result<List<ApiService.SessionData>> sessions = new Result<>();
+    private final Result<EmotionalState> emotionalState = new Result<>();
+
+    private StartupPipeline(int userId) {
+        this.userId = userId;
+    }
+
+    // Fire all startup calls in parallel; they run on the shared HTTP client's threads
+    public static synchronized StartupPipeline start(Context context, int userId) {
+        StartupPipeline pipeline = new StartupPipeline(userId);
+        pipeline.run(new ApiService(context.getApplicationContext()));
+        pending = pipeline;
+        return pipeline;
+    }
+
+    // The pipeline started for this user, or null if there is none. It can only be taken once.
+    public static synchronized StartupPipeline take(int userId) {
+        StartupPipeline pipeline = pending;
+        pending = null;
+        if (pipeline != null && pipeline.userId != userId) {
+            return null;
+        }
+        return pipeline;
+    }
+
+    private void run(ApiService apiService) {
+        long start = System.currentTimeMillis();
+        Log.d(TAG, "Starting health, history and emotional state calls for user " + userId);
+
+        apiService.checkServerHealth(new ApiService.ChatCallback() {
+            @Override
+            public void onResponse(String response) {
+                Log.d(TAG, "Health ready after " + (System.currentTimeMillis() - start) + " ms");
+                health.succeed(response);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                health.fail(errorMessage);
+            }
+        });
+
+        apiService.getSessionHistory(userId, new ApiService.SessionHistoryCallback() {
+            @Override
+            public void onSuccess(List<ApiService.SessionData> result) {
+                Log.d(TAG, "Sessions ready after " + (System.currentTimeMillis() - start) + " ms");
+                sessions.succeed(result);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                sessions.fail(errorMessage);
+            }
+        });
+
+        apiService.getCurrentEmotionalState(userId, new ApiService.EmotionalStateCallback() {
+            @Override
+            public void onSuccess(String state, float confidence, String trend, String colorCode, String description,
+                                  List<String> recentEmotions) {
+                Log.d(TAG, "Emotional state ready after " + (System.currentTimeMillis() - start) + " ms");
+                emotionalState.succeed(new EmotionalState(state, confidence, trend, colorCode, description,
+                        recentEmotions));
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                emotionalState.fail(errorMessage);
+            }
+        });
+    }
+
+    // Hand the health result to the callback. Returns false if it was already taken.
+    public boolean takeHealth(ApiService.ChatCallback callback) {
+        return health.take(new Receiver<String>() {
+            @Override
+            public void onSuccess(String value) {
+                callback.onResponse(value);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                callback.onError(errorMessage);
+            }
+        });
+    }
+
+    // Hand the session history to the callback. Returns false if it was already taken.
+    public boolean takeSessions(ApiService.SessionHistoryCallback callback) {
+        return sessions.take(new Receiver<List<ApiService.SessionData>>() {
+            @Override
+            public void onSuccess(List<ApiService.SessionData> value) {
+                callback.onSuccess(value);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                callback.onError(errorMessage);
+            }
+        });
+    }
+
+    // Hand the emotional state to the callback. Returns false if it was already taken.
+    public boolean takeEmotionalState(ApiService.EmotionalStateCallback callback) {
+        return emotionalState.take(new Receiver<EmotionalState>() {
+            @Override
+            public void onSuccess(EmotionalState value) {
+                callback.onSuccess(value.state, value.confidence, value.trend, value.colorCode,
+                        value.description, value.recentEmotions);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                callback.onError(errorMessage);
+            }
+        });
+    }
+
+    // Stop delivering to the screen that took the results; calls still running are dropped
+    public void release() {
+        health.release();
+        sessions.release();
+        emotionalState.release();
+    }
+
+    private interface Receiver<T> {
+        void onSuccess(T value);
+        void onError(String errorMessage);
+    }
+
+    // One call's outcome, delivered to a single receiver now or when it arrives. A call that
+    // answers from the HTTP cache first completes twice; the later outcome is forwarded too.
+    private static final class Result<T> {
+        private boolean done;
+        private boolean taken;
+        private T value;
+        private String error;
+        private Receiver<T> receiver;
+
+        boolean take(Receiver<T> newReceiver) {
+            T takenValue;
+            String takenError;
+            synchronized (this) {
+                if (taken) {
+                    return false;
+                }
+                taken = true;
+                receiver = newReceiver;
+                if (!done) {
+                    return true;
+                }
+                takenValue = value;
+                takenError = error;
+            }
+            deliver(newReceiver, takenValue, takenError);
+            return true;
+        }
+
+        synchronized void release() {
+            receiver = null;
+        }
+
+        void succeed(T result) {
+            complete(result, null);
+        }
+
+        void fail(String errorMessage) {
+            complete(null, errorMessage);
+        }
+
+        private void complete(T result, String errorMessage) {
+            Receiver<T> waiting;
+            synchronized (this) {
+                // A network error after a cached success leaves the cached value in place
+                if (done && errorMessage != null && error == null) {
+                    return;
+                }
+                value = result;
+                error = errorMessage;
+                done = true;
+                waiting = receiver;
+            }
+            if (waiting != null) {
+                deliver(waiting, result, errorMessage);
+            }
+        }
+
+        private void deliver(Receiver<T> target, T result, String errorMessage) {
+            if (errorMessage != null) {
+                target.onError(errorMessage);
+            } else {
+                target.onSuccess(result);
+            }
+        }
+    }
+
+    private static final class EmotionalState {
+        final String state;
+        final float confidence;
+        final String trend;
+        final String colorCode;
+        final String description;
+        final List<String> recentEmotions;
+
+        EmotionalState(String state, float confidence, String trend, String colorCode, String description,
+                       List<String> recentEmotions) {
+            this.state = state;
+            this.confidence = confidence;
+            this.trend = trend;
+            this.colorCode = colorCode;
+            this.description = description;
+            this.recentEmotions = recentEmotions;
+        }
+    }
+}
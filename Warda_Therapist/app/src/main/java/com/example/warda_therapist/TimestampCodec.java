@@ -0,0 +1,195 @@
+package com.example.warda_therapist;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses the backend's ISO-8601 timestamps and formats display labels.
+ *
+ * Parsing reads digits straight out of the string into epoch millis, without creating a
+ * Date, Calendar or any other object. The backend sends naive {@code datetime.isoformat()}
+ * values, which the app has always treated as UTC; an explicit 'Z' or +HH:MM offset is
+ * also accepted.
+ */
+public final class TimestampCodec {
+
+    // Returned by parseEpochMillis when the input is not a timestamp we understand
+    public static final long INVALID = Long.MIN_VALUE;
+
+    // Must be initialised before the label constants below
+    private static final ConcurrentHashMap<String, LabelFormat> LABEL_FORMATS = new ConcurrentHashMap<>();
+
+    // Labels used across the app
+    public static final LabelFormat SESSION_LABEL = labelFormat("MMM dd, yyyy HH:mm", Locale.US);
+    public static final LabelFormat CHART_LABEL = labelFormat("MM/dd HH:mm", Locale.US);
+
+    private TimestampCodec() {
+    }
+
+    /**
+     * Parse {@code yyyy-MM-dd'T'HH:mm:ss[.f...][Z|+HH:MM|-HH:MM]} to epoch millis.
+     * Fractional digits beyond milliseconds are ignored.
+     *
+     * @return epoch millis, or {@link #INVALID}
+     */
+    public static long parseEpochMillis(CharSequence text) {
+        if (text == null || text.length() < 19) {
+            return INVALID;
+        }
+        if (text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return INVALID;
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0
+                || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return INVALID;
+        }
+
+        int pos = 19;
+        int length = text.length();
+        int millis = 0;
+
+        // Optional fraction: keep the first three digits, skip the rest
+        if (pos < length && text.charAt(pos) == '.') {
+            pos++;
+            int fractionDigits = 0;
+            while (pos < length) {
+                int digit = text.charAt(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (fractionDigits < 3) {
+                    millis = millis * 10 + digit;
+                }
+                fractionDigits++;
+                pos++;
+            }
+            if (fractionDigits == 0) {
+                return INVALID;
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        // Optional zone designator
+        int offsetSeconds = 0;
+        if (pos < length) {
+            char zone = text.charAt(pos);
+            if (zone == 'Z' && pos + 1 == length) {
+                pos++;
+            } else if ((zone == '+' || zone == '-') && pos + 6 == length && text.charAt(pos + 3) == ':') {
+                int offsetHours = digits(text, pos + 1, 2);
+                int offsetMinutes = digits(text, pos + 4, 2);
+                if ((offsetHours | offsetMinutes) < 0) {
+                    return INVALID;
+                }
+                offsetSeconds = offsetHours * 3600 + offsetMinutes * 60;
+                if (zone == '-') {
+                    offsetSeconds = -offsetSeconds;
+                }
+                pos += 6;
+            } else {
+                return INVALID;
+            }
+        }
+
+        long epochDay = daysFromCivil(year, month, day);
+        long epochSeconds = epochDay * 86400L + hour * 3600L + minute * 60L + second - offsetSeconds;
+        return epochSeconds * 1000L + millis;
+    }
+
+    // Parsed value, or the fallback when the text is not a valid timestamp
+    public static long parseEpochMillis(CharSequence text, long fallback) {
+        long value = parseEpochMillis(text);
+        return value == INVALID ? fallback : value;
+    }
+
+    // Cached formatter for a pattern and locale; safe to share between threads
+    public static LabelFormat labelFormat(String pattern, Locale locale) {
+        String key = pattern + '|' + locale.toString();
+        LabelFormat format = LABEL_FORMATS.get(key);
+        if (format == null) {
+            format = new LabelFormat(pattern, locale);
+            LabelFormat existing = LABEL_FORMATS.putIfAbsent(key, format);
+            if (existing != null) {
+                format = existing;
+            }
+        }
+        return format;
+    }
+
+    /**
+     * Formats epoch millis in the device's time zone. Each thread gets its own
+     * SimpleDateFormat and reusable Date, so formatting only allocates the result string.
+     */
+    public static final class LabelFormat {
+        private final ThreadLocal<Slot> slots;
+
+        private LabelFormat(String pattern, Locale locale) {
+            slots = new ThreadLocal<Slot>() {
+                @Override
+                protected Slot initialValue() {
+                    return new Slot(new SimpleDateFormat(pattern, locale));
+                }
+            };
+        }
+
+        public String format(long epochMillis) {
+            Slot slot = slots.get();
+            slot.date.setTime(epochMillis);
+            return slot.format.format(slot.date);
+        }
+
+        private static final class Slot {
+            final SimpleDateFormat format;
+            final Date date = new Date(0);
+
+            Slot(SimpleDateFormat format) {
+                this.format = format;
+            }
+        }
+    }
+
+    // Fixed-width decimal field, or -1 if any character is not a digit
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Length of a month in the proleptic Gregorian calendar
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian date (Howard Hinnant's algorithm)
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int monthIndex = month > 2 ? month - 3 : month + 9;
+        int dayOfYear = (153 * monthIndex + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.warda_therapist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Snapshots must keep the contents they were taken with while the list keeps growing,
+ * including across the copies that grow its array.
+ */
+public class AppendOnlyListTest {
+
+    @Test
+    public void snapshotsSurviveGrowth() {
+        AppendOnlyList<Integer> list = new AppendOnlyList<>();
+        List<Integer> empty = list.snapshot();
+        for (int i = 0; i < 10; i++) {
+            list.add(i);
+        }
+        List<Integer> ten = list.snapshot();
+        for (int i = 10; i < 100; i++) {
+            list.add(i);
+        }
+
+        assertTrue(empty.isEmpty());
+        assertEquals(10, ten.size());
+        assertEquals(9, (int) ten.get(9));
+        assertEquals(100, list.snapshot().size());
+        assertEquals(99, (int) list.get(99));
+    }
+
+    @Test
+    public void snapshotWithAppendsUnstoredElement() {
+        AppendOnlyList<String> list = new AppendOnlyList<>();
+        list.addAll(Arrays.asList("a", "b"));
+
+        List<String> withLast = list.snapshotWith("open");
+        list.add("c");
+
+        assertEquals(Arrays.asList("a", "b", "open"), withLast);
+        assertEquals(Arrays.asList("a", "b", "c"), list.snapshot());
+    }
+
+    @Test
+    public void snapshotsAreReadOnlyAndBounded() {
+        AppendOnlyList<String> list = new AppendOnlyList<>();
+        list.add("a");
+        List<String> snapshot = list.snapshot();
+        list.add("b");
+
+        try {
+            snapshot.get(1);
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException expected) {
+            // "b" came after the snapshot
+        }
+        try {
+            snapshot.add("c");
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            // Snapshots never change
+        }
+    }
+}
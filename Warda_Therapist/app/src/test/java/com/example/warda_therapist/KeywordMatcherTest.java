@@ -0,0 +1,113 @@
+package com.example.warda_therapist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * The matcher must find a group exactly when Python's {@code phrase in text.lower()} would
+ * for one of its phrases, including phrases that end inside, or overlap, a longer one.
+ */
+public class KeywordMatcherTest {
+
+    @Test
+    public void findsOverlappingAndSuffixPhrases() {
+        KeywordMatcher matcher = new KeywordMatcher(new String[][]{{"he"}, {"she"}, {"his"}, {"hers"}});
+
+        // "she" ends at the same state as "he", which is only reached through its failure link
+        assertEquals(0b1011, matcher.match("ushers"));
+        assertEquals(0b0100, matcher.match("this"));
+        assertEquals(0, matcher.match("hs"));
+    }
+
+    @Test
+    public void findsPhraseAfterFailedLongerMatch() {
+        KeywordMatcher matcher = new KeywordMatcher(new String[][]{{"want to die"}, {"to do"}});
+
+        // "want to d" falls back to "to d" on the 'o'
+        assertEquals(0b10, matcher.match("i want to do it"));
+        assertEquals(0b01, matcher.match("i want to die"));
+    }
+
+    @Test
+    public void readsTypographicApostropheAsPlain() {
+        KeywordMatcher matcher = new KeywordMatcher(new String[][]{{"don't want to live"}});
+
+        assertEquals(1, matcher.match("I don\u2019t want to live anymore"));
+        assertEquals(1, matcher.match("i don't want to live"));
+        assertEquals(0, matcher.match("i dont want to live"));
+    }
+
+    @Test
+    public void ignoresCase() {
+        KeywordMatcher matcher = new KeywordMatcher(new String[][]{{"kill myself"}});
+
+        assertEquals(1, matcher.match("I could KILL MYSELF"));
+        assertEquals(1, matcher.match("Kill Myself"));
+    }
+
+    @Test
+    public void otherCharactersBreakAMatch() {
+        KeywordMatcher matcher = new KeywordMatcher(new String[][]{{"kill myself"}, {"myself"}});
+
+        assertEquals(0b10, matcher.match("kill  myself"));
+        assertEquals(0b10, matcher.match("kill-myself"));
+        assertEquals(0b10, matcher.match("kill\tmyself"));
+        assertEquals(0b10, matcher.match("kill\u00e9 myself"));
+        assertEquals(0b11, matcher.match("...kill myself!"));
+    }
+
+    @Test
+    public void containsStopsAtGroup() {
+        KeywordMatcher matcher = new KeywordMatcher(new String[][]{{"sad"}, {"hopeless"}});
+
+        assertTrue(matcher.contains("I feel sad and hopeless", 1));
+        assertFalse(matcher.contains("I feel sad", 1));
+    }
+
+    @Test
+    public void acceptsSixtyFourGroups() {
+        String[][] groups = new String[KeywordMatcher.MAX_GROUPS][];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new String[]{"w" + word(i)};
+        }
+        KeywordMatcher matcher = new KeywordMatcher(groups);
+
+        assertEquals(1L << 63, matcher.match("say w" + word(63)));
+        assertEquals(1L, matcher.match("say w" + word(0)));
+    }
+
+    @Test
+    public void rejectsMoreThanSixtyFourGroups() {
+        String[][] groups = new String[KeywordMatcher.MAX_GROUPS + 1][];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new String[]{"w" + word(i)};
+        }
+        assertRejected(groups);
+    }
+
+    @Test
+    public void rejectsPhrasesItCannotMatch() {
+        assertRejected(new String[][]{{""}});
+        assertRejected(new String[][]{{"Sad"}});
+        assertRejected(new String[][]{{"fed-up"}});
+        assertRejected(new String[][]{{"caf\u00e9"}});
+    }
+
+    // Two letters per group, e.g. 27 -> "bb", so no group's phrase contains another's
+    private static String word(int i) {
+        return new String(new char[]{(char) ('a' + i / 26), (char) ('a' + i % 26)});
+    }
+
+    private static void assertRejected(String[][] groups) {
+        try {
+            new KeywordMatcher(groups);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Rejected at compile time rather than silently never matching
+        }
+    }
+}
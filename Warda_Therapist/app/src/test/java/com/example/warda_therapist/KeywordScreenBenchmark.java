@@ -0,0 +1,113 @@
+package com.example.warda_therapist;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Microbenchmark: screening the DAIC-WOZ utterances in the backend's combined_transcript.csv
+ * for crisis and emotion keywords, once the backend's way (lowercase the text, then one
+ * substring search per phrase) and once with KeywordScreen's compiled matcher. Not part of
+ * the unit tests (KeywordMatcherTest covers the matcher); run main() on the host JVM, with
+ * the transcript's path if it is not at the default below, to print the results.
+ */
+public final class KeywordScreenBenchmark {
+    private static final String DEFAULT_TRANSCRIPT = "../../warda-backend/combined_transcript.csv";
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 30;
+
+    private KeywordScreenBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File transcript = new File(args.length > 0 ? args[0] : DEFAULT_TRANSCRIPT);
+        if (!transcript.isFile()) {
+            System.err.println("Transcript not found at " + transcript.getAbsolutePath());
+            System.exit(2);
+        }
+        List<String> utterances = readUtterances(transcript);
+        String[][] groups = KeywordScreen.phraseGroups();
+
+        // Both approaches must agree before timings mean anything
+        int flagged = 0;
+        for (String utterance : utterances) {
+            long expected = scanNaively(utterance, groups);
+            if (KeywordScreen.scan(utterance) != expected) {
+                throw new IllegalStateException("Matchers disagree on \"" + utterance + "\"");
+            }
+            if (expected != 0) {
+                flagged++;
+            }
+        }
+
+        Microbenchmark.warmUp(WARMUP_ROUNDS, () -> screenNaively(utterances, groups));
+        Microbenchmark.warmUp(WARMUP_ROUNDS, () -> screenWithMatcher(utterances));
+
+        long[] naive = Microbenchmark.measure(MEASURED_ROUNDS, () -> screenNaively(utterances, groups));
+        long[] matcher = Microbenchmark.measure(MEASURED_ROUNDS, () -> screenWithMatcher(utterances));
+
+        int count = utterances.size();
+        System.out.println(String.format(Locale.US,
+                "%d utterances, %d with a keyword", count, flagged));
+        System.out.println(String.format(Locale.US,
+                "Per-phrase contains(): %.1f ns/utterance, %.0f bytes/utterance",
+                (double) naive[0] / count, (double) naive[1] / count));
+        System.out.println(String.format(Locale.US,
+                "KeywordMatcher:        %.1f ns/utterance, %.0f bytes/utterance (%.1fx faster)",
+                (double) matcher[0] / count, (double) matcher[1] / count,
+                (double) naive[0] / Math.max(1, matcher[0])));
+    }
+
+    private static long screenNaively(List<String> utterances, String[][] groups) {
+        long found = 0;
+        for (String utterance : utterances) {
+            found += scanNaively(utterance, groups);
+        }
+        return found;
+    }
+
+    private static long screenWithMatcher(List<String> utterances) {
+        long found = 0;
+        for (String utterance : utterances) {
+            found += KeywordScreen.scan(utterance);
+        }
+        return found;
+    }
+
+    // What the backend does: any(keyword in message.lower() for keyword in keywords), per group
+    private static long scanNaively(String utterance, String[][] groups) {
+        String lower = utterance.toLowerCase(Locale.ROOT);
+        long found = 0;
+        for (int group = 0; group < groups.length; group++) {
+            for (String phrase : groups[group]) {
+                if (lower.contains(phrase)) {
+                    found |= 1L << group;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    // The value column of session_id,start_time,stop_time,speaker,value; utterances are unquoted
+    private static List<String> readUtterances(File transcript) throws IOException {
+        List<String> utterances = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(transcript), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(",", 5);
+                if (columns.length == 5 && !columns[4].isEmpty()) {
+                    utterances.add(columns[4]);
+                }
+            }
+        }
+        return utterances;
+    }
+}
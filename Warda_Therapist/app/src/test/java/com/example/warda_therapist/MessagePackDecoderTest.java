@@ -0,0 +1,201 @@
+package com.example.warda_therapist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Decodes MessagePack bodies as the backend sends them. Each fixture is the hex of
+ * msgpack.packb() over the payload in its comment, so strings, floats and small ints use
+ * the encodings the backend actually produces; the last fixture forces the wider headers
+ * and the bin/ext types that only larger or unusual values would get.
+ */
+public class MessagePackDecoderTest {
+
+    // [{"id": 1, "user_id": 7, "query": "hello", "response": "Hi there! How are you feeling today?",
+    //   "timestamp": "2024-05-01T10:15:30", "emotional_state": "neutral", "confidence": 0.5},
+    //  {"id": 300, "user_id": 7, "query": None, "response": "I'm here for you.",
+    //   "timestamp": "2024-05-01T10:20:00", "attachments": b"\x01\x02"}]
+    private static final String HISTORY = ""
+            + "9287a2696401a7757365725f696407a57175657279a568656c6c6fa8726573706f6e7365d92448692074686572652120"
+            + "486f772061726520796f75206665656c696e6720746f6461793fa974696d657374616d70b3323032342d30352d303154"
+            + "31303a31353a3330af656d6f74696f6e616c5f7374617465a76e65757472616caa636f6e666964656e6365cb3fe00000"
+            + "0000000086a26964cd012ca7757365725f696407a57175657279c0a8726573706f6e7365b149276d206865726520666f"
+            + "7220796f752ea974696d657374616d70b3323032342d30352d30315431303a32303a3030ab6174746163686d656e7473"
+            + "c4020102";
+
+    // {"current_state": {"state": "anxious", "confidence": 0.8, "trend": "improving",
+    //                    "color_code": "#FF9500", "description": "You seem a little on edge."},
+    //  "summary": {"state": "anxious", "trend": "improving", "color": "#FF9500", "description": None,
+    //              "counts": {"anxious": 3, "neutral": 1}},
+    //  "recommendations": ["Try a breathing exercise", "Take a short walk"],
+    //  "timeline": [{"timestamp": "2024-05-01T10:15:30", "emotion": "anxious", "confidence": 1,
+    //                "color": "#FF9500", "value": -1, "short_message": "hello", "message_id": 70000},
+    //               {"timestamp": "2024-05-02T08:00:00", "emotion": "neutral", "confidence": 0.25,
+    //                "color": "#8E8E93", "value": 0, "short_message": None}],
+    //  "generated_at": 1714557330.5}
+    private static final String DASHBOARD = ""
+            + "85ad63757272656e745f737461746585a57374617465a7616e78696f7573aa636f6e666964656e6365cb3fe999999999"
+            + "999aa57472656e64a9696d70726f76696e67aa636f6c6f725f636f6465a723464639353030ab6465736372697074696f"
+            + "6eba596f75207365656d2061206c6974746c65206f6e20656467652ea773756d6d61727985a57374617465a7616e7869"
+            + "6f7573a57472656e64a9696d70726f76696e67a5636f6c6f72a723464639353030ab6465736372697074696f6ec0a663"
+            + "6f756e747382a7616e78696f757303a76e65757472616c01af7265636f6d6d656e646174696f6e7392b8547279206120"
+            + "627265617468696e67206578657263697365b154616b6520612073686f72742077616c6ba874696d656c696e659287a9"
+            + "74696d657374616d70b3323032342d30352d30315431303a31353a3330a7656d6f74696f6ea7616e78696f7573aa636f"
+            + "6e666964656e636501a5636f6c6f72a723464639353030a576616c7565ffad73686f72745f6d657373616765a568656c"
+            + "6c6faa6d6573736167655f6964ce0001117086a974696d657374616d70b3323032342d30352d30325430383a30303a30"
+            + "30a7656d6f74696f6ea76e65757472616caa636f6e666964656e6365cb3fd0000000000000a5636f6c6f72a723384538"
+            + "453933a576616c756500ad73686f72745f6d657373616765c0ac67656e6572617465645f6174cb41d98c8464a00000";
+
+    // One history item behind an array32 and a map16 header, with int32 id, str16/str32 keys and
+    // values, and unknown fields holding fixext4, ext8, bin16 and a map32 of an array16
+    private static final String WIDE_HEADERS = ""
+            + "dd00000001de0008da00026964d20000002adb000000057175657279da00026869a8726573706f6e7365db0000000a68"
+            + "656c6c6f206261636ba974696d657374616d70b3323032342d30352d30315431303a31353a3330a465787431d6010000"
+            + "0000a465787438c70305616263a562696e3136c500027879a66e6573746564df00000001a16bdc0002cb3ff000000000"
+            + "0000c3";
+
+    @Test
+    public void readsHistory() throws IOException {
+        List<ApiService.ChatHistoryItem> items = MessagePackDecoder.readHistory(source(HISTORY));
+
+        assertEquals(2, items.size());
+        assertEquals(1, items.get(0).getId());
+        assertEquals("hello", items.get(0).getMessage());
+        assertEquals("Hi there! How are you feeling today?", items.get(0).getResponse());
+        assertEquals("2024-05-01T10:15:30", items.get(0).getTimestamp());
+
+        assertEquals(300, items.get(1).getId());
+        // nil reads as "null", like org.json's getString
+        assertEquals("null", items.get(1).getMessage());
+        assertEquals("I'm here for you.", items.get(1).getResponse());
+    }
+
+    @Test
+    public void readsDashboardSectionsInOrder() throws IOException {
+        RecordingCallback callback = new RecordingCallback();
+        MessagePackDecoder.readDashboard(source(DASHBOARD), callback);
+
+        assertEquals(Arrays.asList("currentState", "summary", "recommendations", "timeline"), callback.sections);
+
+        assertEquals("anxious", callback.state);
+        assertEquals(0.8f, callback.confidence, 1e-6f);
+        assertEquals("improving", callback.trend);
+        assertEquals("#FF9500", callback.colorCode);
+        assertEquals("You seem a little on edge.", callback.description);
+
+        assertEquals("anxious", callback.summary.get("state"));
+        assertEquals("#FF9500", callback.summary.get("color"));
+        assertEquals("null", callback.summary.get("description"));
+        assertEquals(4, callback.summary.size());
+
+        assertEquals(Arrays.asList("Try a breathing exercise", "Take a short walk"), callback.recommendations);
+
+        assertEquals(2, callback.timeline.size());
+        ApiService.TimelineEntry first = callback.timeline.get(0);
+        assertEquals("2024-05-01T10:15:30", first.getTimestamp());
+        assertEquals("anxious", first.getEmotion());
+        // Python sent the int 1 for this confidence
+        assertEquals(1f, first.getConfidence(), 0f);
+        assertEquals(-1, first.getValue());
+        assertEquals("hello", first.getMessage());
+
+        ApiService.TimelineEntry second = callback.timeline.get(1);
+        assertEquals(0.25f, second.getConfidence(), 0f);
+        assertEquals(0, second.getValue());
+        assertEquals("null", second.getMessage());
+    }
+
+    @Test
+    public void readsWideHeadersAndSkipsExtensionTypes() throws IOException {
+        List<ApiService.ChatHistoryItem> items = MessagePackDecoder.readHistory(source(WIDE_HEADERS));
+
+        assertEquals(1, items.size());
+        assertEquals(42, items.get(0).getId());
+        assertEquals("hi", items.get(0).getMessage());
+        assertEquals("hello back", items.get(0).getResponse());
+        assertEquals("2024-05-01T10:15:30", items.get(0).getTimestamp());
+    }
+
+    @Test
+    public void rejectsDashboardWithoutTimeline() {
+        // {"summary": {}}
+        try {
+            MessagePackDecoder.readDashboard(source("81a773756d6d61727980"), new RecordingCallback());
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertEquals("Dashboard response is missing timeline", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsWrongType() {
+        // [{"id": "x"}]
+        try {
+            MessagePackDecoder.readHistory(source("9181a26964a178"));
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertEquals("Malformed MessagePack: expected integer but found 0xa1", expected.getMessage());
+        }
+    }
+
+    private static Buffer source(String hex) {
+        return new Buffer().write(ByteString.decodeHex(hex));
+    }
+
+    private static final class RecordingCallback implements ApiService.DashboardCallback {
+        final List<String> sections = new ArrayList<>();
+        String state;
+        float confidence;
+        String trend;
+        String colorCode;
+        String description;
+        Map<String, String> summary;
+        List<String> recommendations;
+        List<ApiService.TimelineEntry> timeline;
+
+        @Override
+        public void onCurrentState(String state, float confidence, String trend, String colorCode,
+                                   String description) {
+            sections.add("currentState");
+            this.state = state;
+            this.confidence = confidence;
+            this.trend = trend;
+            this.colorCode = colorCode;
+            this.description = description;
+        }
+
+        @Override
+        public void onSummary(Map<String, String> summary) {
+            sections.add("summary");
+            this.summary = summary;
+        }
+
+        @Override
+        public void onRecommendations(List<String> recommendations) {
+            sections.add("recommendations");
+            this.recommendations = recommendations;
+        }
+
+        @Override
+        public void onTimeline(List<ApiService.TimelineEntry> timelineEntries) {
+            sections.add("timeline");
+            this.timeline = timelineEntries;
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            fail("Unexpected error: " + errorMessage);
+        }
+    }
+}
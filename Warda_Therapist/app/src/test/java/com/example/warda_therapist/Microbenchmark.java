@@ -0,0 +1,53 @@
+package com.example.warda_therapist;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Timing harness for the host microbenchmarks. These are not unit tests: each one is a
+ * main() that checks its two implementations agree, then prints their timings.
+ */
+final class Microbenchmark {
+
+    // Keeps results observable so the JIT cannot drop the work
+    private static volatile long blackhole;
+
+    interface Round {
+        long run() throws Exception;
+    }
+
+    private Microbenchmark() {
+    }
+
+    static void warmUp(int rounds, Round round) throws Exception {
+        for (int i = 0; i < rounds; i++) {
+            blackhole = round.run();
+        }
+    }
+
+    // Returns {median nanos per round, bytes allocated per round (or -1 if unsupported)}
+    static long[] measure(int rounds, Round round) throws Exception {
+        long[] nanos = new long[rounds];
+        long allocatedBefore = allocatedBytes();
+
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            blackhole = round.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        long allocatedAfter = allocatedBytes();
+        Arrays.sort(nanos);
+        long allocated = allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / rounds;
+        return new long[]{nanos[rounds / 2], allocated};
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
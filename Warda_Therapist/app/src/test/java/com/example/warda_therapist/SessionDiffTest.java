@@ -0,0 +1,106 @@
+package com.example.warda_therapist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The drawer's update from one Sessionizer snapshot to the next. Snapshots share their
+ * unchanged sessions by identity, which is all the diff looks at, so equal-looking but
+ * distinct sessions count as replaced.
+ */
+public class SessionDiffTest {
+
+    private final ApiService.SessionData first = session(1);
+    private final ApiService.SessionData second = session(2);
+    private final ApiService.SessionData third = session(3);
+
+    @Test
+    public void firstLoadResets() {
+        SessionDiff diff = SessionDiff.between(Collections.emptyList(), Arrays.asList(first, second), 0);
+
+        assertTrue(diff.reset);
+    }
+
+    @Test
+    public void unchangedSnapshotNotifiesNothing() {
+        List<ApiService.SessionData> sessions = Arrays.asList(first, second);
+        SessionDiff diff = SessionDiff.between(sessions, Arrays.asList(first, second), 2);
+
+        assertChange(diff, 0, 0);
+    }
+
+    @Test
+    public void messagesAppendedToLastSessionChangeTopItem() {
+        SessionDiff diff = SessionDiff.between(Arrays.asList(first, second),
+                Arrays.asList(first, session(2)), 2);
+
+        assertChange(diff, 1, 0);
+    }
+
+    @Test
+    public void newSessionInsertsAtTop() {
+        SessionDiff diff = SessionDiff.between(Arrays.asList(first, second),
+                Arrays.asList(first, second, third), 2);
+
+        assertChange(diff, 0, 1);
+    }
+
+    @Test
+    public void extendedAndNewSessionsChangeThenInsert() {
+        SessionDiff diff = SessionDiff.between(Arrays.asList(first, second),
+                Arrays.asList(first, session(2), third, session(4)), 2);
+
+        assertChange(diff, 1, 2);
+    }
+
+    @Test
+    public void changesBeyondShownPageReset() {
+        // Only the newest session is on screen, but the two newest were replaced
+        SessionDiff diff = SessionDiff.between(Arrays.asList(first, second, third),
+                Arrays.asList(first, session(2), session(3)), 1);
+
+        assertTrue(diff.reset);
+    }
+
+    @Test
+    public void emptiedHistoryResets() {
+        SessionDiff diff = SessionDiff.between(Arrays.asList(first, second), Collections.emptyList(), 2);
+
+        assertTrue(diff.reset);
+    }
+
+    @Test
+    public void replacedHistoryResets() {
+        SessionDiff diff = SessionDiff.between(Arrays.asList(first, second),
+                Arrays.asList(session(1), session(2)), 2);
+
+        assertTrue(diff.reset);
+    }
+
+    @Test
+    public void shrinkResets() {
+        SessionDiff diff = SessionDiff.between(Arrays.asList(first, second, third),
+                Arrays.asList(first, second), 3);
+
+        assertTrue(diff.reset);
+    }
+
+    private static ApiService.SessionData session(int id) {
+        ApiService.ChatHistoryItem item = new ApiService.ChatHistoryItem(
+                id, "message " + id, "response " + id, "2024-05-01T10:00:00");
+        return new ApiService.SessionData("Session " + id, "May 01, 2024 10:00", Collections.singletonList(item));
+    }
+
+    private static void assertChange(SessionDiff diff, int changed, int inserted) {
+        assertFalse(diff.reset);
+        assertEquals(changed, diff.changed);
+        assertEquals(inserted, diff.inserted);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.warda_therapist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental sessionizing: each update only looks at the messages appended since the last
+ * one, and the returned index tells the drawer which sessions to rebind. Sessions before the
+ * changed one must be the very objects handed out earlier, since SessionAdapter diffs by identity.
+ */
+public class SessionizerTest {
+
+    @Test
+    public void groupsFirstSnapshot() {
+        Sessionizer sessionizer = new Sessionizer();
+        List<ApiService.ChatHistoryItem> history = history(
+                item(1, "2024-05-01T10:00:00"),
+                item(2, "2024-05-01T10:20:00"),
+                // Exactly 30 minutes is still the same session
+                item(3, "2024-05-01T10:50:00"),
+                item(4, "2024-05-01T11:20:01"));
+
+        assertEquals(0, sessionizer.update(history));
+
+        List<ApiService.SessionData> sessions = sessionizer.getSessions();
+        assertEquals(2, sessions.size());
+        assertIds(sessions.get(0), 1, 2, 3);
+        assertIds(sessions.get(1), 4);
+    }
+
+    @Test
+    public void appendsToOpenSession() {
+        Sessionizer sessionizer = new Sessionizer();
+        List<ApiService.ChatHistoryItem> history = history(
+                item(1, "2024-05-01T08:00:00"),
+                item(2, "2024-05-01T10:00:00"),
+                item(3, "2024-05-01T10:05:00"));
+        sessionizer.update(history);
+        List<ApiService.SessionData> before = sessionizer.getSessions();
+
+        history.add(item(4, "2024-05-01T10:15:00"));
+        assertEquals(1, sessionizer.update(history));
+
+        List<ApiService.SessionData> after = sessionizer.getSessions();
+        assertEquals(2, after.size());
+        assertSame(before.get(0), after.get(0));
+        assertNotSame(before.get(1), after.get(1));
+        assertIds(after.get(1), 2, 3, 4);
+        assertEquals(before.get(1).getTitle(), after.get(1).getTitle());
+        // The snapshot handed out earlier keeps its own messages
+        assertIds(before.get(1), 2, 3);
+    }
+
+    @Test
+    public void opensNewSessionAfterGap() {
+        Sessionizer sessionizer = new Sessionizer();
+        List<ApiService.ChatHistoryItem> history = history(
+                item(1, "2024-05-01T10:00:00"),
+                item(2, "2024-05-01T10:05:00"));
+        sessionizer.update(history);
+        List<ApiService.SessionData> before = sessionizer.getSessions();
+
+        history.add(item(3, "2024-05-01T10:36:00"));
+        history.add(item(4, "2024-05-02T09:00:00"));
+        assertEquals(1, sessionizer.update(history));
+
+        List<ApiService.SessionData> after = sessionizer.getSessions();
+        assertEquals(3, after.size());
+        assertSame(before.get(0), after.get(0));
+        assertIds(after.get(1), 3);
+        assertIds(after.get(2), 4);
+    }
+
+    @Test
+    public void extendsAndOpensInOneUpdate() {
+        Sessionizer sessionizer = new Sessionizer();
+        List<ApiService.ChatHistoryItem> history = history(item(1, "2024-05-01T10:00:00"));
+        sessionizer.update(history);
+
+        history.add(item(2, "2024-05-01T10:10:00"));
+        history.add(item(3, "2024-05-01T12:00:00"));
+        assertEquals(0, sessionizer.update(history));
+
+        List<ApiService.SessionData> sessions = sessionizer.getSessions();
+        assertEquals(2, sessions.size());
+        assertIds(sessions.get(0), 1, 2);
+        assertIds(sessions.get(1), 3);
+    }
+
+    @Test
+    public void unchangedHistoryChangesNothing() {
+        Sessionizer sessionizer = new Sessionizer();
+        List<ApiService.ChatHistoryItem> history = history(
+                item(1, "2024-05-01T10:00:00"),
+                item(2, "2024-05-01T12:00:00"));
+        sessionizer.update(history);
+        List<ApiService.SessionData> before = sessionizer.getSessions();
+
+        assertEquals(2, sessionizer.update(history));
+        assertEquals(before, sessionizer.getSessions());
+    }
+
+    @Test
+    public void skipsUnparseableTimestamps() {
+        Sessionizer sessionizer = new Sessionizer();
+        List<ApiService.ChatHistoryItem> history = history(
+                item(1, "2024-05-01T10:00:00"),
+                item(2, "yesterday"),
+                item(3, "2024-05-01T10:10:00"));
+
+        assertEquals(0, sessionizer.update(history));
+
+        List<ApiService.SessionData> sessions = sessionizer.getSessions();
+        assertEquals(1, sessions.size());
+        assertIds(sessions.get(0), 1, 3);
+    }
+
+    @Test
+    public void emptyHistoryClearsSessions() {
+        Sessionizer sessionizer = new Sessionizer();
+        sessionizer.update(history(item(1, "2024-05-01T10:00:00")));
+
+        assertEquals(0, sessionizer.update(history()));
+        assertTrue(sessionizer.getSessions().isEmpty());
+    }
+
+    @Test
+    public void replacedHistoryRegroups() {
+        Sessionizer sessionizer = new Sessionizer();
+        sessionizer.update(history(
+                item(1, "2024-05-01T10:00:00"),
+                item(2, "2024-05-01T12:00:00")));
+
+        // Same length, but the last message seen is gone
+        assertEquals(0, sessionizer.update(history(
+                item(5, "2024-06-01T10:00:00"),
+                item(6, "2024-06-01T10:01:00"))));
+
+        List<ApiService.SessionData> sessions = sessionizer.getSessions();
+        assertEquals(1, sessions.size());
+        assertIds(sessions.get(0), 5, 6);
+    }
+
+    @Test
+    public void shrunkHistoryRegroups() {
+        Sessionizer sessionizer = new Sessionizer();
+        sessionizer.update(history(
+                item(1, "2024-05-01T10:00:00"),
+                item(2, "2024-05-01T12:00:00"),
+                item(3, "2024-05-01T14:00:00")));
+
+        assertEquals(0, sessionizer.update(history(
+                item(1, "2024-05-01T10:00:00"),
+                item(2, "2024-05-01T12:00:00"))));
+
+        List<ApiService.SessionData> sessions = sessionizer.getSessions();
+        assertEquals(2, sessions.size());
+        assertIds(sessions.get(0), 1);
+        assertIds(sessions.get(1), 2);
+    }
+
+    private static ApiService.ChatHistoryItem item(int id, String timestamp) {
+        return new ApiService.ChatHistoryItem(id, "message " + id, "response " + id, timestamp);
+    }
+
+    private static List<ApiService.ChatHistoryItem> history(ApiService.ChatHistoryItem... items) {
+        return new ArrayList<>(Arrays.asList(items));
+    }
+
+    private static void assertIds(ApiService.SessionData session, int... ids) {
+        List<ApiService.ChatHistoryItem> messages = session.getMessages();
+        assertEquals(ids.length, messages.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], messages.get(i).getId());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.warda_therapist;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Microbenchmark: parsing a 10k-item history with SimpleDateFormat (the previous approach)
+ * against TimestampCodec. Not part of the unit tests (TimestampCodecTest covers the parser);
+ * run main() on the host JVM to print the results.
+ */
+public final class TimestampCodecBenchmark {
+    private static final int HISTORY_SIZE = 10_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private TimestampCodecBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> timestamps = syntheticHistory();
+
+        SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        inputFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        // Both parsers must agree before timings mean anything
+        for (String timestamp : timestamps) {
+            if (inputFormat.parse(timestamp).getTime() != TimestampCodec.parseEpochMillis(timestamp)) {
+                throw new IllegalStateException("Parsers disagree on " + timestamp);
+            }
+        }
+
+        Microbenchmark.warmUp(WARMUP_ROUNDS, () -> parseWithSimpleDateFormat(timestamps, inputFormat));
+        Microbenchmark.warmUp(WARMUP_ROUNDS, () -> parseWithCodec(timestamps));
+
+        long[] legacy = Microbenchmark.measure(MEASURED_ROUNDS,
+                () -> parseWithSimpleDateFormat(timestamps, inputFormat));
+        long[] codec = Microbenchmark.measure(MEASURED_ROUNDS, () -> parseWithCodec(timestamps));
+
+        System.out.println(String.format(Locale.US,
+                "SimpleDateFormat: %.1f ns/item, %.0f bytes/item",
+                (double) legacy[0] / HISTORY_SIZE, (double) legacy[1] / HISTORY_SIZE));
+        System.out.println(String.format(Locale.US,
+                "TimestampCodec:   %.1f ns/item, %.0f bytes/item (%.1fx faster)",
+                (double) codec[0] / HISTORY_SIZE, (double) codec[1] / HISTORY_SIZE,
+                (double) legacy[0] / Math.max(1, codec[0])));
+    }
+
+    private static long parseWithSimpleDateFormat(List<String> timestamps, SimpleDateFormat format)
+            throws ParseException {
+        long sum = 0;
+        for (String timestamp : timestamps) {
+            Date date = format.parse(timestamp);
+            sum += date.getTime();
+        }
+        return sum;
+    }
+
+    private static long parseWithCodec(List<String> timestamps) {
+        long sum = 0;
+        for (String timestamp : timestamps) {
+            sum += TimestampCodec.parseEpochMillis(timestamp);
+        }
+        return sum;
+    }
+
+    // Backend-style isoformat() strings a few minutes apart
+    private static List<String> syntheticHistory() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        List<String> timestamps = new ArrayList<>(HISTORY_SIZE);
+        long time = 1_700_000_000_000L;
+
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            time += 60_000L * (1 + (i * 7) % 45);
+            timestamps.add(format.format(new Date(time)));
+        }
+        return timestamps;
+    }
+}
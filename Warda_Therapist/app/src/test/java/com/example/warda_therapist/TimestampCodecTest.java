@@ -0,0 +1,88 @@
+package com.example.warda_therapist;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Parsing of the backend's timestamps. Python's isoformat() drops the fraction when
+ * microseconds are zero and writes all six digits otherwise, so both shapes occur in one history.
+ */
+public class TimestampCodecTest {
+
+    // 2024-05-01T10:15:30Z
+    private static final long BASE = 1_714_558_530_000L;
+
+    @Test
+    public void parsesWholeSeconds() {
+        assertEquals(BASE, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30"));
+        assertEquals(-1000, TimestampCodec.parseEpochMillis("1969-12-31T23:59:59"));
+    }
+
+    @Test
+    public void parsesFractions() {
+        assertEquals(BASE + 500, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30.5"));
+        assertEquals(BASE + 123, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30.123"));
+        // Microseconds beyond the millisecond are dropped, not rounded
+        assertEquals(BASE + 123, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30.123999"));
+        assertEquals(BASE + 7, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30.007001"));
+    }
+
+    @Test
+    public void parsesZoneDesignators() {
+        assertEquals(BASE, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30Z"));
+        assertEquals(BASE, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30+00:00"));
+        assertEquals(BASE, TimestampCodec.parseEpochMillis("2024-05-01T12:45:30+02:30"));
+        assertEquals(BASE, TimestampCodec.parseEpochMillis("2024-05-01T05:15:30-05:00"));
+        assertEquals(BASE + 250, TimestampCodec.parseEpochMillis("2024-05-01T11:15:30.250000+01:00"));
+    }
+
+    @Test
+    public void checksDayAgainstMonthLength() {
+        assertEquals(1_709_251_199_000L, TimestampCodec.parseEpochMillis("2024-02-29T23:59:59"));
+        assertEquals(951_782_400_000L, TimestampCodec.parseEpochMillis("2000-02-29T00:00:00"));
+
+        assertInvalid("2024-02-30T10:00:00");
+        assertInvalid("2023-02-29T10:00:00");
+        assertInvalid("1900-02-29T10:00:00");
+        assertInvalid("2024-04-31T10:00:00");
+        assertInvalid("2024-05-32T10:00:00");
+    }
+
+    @Test
+    public void rejectsMalformedText() {
+        assertInvalid(null);
+        assertInvalid("");
+        assertInvalid("2024-05-01");
+        assertInvalid("2024-05-01 10:15:30");
+        assertInvalid("2024/05/01T10:15:30");
+        assertInvalid("2024-05-01T10:15:3x");
+        // A '.' must be followed by at least one digit
+        assertInvalid("2024-05-01T10:15:30.");
+        assertInvalid("2024-05-01T10:15:30.Z");
+        assertInvalid("2024-05-01T10:15:30Z ");
+        assertInvalid("2024-05-01T10:15:30+0200");
+        assertInvalid("2024-05-01T10:15:30+02:3x");
+        assertInvalid("2024-05-01T10:15:30 trailing");
+    }
+
+    @Test
+    public void rejectsOutOfRangeFields() {
+        assertInvalid("2024-00-01T10:15:30");
+        assertInvalid("2024-13-01T10:15:30");
+        assertInvalid("2024-05-00T10:15:30");
+        assertInvalid("2024-05-01T24:00:00");
+        assertInvalid("2024-05-01T10:60:00");
+        assertInvalid("2024-05-01T10:15:60");
+    }
+
+    @Test
+    public void fallsBackOnInvalidText() {
+        assertEquals(42L, TimestampCodec.parseEpochMillis("not a timestamp", 42L));
+        assertEquals(BASE, TimestampCodec.parseEpochMillis("2024-05-01T10:15:30", 42L));
+    }
+
+    private static void assertInvalid(String text) {
+        assertEquals(text, TimestampCodec.INVALID, TimestampCodec.parseEpochMillis(text));
+    }
+}
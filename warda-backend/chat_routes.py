@@ -1,15 +1,22 @@
 """
 Chat routes for WARDA Therapist API
 """
-from fastapi import APIRouter, Depends, HTTPException
+from fastapi import APIRouter, Depends, Header, HTTPException, Request, Response
+from fastapi.responses import StreamingResponse
 from sqlalchemy.orm import Session
+from sqlalchemy.exc import IntegrityError
 from typing import Dict, Any, List, Optional
 from pydantic import BaseModel
+from datetime import datetime, timedelta
+import asyncio
+import json
 import logging
 import time
 
-from database import get_db, ChatMessage
-from enhanced_rag import generate_response, analyze_message_emotion
+from content_negotiation import negotiated
+from database import get_db, ChatMessage, PendingChatRequest, SessionLocal
+from enhanced_rag import generate_response, generate_response_stream, analyze_message_emotion
+from server_timing import HEADER as SERVER_TIMING_HEADER, StageTimer
 
 # Configure logging
 logger = logging.getLogger(__name__)
@@ -29,58 +36,203 @@ class ChatResponse(BaseModel):
     confidence: Optional[float] = None
     error: Optional[str] = None
 
+def load_conversation_history(user_id: Optional[int], db: Session) -> List[Dict[str, str]]:
+    """
+    Load the last few exchanges for a user, oldest first
+    """
+    conversation_history = []
+    if not user_id:
+        return conversation_history
+    
+    try:
+        recent_messages = db.query(ChatMessage).filter(
+            ChatMessage.user_id == user_id
+        ).order_by(ChatMessage.timestamp.desc()).limit(5).all()
+        
+        if recent_messages:
+            for msg in reversed(recent_messages):
+                conversation_history.append({
+                    "query": msg.message,
+                    "response": msg.response
+                })
+            logger.info(f"Retrieved {len(conversation_history)} messages from history")
+    except Exception as e:
+        logger.error(f"Error retrieving conversation history: {str(e)}")
+    
+    return conversation_history
+
+# Longest Idempotency-Key accepted; matches ChatMessage.client_key
+MAX_IDEMPOTENCY_KEY_LENGTH = 64
+
+# How long a retry waits for an earlier attempt with the same key before getting a 409
+IDEMPOTENCY_WAIT_SECONDS = 30
+IDEMPOTENCY_POLL_SECONDS = 0.5
+
+# A reservation this old belongs to an attempt that died without releasing it
+STALE_RESERVATION_SECONDS = 300
+
+def find_saved_exchange(user_id: int, idempotency_key: str, db: Session) -> Optional[ChatMessage]:
+    """
+    The exchange already saved for this Idempotency-Key, when a client retries a
+    message whose response it never received
+    """
+    return db.query(ChatMessage).filter(
+        ChatMessage.user_id == user_id,
+        ChatMessage.client_key == idempotency_key
+    ).first()
+
+async def claim_idempotency_key(user_id: Optional[int], idempotency_key: Optional[str], db: Session) -> Optional[ChatMessage]:
+    """
+    Reserve the Idempotency-Key for this attempt before any reply is generated
+    
+    Returns the saved exchange when an earlier attempt already answered the message,
+    and None once the key is reserved for this one (or there is no key). A retry that
+    arrives while an earlier attempt is still generating waits for that attempt and
+    replays its reply; if it does not finish in time the retry gets a 409.
+    """
+    if not user_id or not idempotency_key:
+        return None
+    if len(idempotency_key) > MAX_IDEMPOTENCY_KEY_LENGTH:
+        raise HTTPException(status_code=400, detail="Idempotency-Key is too long")
+    
+    deadline = time.monotonic() + IDEMPOTENCY_WAIT_SECONDS
+    while True:
+        saved = find_saved_exchange(user_id, idempotency_key, db)
+        if saved:
+            return saved
+        
+        # The unique constraint lets exactly one attempt insert the reservation
+        try:
+            db.add(PendingChatRequest(user_id=user_id, client_key=idempotency_key))
+            db.commit()
+            return None
+        except IntegrityError:
+            db.rollback()
+        
+        stale_before = datetime.utcnow() - timedelta(seconds=STALE_RESERVATION_SECONDS)
+        if db.query(PendingChatRequest).filter(
+            PendingChatRequest.user_id == user_id,
+            PendingChatRequest.client_key == idempotency_key,
+            PendingChatRequest.created_at < stale_before
+        ).delete(synchronize_session=False):
+            logger.warning(f"Dropped stale reservation for Idempotency-Key {idempotency_key}")
+            db.commit()
+            continue
+        
+        if time.monotonic() >= deadline:
+            db.rollback()
+            raise HTTPException(status_code=409, detail="This message is still being answered; retry later")
+        
+        await asyncio.sleep(IDEMPOTENCY_POLL_SECONDS)
+        # End the transaction, so the next queries see what the other attempt committed
+        db.rollback()
+
+def release_idempotency_key(user_id: Optional[int], idempotency_key: Optional[str], db: Session):
+    """
+    Drop this attempt's reservation without saving a reply, so a retry generates one
+    """
+    if not user_id or not idempotency_key:
+        return
+    try:
+        db.query(PendingChatRequest).filter(
+            PendingChatRequest.user_id == user_id,
+            PendingChatRequest.client_key == idempotency_key
+        ).delete(synchronize_session=False)
+        db.commit()
+    except Exception as e:
+        logger.error(f"Error releasing Idempotency-Key {idempotency_key}: {str(e)}")
+        db.rollback()
+
+def save_exchange(user_id: int, query: str, result: Dict[str, Any], idempotency_key: Optional[str], db: Session):
+    """
+    Save a finished exchange and release its reservation in the same commit
+    
+    A failed generation is saved under the key as well: the client has already shown its
+    fallback or partial reply as the answer, so a retry replays that reply.
+    """
+    db.add(ChatMessage(
+        user_id=user_id,
+        message=query,
+        response=result["response"],
+        client_key=idempotency_key
+    ))
+    if idempotency_key:
+        db.query(PendingChatRequest).filter(
+            PendingChatRequest.user_id == user_id,
+            PendingChatRequest.client_key == idempotency_key
+        ).delete(synchronize_session=False)
+    db.commit()
+
+def replayed_result(saved: ChatMessage) -> Dict[str, Any]:
+    """
+    Response for a retried message: the stored reply, without another LLM call
+    """
+    emotional_state, confidence = analyze_message_emotion(saved.message)
+    return {
+        "query": saved.message,
+        "response": saved.response,
+        "emotional_state": emotional_state,
+        "confidence": confidence,
+        "error": None
+    }
+
+def format_sse(data: Dict[str, Any], event: Optional[str] = None) -> str:
+    """
+    Encode one server-sent event
+    """
+    prefix = f"event: {event}\n" if event else ""
+    return f"{prefix}data: {json.dumps(data)}\n\n"
+
 @router.post("/message", response_model=ChatResponse)
-async def chat_message(request: ChatRequest, db: Session = Depends(get_db)):
+async def chat_message(request: ChatRequest, response: Response, db: Session = Depends(get_db),
+                       idempotency_key: Optional[str] = Header(None)):
     """
     Process a chat message and generate a response
+    
+    A repeated Idempotency-Key gets the reply saved the first time instead of a new one,
+    or a 409 while the first attempt is still generating it for longer than a retry waits.
+    The time spent in each stage is reported in the Server-Timing header.
     """
     start_time = time.time()
+    timer = StageTimer()
     logger.info(f"Received chat request: user_id={request.user_id}, query='{request.query}'")
     
+    saved = await claim_idempotency_key(request.user_id, idempotency_key, db)
+    if saved:
+        logger.info(f"Replaying saved reply for retried message {saved.id}")
+        with timer.stage("replay"):
+            replay = replayed_result(saved)
+        response.headers[SERVER_TIMING_HEADER] = timer.header_value()
+        return replay
+    
     try:
         # Get conversation history if user_id provided
-        conversation_history = []
-        if request.user_id:
-            try:
-                recent_messages = db.query(ChatMessage).filter(
-                    ChatMessage.user_id == request.user_id
-                ).order_by(ChatMessage.timestamp.desc()).limit(5).all()
-                
-                if recent_messages:
-                    for msg in reversed(recent_messages):
-                        conversation_history.append({
-                            "query": msg.message,
-                            "response": msg.response
-                        })
-                    logger.info(f"Retrieved {len(conversation_history)} messages from history")
-            except Exception as e:
-                logger.error(f"Error retrieving conversation history: {str(e)}")
+        with timer.stage("history"):
+            conversation_history = load_conversation_history(request.user_id, db)
         
         # Generate response
         result = generate_response(
             query=request.query,
             user_id=request.user_id,
-            conversation_history=conversation_history
+            conversation_history=conversation_history,
+            timer=timer
         )
         
         # Save to database if user_id is provided
         if request.user_id:
-            try:
-                chat_message = ChatMessage(
-                    user_id=request.user_id,
-                    message=request.query,
-                    response=result["response"]
-                )
-                db.add(chat_message)
-                db.commit()
-                logger.info(f"Chat message saved to database for user_id: {request.user_id}")
-            except Exception as e:
-                logger.error(f"Error saving chat message: {str(e)}")
-                db.rollback()
+            with timer.stage("save"):
+                try:
+                    save_exchange(request.user_id, request.query, result, idempotency_key, db)
+                    logger.info(f"Chat message saved to database for user_id: {request.user_id}")
+                except Exception as e:
+                    logger.error(f"Error saving chat message: {str(e)}")
+                    db.rollback()
+                    release_idempotency_key(request.user_id, idempotency_key, db)
         
         # Log processing time
         processing_time = time.time() - start_time
         logger.info(f"Request processed in {processing_time:.2f} seconds")
+        response.headers[SERVER_TIMING_HEADER] = timer.header_value()
         
         # Return response
         return {
@@ -92,6 +244,9 @@ async def chat_message(request: ChatRequest, db: Session = Depends(get_db)):
         }
     except Exception as e:
         logger.error(f"Error processing chat request: {str(e)}")
+        db.rollback()
+        release_idempotency_key(request.user_id, idempotency_key, db)
+        response.headers[SERVER_TIMING_HEADER] = timer.header_value()
         return {
             "query": request.query,
             "response": "I encountered an error while processing your request. Please try again.",
@@ -100,34 +255,162 @@ async def chat_message(request: ChatRequest, db: Session = Depends(get_db)):
             "error": str(e)
         }
 
+@router.post("/message/stream")
+async def chat_message_stream(request: ChatRequest, db: Session = Depends(get_db),
+                              idempotency_key: Optional[str] = Header(None)):
+    """
+    Process a chat message and stream the response as server-sent events.
+    
+    Each text chunk is sent as `data: {"token": "..."}`; the final event is
+    `event: done` carrying the same fields as ChatResponse. A repeated
+    Idempotency-Key gets the saved reply as a single chunk, or a 409 as for
+    /message.
+    
+    Headers go out before generation starts, so the stage timings travel in the
+    done event's `server_timing` field, formatted like a Server-Timing header.
+    """
+    timer = StageTimer()
+    logger.info(f"Received streaming chat request: user_id={request.user_id}, query='{request.query}'")
+    
+    saved = await claim_idempotency_key(request.user_id, idempotency_key, db)
+    if saved:
+        logger.info(f"Replaying saved reply for retried message {saved.id}")
+        with timer.stage("replay"):
+            replay = replayed_result(saved)
+        replay["server_timing"] = timer.header_value()
+        
+        def replay_stream():
+            yield format_sse({"token": replay["response"]})
+            yield format_sse(replay, event="done")
+        
+        return StreamingResponse(
+            replay_stream(),
+            media_type="text/event-stream",
+            headers={"Cache-Control": "no-cache", "X-Accel-Buffering": "no"}
+        )
+    
+    with timer.stage("history"):
+        conversation_history = load_conversation_history(request.user_id, db)
+    
+    def event_stream():
+        start_time = time.time()
+        final = None
+        saved_exchange = False
+        
+        # A fresh session is used because the request-scoped one is not
+        # guaranteed to outlive the streaming body
+        stream_db = SessionLocal()
+        try:
+            for event in generate_response_stream(
+                query=request.query,
+                user_id=request.user_id,
+                conversation_history=conversation_history,
+                timer=timer
+            ):
+                if event["type"] == "token":
+                    yield format_sse({"token": event["text"]})
+                else:
+                    final = event
+            
+            if final is None:
+                final = {"response": "", "emotional_state": "neutral", "confidence": 0.5, "error": "No response generated"}
+            
+            # Save the completed exchange
+            if request.user_id and final["response"]:
+                with timer.stage("save"):
+                    try:
+                        save_exchange(request.user_id, request.query, final, idempotency_key, stream_db)
+                        saved_exchange = True
+                        logger.info(f"Streamed chat message saved to database for user_id: {request.user_id}")
+                    except Exception as e:
+                        logger.error(f"Error saving streamed chat message: {str(e)}")
+                        stream_db.rollback()
+        finally:
+            # Also reached when the client disconnects mid-stream
+            if not saved_exchange:
+                release_idempotency_key(request.user_id, idempotency_key, stream_db)
+            stream_db.close()
+        
+        processing_time = time.time() - start_time
+        logger.info(f"Streaming request processed in {processing_time:.2f} seconds")
+        
+        yield format_sse({
+            "query": request.query,
+            "response": final["response"],
+            "emotional_state": final["emotional_state"],
+            "confidence": final["confidence"],
+            "error": final["error"],
+            "server_timing": timer.header_value()
+        }, event="done")
+    
+    return StreamingResponse(
+        event_stream(),
+        media_type="text/event-stream",
+        headers={"Cache-Control": "no-cache", "X-Accel-Buffering": "no"}
+    )
+
+# Upper bound for a single history page
+MAX_HISTORY_PAGE_SIZE = 200
+
 @router.get("/history/{user_id}", response_model=List[Dict[str, Any]])
-async def get_chat_history(user_id: int, limit: int = 20, db: Session = Depends(get_db)):
+async def get_chat_history(
+    user_id: int,
+    request: Request,
+    response: Response,
+    limit: int = 20,
+    since_id: Optional[int] = None,
+    before_id: Optional[int] = None,
+    include_emotion: bool = True,
+    db: Session = Depends(get_db)
+):
     """
     Get chat history for a user
+    
+    Without a cursor the most recent `limit` messages are returned, newest first.
+    With `since_id` the page holds messages with a larger id, oldest first, so a client
+    can sync forward from the last id it has seen. With `before_id` the page holds
+    older messages, oldest first, for backfilling. A page shorter than `limit` means
+    there is nothing further in that direction.
+    
+    Sent as MessagePack instead of JSON when the Accept header asks for it.
     """
     try:
-        # Get recent messages
-        messages = db.query(ChatMessage).filter(
-            ChatMessage.user_id == user_id
-        ).order_by(ChatMessage.timestamp.desc()).limit(limit).all()
+        limit = max(1, min(limit, MAX_HISTORY_PAGE_SIZE))
+        query = db.query(ChatMessage).filter(ChatMessage.user_id == user_id)
+        
+        if since_id is not None:
+            messages = query.filter(ChatMessage.id > since_id).order_by(
+                ChatMessage.id.asc()
+            ).limit(limit).all()
+        elif before_id is not None:
+            messages = query.filter(ChatMessage.id < before_id).order_by(
+                ChatMessage.id.desc()
+            ).limit(limit).all()
+            messages.reverse()
+        else:
+            # Get recent messages
+            messages = query.order_by(ChatMessage.timestamp.desc()).limit(limit).all()
         
         # Format response
         history = []
         for msg in messages:
-            # Analyze emotional state if not already done
-            emotional_state, confidence = analyze_message_emotion(msg.message)
-            
-            history.append({
+            item = {
                 "id": msg.id,
                 "user_id": msg.user_id,
                 "query": msg.message,
                 "response": msg.response,
-                "timestamp": msg.timestamp.isoformat(),
-                "emotional_state": emotional_state,
-                "confidence": confidence
-            })
+                "timestamp": msg.timestamp.isoformat()
+            }
+            
+            # Emotion analysis re-encodes each message, so sync clients can opt out
+            if include_emotion:
+                emotional_state, confidence = analyze_message_emotion(msg.message)
+                item["emotional_state"] = emotional_state
+                item["confidence"] = confidence
+            
+            history.append(item)
         
-        return history
+        return negotiated(request, response, history)
     except Exception as e:
         logger.error(f"Error retrieving chat history: {str(e)}")
         raise HTTPException(status_code=500, detail=str(e))
@@ -0,0 +1,58 @@
+"""
+ETag / If-None-Match support for WARDA Therapist API
+
+The state routes are expensive (every message in the window is run through emotion
+analysis), but their output only depends on which of the user's messages fall inside
+the window. The validator is therefore built from a cheap COUNT/MAX query, and a client
+that already holds the current version gets a 304 before any analysis runs.
+"""
+from datetime import datetime
+from typing import Optional
+
+from fastapi import Request, Response
+from sqlalchemy import func
+from sqlalchemy.orm import Session
+
+from content_negotiation import wants_msgpack
+from database import ChatMessage
+
+# Clients may store the response but must revalidate before reusing it
+CACHE_CONTROL = "private, no-cache"
+
+def message_validator(db: Session, user_id: int, since: Optional[datetime] = None) -> str:
+    """Changes whenever a message is added to, removed from or ages out of the window"""
+    query = db.query(func.count(ChatMessage.id), func.max(ChatMessage.id)).filter(
+        ChatMessage.user_id == user_id
+    )
+    if since is not None:
+        query = query.filter(ChatMessage.timestamp >= since)
+    count, max_id = query.one()
+    return f"{count}.{max_id or 0}"
+
+def make_etag(request: Request, *parts) -> str:
+    """Weak ETag from the route's inputs; the encoding is included since responses vary by Accept"""
+    encoding = "mp" if wants_msgpack(request) else "json"
+    return 'W/"' + "-".join(str(part) for part in parts) + "-" + encoding + '"'
+
+def _opaque(tag: str) -> str:
+    tag = tag.strip()
+    return tag[2:] if tag.startswith("W/") else tag
+
+def not_modified(request: Request, etag: str) -> Optional[Response]:
+    """A 304 response when If-None-Match already names this version, otherwise None"""
+    header = request.headers.get("if-none-match")
+    if not header:
+        return None
+    tags = [_opaque(tag) for tag in header.split(",")]
+    if "*" in tags or _opaque(etag) in tags:
+        return Response(status_code=304, headers={
+            "ETag": etag,
+            "Cache-Control": CACHE_CONTROL,
+            "Vary": "Accept"
+        })
+    return None
+
+def set_validators(response: Response, etag: str) -> None:
+    """Attach the ETag to a full response"""
+    response.headers["ETag"] = etag
+    response.headers["Cache-Control"] = CACHE_CONTROL
@@ -0,0 +1,62 @@
+"""
+Response encoding negotiation for WARDA Therapist API
+
+Clients that send `Accept: application/msgpack` get list-heavy payloads (history,
+timeline, recommendations) as MessagePack, which drops the repeated JSON keys'
+quoting and number formatting. Everyone else keeps getting JSON.
+"""
+from datetime import date, datetime
+from typing import Any
+
+import msgpack
+from fastapi import Request, Response
+
+MSGPACK_MEDIA_TYPE = "application/msgpack"
+
+# Media types accepted as a request for MessagePack
+MSGPACK_ACCEPT_TYPES = {MSGPACK_MEDIA_TYPE, "application/x-msgpack"}
+
+# Headers a route sets on its injected Response that must also reach a MessagePack response
+PASSED_HEADERS = ("vary", "etag", "cache-control")
+
+def wants_msgpack(request: Request) -> bool:
+    """True when the Accept header asks for MessagePack with a non-zero quality"""
+    accept = request.headers.get("accept", "")
+    for part in accept.split(","):
+        fields = [field.strip() for field in part.split(";")]
+        if fields[0].lower() not in MSGPACK_ACCEPT_TYPES:
+            continue
+        quality = 1.0
+        for param in fields[1:]:
+            if param.startswith("q="):
+                try:
+                    quality = float(param[2:])
+                except ValueError:
+                    quality = 0.0
+        if quality > 0:
+            return True
+    return False
+
+def _to_builtin(value: Any) -> Any:
+    """Fallback for values msgpack cannot pack natively (numpy scalars, datetimes)"""
+    if hasattr(value, "item"):
+        return value.item()
+    if isinstance(value, (datetime, date)):
+        return value.isoformat()
+    raise TypeError(f"Cannot encode {type(value).__name__} as MessagePack")
+
+def negotiated(request: Request, response: Response, payload: Any) -> Any:
+    """
+    Return the payload in the encoding the client asked for.
+
+    JSON responses are returned unchanged so FastAPI still applies the route's
+    response_model; MessagePack responses are packed here.
+    """
+    # Caches must keep the encodings apart
+    response.headers["Vary"] = "Accept"
+    if wants_msgpack(request):
+        body = msgpack.packb(payload, use_bin_type=True, default=_to_builtin)
+        # A returned Response does not inherit headers set on the injected one
+        headers = {name: response.headers[name] for name in PASSED_HEADERS if name in response.headers}
+        return Response(content=body, media_type=MSGPACK_MEDIA_TYPE, headers=headers)
+    return payload
@@ -1,10 +1,11 @@
 """
 Database models and connection handling for WARDA Therapist API
 """
-from sqlalchemy import create_engine, Column, Integer, String, DateTime, Text, func
+from sqlalchemy import create_engine, Column, Integer, String, DateTime, Text, UniqueConstraint, func
 from sqlalchemy.ext.declarative import declarative_base
 from sqlalchemy.orm import sessionmaker
 import os
+from datetime import datetime
 from dotenv import load_dotenv
 
 # Load environment variables
@@ -48,6 +49,23 @@ class ChatMessage(Base):
     message = Column(Text, nullable=False)
     response = Column(Text, nullable=False)
     timestamp = Column(DateTime, default=func.now())
+    # Idempotency-Key sent by the client, so a retried message is not answered twice
+    client_key = Column(String(64), nullable=True)
+    
+    __table_args__ = (UniqueConstraint("user_id", "client_key", name="uq_user_client_key"),)
+
+class PendingChatRequest(Base):
+    __tablename__ = "pending_chat_requests"
+    
+    # Idempotency-Key of a message whose reply is still being generated; the unique
+    # constraint lets only one attempt at a time generate it
+    id = Column(Integer, primary_key=True, index=True)
+    user_id = Column(Integer, nullable=False)
+    client_key = Column(String(64), nullable=False)
+    # Set in Python, in UTC, so it compares with datetime.utcnow() whatever the server's zone
+    created_at = Column(DateTime, default=datetime.utcnow, nullable=False)
+    
+    __table_args__ = (UniqueConstraint("user_id", "client_key", name="uq_pending_user_client_key"),)
 
 # Helper function to get DB session
 def get_db():
@@ -3,15 +3,18 @@ Enhanced RAG (Retrieval-Augmented Generation) implementation
 for WARDA Therapist Application
 """
 import os
+import json
 import torch
 import pandas as pd
 import numpy as np
 import requests
 import logging
-from typing import Dict, Any, List, Optional, Tuple
+from typing import Dict, Any, Iterator, List, Optional, Tuple
 from sentence_transformers import SentenceTransformer, util
 from dotenv import load_dotenv
 
+from server_timing import optional_stage
+
 # Load environment variables
 load_dotenv()
 
@@ -672,20 +675,20 @@ def is_mental_health_related(query: str) -> bool:
         logger.error(f"Error in mental health topic detection: {str(e)}")
         return True  # Default to allow if there's an error
 
-def generate_response(query: str, user_id: Optional[int] = None, conversation_history: Optional[List] = None) -> Dict[str, Any]:
+def prepare_generation(query: str, user_id: Optional[int] = None, conversation_history: Optional[List] = None,
+                       timer=None) -> Tuple[Dict[str, Any], Optional[Dict[str, Any]]]:
     """
-    Generate a response using enhanced RAG
+    Run the pre-generation steps shared by the blocking and streaming paths
     
     Args:
         query (str): The user's query
         user_id (int): Optional user ID
         conversation_history (list): Optional conversation history
+        timer (StageTimer): Optional timer for the screening, emotion and retrieval stages
         
     Returns:
-        dict: Response data including text and emotional state
+        tuple: (response_data, payload) - payload is None when response_data is already final
     """
-    logger.info(f"Generating response for query: '{query}'")
-    
     # Initialize response data
     response_data = {
         "response": "",
@@ -699,10 +702,12 @@ def generate_response(query: str, user_id: Optional[int] = None, conversation_hi
     if not GROQ_API_KEY:
         response_data["error"] = "GROQ_API_KEY not found in environment variables"
         response_data["response"] = "I'm experiencing technical difficulties. Please make sure the API key is configured."
-        return response_data
+        return response_data, None
     
     # Check for crisis content
-    if check_for_crisis_content(query):
+    with optional_stage(timer, "screening"):
+        is_crisis = check_for_crisis_content(query)
+    if is_crisis:
         logger.warning(f"Crisis content detected in query: '{query}'")
         response_data["response"] = (
             "I'm concerned about what you're sharing. If you're having thoughts of hurting yourself, "
@@ -712,32 +717,35 @@ def generate_response(query: str, user_id: Optional[int] = None, conversation_hi
         )
         response_data["emotional_state"] = "distressed"
         response_data["confidence"] = 0.9
-        return response_data
+        return response_data, None
     
     # Check if query is mental health related
-    if not is_mental_health_related(query):
+    with optional_stage(timer, "screening"):
+        is_on_topic = is_mental_health_related(query)
+    if not is_on_topic:
         logger.info(f"Query not mental health related: '{query}'")
         response_data["response"] = (
             "I'm a mental health assistant designed to help with emotional well-being and mental health concerns. "
             "I don't have expertise in other topics. Could you please ask me something related to mental health "
             "or emotional support?"
         )
-        return response_data
+        return response_data, None
     
-    try:
-        # Analyze emotional state
+    # Analyze emotional state
+    with optional_stage(timer, "emotion"):
         emotion, confidence = analyze_message_emotion(query)
-        response_data["emotional_state"] = emotion
-        response_data["confidence"] = confidence
-        
+    response_data["emotional_state"] = emotion
+    response_data["confidence"] = confidence
+    
+    with optional_stage(timer, "retrieval"):
         # Determine response style
         response_style = determine_response_style(query, emotion, conversation_history)
         
         # Retrieve enhanced context
         context = retrieve_enhanced_context(query, response_style)
-        
-        # Create the system prompt
-        system_prompt = f"""You are WARDA (Wellness and Resilience Diagnostic AI), a compassionate mental health assistant. 
+    
+    # Create the system prompt
+    system_prompt = f"""You are WARDA (Wellness and Resilience Diagnostic AI), a compassionate mental health assistant. 
         Always respond with empathy and understanding. Your purpose is to:
         1. Listen and validate the user's feelings
         2. Ask thoughtful questions to understand their situation better
@@ -753,42 +761,75 @@ def generate_response(query: str, user_id: Optional[int] = None, conversation_hi
         IMPORTANT: Use the retrieved context to inform your response. This includes relevant information and examples
         of how skilled therapists respond to similar situations. Follow the guidance on tone and length.
         """
+    
+    # Build user content
+    user_content = f"User's query: {query}\n\n"
+    
+    # Add conversation history if available
+    if conversation_history and len(conversation_history) > 0:
+        history_text = "Recent conversation history:\n"
+        for i, msg in enumerate(conversation_history[-3:]):  # Include up to 3 recent messages
+            history_text += f"User: {msg.get('query', '')}\n"
+            history_text += f"Assistant: {msg.get('response', '')}\n\n"
+        user_content += f"{history_text}\n"
+    
+    # Add context
+    if context:
+        user_content += f"Retrieved context information:\n{context}\n\n"
+    
+    # Create payload
+    payload = {
+        "model": "llama3-8b-8192",
+        "messages": [
+            {"role": "system", "content": system_prompt},
+            {"role": "user", "content": user_content}
+        ],
+        "temperature": 0.7,
+        "max_tokens": 4000
+    }
+    
+    return response_data, payload
+
+def _groq_headers() -> Dict[str, str]:
+    """Build the authorization headers for the Groq API"""
+    return {
+        "Authorization": f"Bearer {GROQ_API_KEY}",
+        "Content-Type": "application/json"
+    }
+
+def generate_response(query: str, user_id: Optional[int] = None, conversation_history: Optional[List] = None,
+                      timer=None) -> Dict[str, Any]:
+    """
+    Generate a response using enhanced RAG
+    
+    Args:
+        query (str): The user's query
+        user_id (int): Optional user ID
+        conversation_history (list): Optional conversation history
+        timer (StageTimer): Optional timer; the LLM call is timed as "llm"
         
-        # Set up request to Groq API
-        headers = {
-            "Authorization": f"Bearer {GROQ_API_KEY}",
-            "Content-Type": "application/json"
-        }
-        
-        # Build user content
-        user_content = f"User's query: {query}\n\n"
-        
-        # Add conversation history if available
-        if conversation_history and len(conversation_history) > 0:
-            history_text = "Recent conversation history:\n"
-            for i, msg in enumerate(conversation_history[-3:]):  # Include up to 3 recent messages
-                history_text += f"User: {msg.get('query', '')}\n"
-                history_text += f"Assistant: {msg.get('response', '')}\n\n"
-            user_content += f"{history_text}\n"
-        
-        # Add context
-        if context:
-            user_content += f"Retrieved context information:\n{context}\n\n"
-        
-        # Create payload
-        payload = {
-            "model": "llama3-8b-8192",
-            "messages": [
-                {"role": "system", "content": system_prompt},
-                {"role": "user", "content": user_content}
-            ],
-            "temperature": 0.7,
-            "max_tokens": 4000
-        }
+    Returns:
+        dict: Response data including text and emotional state
+    """
+    logger.info(f"Generating response for query: '{query}'")
+    
+    response_data = {
+        "response": "",
+        "emotional_state": "neutral",
+        "confidence": 0.5,
+        "processing_time": 0,
+        "error": None
+    }
+    
+    try:
+        response_data, payload = prepare_generation(query, user_id, conversation_history, timer)
+        if payload is None:
+            return response_data
         
         # Make request to Groq API
         logger.info("Making request to Groq API")
-        response = requests.post(GROQ_API_URL, headers=headers, json=payload, timeout=30)
+        with optional_stage(timer, "llm"):
+            response = requests.post(GROQ_API_URL, headers=_groq_headers(), json=payload, timeout=30)
         
         if response.status_code != 200:
             logger.error(f"API Error: {response.text}")
@@ -813,4 +854,82 @@ def generate_response(query: str, user_id: Optional[int] = None, conversation_hi
         logger.error(f"Error generating response: {str(e)}")
         response_data["error"] = str(e)
         response_data["response"] = "I encountered an error while processing your request. Please try again."
-        return response_data
\ No newline at end of file
+        return response_data
+
+def generate_response_stream(query: str, user_id: Optional[int] = None, conversation_history: Optional[List] = None,
+                             timer=None) -> Iterator[Dict[str, Any]]:
+    """
+    Generate a response using enhanced RAG, yielding text as the LLM produces it
+    
+    Args:
+        query (str): The user's query
+        user_id (int): Optional user ID
+        conversation_history (list): Optional conversation history
+        timer (StageTimer): Optional timer; the whole LLM stream is timed as "llm"
+        
+    Yields:
+        dict: {"type": "token", "text": ...} events, then one {"type": "done", **response_data}
+    """
+    logger.info(f"Generating streamed response for query: '{query}'")
+    
+    response_data = {
+        "response": "",
+        "emotional_state": "neutral",
+        "confidence": 0.5,
+        "processing_time": 0,
+        "error": None
+    }
+    parts = []
+    
+    try:
+        response_data, payload = prepare_generation(query, user_id, conversation_history, timer)
+        if payload is None:
+            # Canned replies (crisis, off-topic, missing key) arrive as a single chunk
+            yield {"type": "token", "text": response_data["response"]}
+            yield {"type": "done", **response_data}
+            return
+        
+        payload["stream"] = True
+        
+        logger.info("Making streaming request to Groq API")
+        # Includes the time spent handing tokens to the client, which paces the stream
+        with optional_stage(timer, "llm"):
+            with requests.post(GROQ_API_URL, headers=_groq_headers(), json=payload, timeout=30, stream=True) as response:
+                if response.status_code != 200:
+                    logger.error(f"API Error: {response.text}")
+                    response_data["error"] = f"API Error: {response.status_code}"
+                    response_data["response"] = "I'm having trouble connecting to my brain. Please try again."
+                    yield {"type": "token", "text": response_data["response"]}
+                    yield {"type": "done", **response_data}
+                    return
+            
+                for line in response.iter_lines(decode_unicode=True):
+                    # Groq streams OpenAI-style server-sent events
+                    if not line or not line.startswith("data:"):
+                        continue
+                    data = line[len("data:"):].strip()
+                    if data == "[DONE]":
+                        break
+                
+                    chunk = json.loads(data)
+                    choices = chunk.get("choices") or []
+                    if not choices:
+                        continue
+                    text = (choices[0].get("delta") or {}).get("content")
+                    if text:
+                        parts.append(text)
+                        yield {"type": "token", "text": text}
+            
+                response_data["response"] = "".join(parts)
+                logger.info(f"Finished streaming response from Groq (length: {len(response_data['response'])})")
+        
+        yield {"type": "done", **response_data}
+        
+    except Exception as e:
+        logger.error(f"Error generating streamed response: {str(e)}")
+        response_data["error"] = str(e)
+        response_data["response"] = "".join(parts)
+        if not parts:
+            response_data["response"] = "I encountered an error while processing your request. Please try again."
+            yield {"type": "token", "text": response_data["response"]}
+        yield {"type": "done", **response_data}
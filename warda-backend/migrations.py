@@ -66,15 +66,44 @@ def create_tables():
                 message TEXT NOT NULL,
                 response TEXT NOT NULL,
                 timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                INDEX user_idx (user_id)
+                client_key VARCHAR(64) NULL,
+                INDEX user_idx (user_id),
+                UNIQUE KEY uq_user_client_key (user_id, client_key)
             )
             """))
             logger.info("Chat Messages table created or already exists")
             
+            add_client_key_column(conn)
+            
+            # Create the table of idempotency keys whose reply is still being generated
+            conn.execute(text("""
+            CREATE TABLE IF NOT EXISTS pending_chat_requests (
+                id INT AUTO_INCREMENT PRIMARY KEY,
+                user_id INT NOT NULL,
+                client_key VARCHAR(64) NOT NULL,
+                created_at DATETIME NOT NULL,
+                UNIQUE KEY uq_pending_user_client_key (user_id, client_key)
+            )
+            """))
+            logger.info("Pending Chat Requests table created or already exists")
+            
     except Exception as e:
         logger.error(f"Error creating tables: {str(e)}")
         sys.exit(1)
 
+def add_client_key_column(conn):
+    """Add the idempotency key column to a chat_messages table created before it existed."""
+    exists = conn.execute(text("""
+    SELECT COUNT(*) FROM information_schema.COLUMNS
+    WHERE TABLE_SCHEMA = :schema AND TABLE_NAME = 'chat_messages' AND COLUMN_NAME = 'client_key'
+    """), {"schema": DB_NAME}).scalar()
+    if exists:
+        return
+    
+    conn.execute(text("ALTER TABLE chat_messages ADD COLUMN client_key VARCHAR(64) NULL"))
+    conn.execute(text("ALTER TABLE chat_messages ADD UNIQUE KEY uq_user_client_key (user_id, client_key)"))
+    logger.info("Added client_key column to chat_messages")
+
 def main():
     """Main function to run the migration."""
     logger.info("Starting database migration")
@@ -0,0 +1,51 @@
+"""
+Server-Timing support for WARDA Therapist API
+
+A chat turn spends most of its time in a few stages (emotion analysis, context
+retrieval, the LLM call). Each stage is timed and reported to the client as a
+`Server-Timing` header (https://www.w3.org/TR/server-timing/), e.g.
+
+    Server-Timing: emotion;dur=41.2, retrieval;dur=230.5, llm;dur=1810.0, total;dur=2110.3
+
+so a slow turn can be attributed to a stage and lined up with the client's own
+network phases. Streamed replies have already sent their headers when generation
+finishes, so they carry the same value in the final event instead.
+"""
+import time
+from contextlib import contextmanager
+from typing import Dict, Iterator
+
+HEADER = "Server-Timing"
+
+class StageTimer:
+    """Accumulates wall-clock milliseconds per stage, in the order stages first ran"""
+
+    def __init__(self):
+        self.started = time.perf_counter()
+        self.stages: Dict[str, float] = {}
+
+    @contextmanager
+    def stage(self, name: str) -> Iterator[None]:
+        """Time the enclosed block; a stage entered twice adds up"""
+        start = time.perf_counter()
+        try:
+            yield
+        finally:
+            elapsed = (time.perf_counter() - start) * 1000
+            self.stages[name] = self.stages.get(name, 0.0) + elapsed
+
+    def header_value(self) -> str:
+        """Stages followed by the total since the timer was created"""
+        total = (time.perf_counter() - self.started) * 1000
+        entries = [f"{name};dur={duration:.1f}" for name, duration in self.stages.items()]
+        entries.append(f"total;dur={total:.1f}")
+        return ", ".join(entries)
+
+@contextmanager
+def optional_stage(timer, name: str) -> Iterator[None]:
+    """timer.stage(name), or nothing when the caller is not timing"""
+    if timer is None:
+        yield
+    else:
+        with timer.stage(name):
+            yield
@@ -1,7 +1,7 @@
 """
 State tracking routes for WARDA Therapist API
 """
-from fastapi import APIRouter, Depends, HTTPException
+from fastapi import APIRouter, Depends, HTTPException, Request, Response
 from sqlalchemy.orm import Session
 from typing import Dict, Any, List, Optional
 from pydantic import BaseModel
@@ -9,6 +9,8 @@ from datetime import datetime, timedelta
 import logging
 import json
 
+from conditional_requests import make_etag, message_validator, not_modified, set_validators
+from content_negotiation import negotiated
 from database import get_db, User, ChatMessage
 from enhanced_rag import analyze_message_emotion
 
@@ -35,6 +37,16 @@ class RecommendationsResponse(BaseModel):
     current_state: Dict[str, Any]
     recommendations: List[str]
 
+# Field order is the order sections are sent in, smallest first
+class DashboardResponse(BaseModel):
+    current_state: Dict[str, Any]
+    summary: Dict[str, Any]
+    recommendations: List[str]
+    timeline: List[Dict[str, Any]]
+
+# Days of messages track_emotional_state looks at
+STATE_WINDOW_DAYS = 7
+
 # Color mapping for emotional states
 EMOTION_COLORS = {
     "distressed": "#FF3B30",  # Red
@@ -64,6 +76,206 @@ TREND_DESCRIPTIONS = {
     "declining": "There seems to be an increase in challenging emotions in recent conversations."
 }
 
+# Numeric scale used for trends and the timeline chart
+EMOTION_VALUES = {
+    "distressed": -3,
+    "sad": -2,
+    "anxious": -1,
+    "angry": -1,
+    "neutral": 0,
+    "content": 1,
+    "hopeful": 2
+}
+
+# Recommendations for each emotional state
+STATE_RECOMMENDATIONS = {
+    "distressed": [
+        "Practice deep breathing for 5 minutes",
+        "Reach out to a trusted friend or family member",
+        "Consider speaking with a mental health professional",
+        "Use grounding techniques (name 5 things you can see, 4 you can touch, etc.)",
+        "Take a break from stressful activities"
+    ],
+    "sad": [
+        "Engage in a small activity you usually enjoy",
+        "Listen to uplifting music",
+        "Spend time in nature if possible",
+        "Journal about your feelings",
+        "Practice self-compassion meditation"
+    ],
+    "anxious": [
+        "Try progressive muscle relaxation",
+        "Write down specific worries and examine evidence for/against them",
+        "Limit caffeine and sugar intake",
+        "Practice mindfulness meditation",
+        "Break large tasks into smaller, manageable steps"
+    ],
+    "angry": [
+        "Take a timeout before responding",
+        "Physical activity to release tension",
+        "Write out your thoughts before expressing them",
+        "Practice assertive (not aggressive) communication",
+        "Identify triggers and prepare coping strategies"
+    ],
+    "neutral": [
+        "Maintain regular sleep schedule",
+        "Continue physical activity routines",
+        "Practice gratitude journaling",
+        "Connect with others socially",
+        "Learn something new today"
+    ],
+    "content": [
+        "Savor this positive state with mindfulness",
+        "Express gratitude to someone in your life",
+        "Document what's working well for future reference",
+        "Share your positive energy with others",
+        "Build on this foundation with activities you enjoy"
+    ],
+    "hopeful": [
+        "Set meaningful goals while in this positive state",
+        "Reflect on your strengths and resources",
+        "Create a vision board or journal about aspirations",
+        "Practice optimistic thinking about specific challenges",
+        "Share your hope with someone who may need encouragement"
+    ]
+}
+
+NEUTRAL_STATE = {
+    "state": "neutral",
+    "confidence": 0.5,
+    "trend": "stable",
+    "history": []
+}
+
+def describe(emotion: str, trend: str) -> str:
+    """Combined emotion and trend description"""
+    return f"{EMOTION_DESCRIPTIONS.get(emotion, '')} {TREND_DESCRIPTIONS.get(trend, '')}".strip()
+
+def analyze_messages(messages: List[ChatMessage]) -> List[Dict[str, Any]]:
+    """
+    Run emotion analysis once per message, oldest first. The current state, the
+    timeline and the dashboard are all derived from this list.
+    """
+    analyzed = []
+    for msg in messages:
+        emotion, confidence = analyze_message_emotion(msg.message)
+        analyzed.append({
+            "timestamp": msg.timestamp,
+            "emotion": emotion,
+            "confidence": confidence,
+            "short_message": msg.message[:50] + "..." if len(msg.message) > 50 else msg.message
+        })
+    return analyzed
+
+def state_from_analysis(analyzed: List[Dict[str, Any]]) -> Dict[str, Any]:
+    """
+    Current state (most recent emotion) and short-term trend over the last three messages
+    """
+    if not analyzed:
+        return dict(NEUTRAL_STATE)
+    
+    emotion_history = [{
+        "timestamp": item["timestamp"].isoformat(),
+        "emotion": item["emotion"],
+        "confidence": item["confidence"],
+        "message": item["short_message"]
+    } for item in analyzed]
+    
+    # Determine trend
+    trend = "stable"
+    if len(analyzed) >= 3:
+        recent_values = [EMOTION_VALUES.get(item["emotion"], 0) for item in analyzed[-3:]]
+        if recent_values[2] > recent_values[0]:
+            trend = "improving"
+        elif recent_values[2] < recent_values[0]:
+            trend = "declining"
+    
+    return {
+        "state": analyzed[-1]["emotion"],
+        "confidence": analyzed[-1]["confidence"],
+        "trend": trend,
+        "history": emotion_history
+    }
+
+def timeline_from_analysis(analyzed: List[Dict[str, Any]]):
+    """
+    Chart points plus a summary whose trend is the slope over the whole window
+    """
+    if not analyzed:
+        return [], {"state": "neutral", "trend": "stable"}
+    
+    timeline = []
+    numerical_values = []
+    for item in analyzed:
+        numerical_value = EMOTION_VALUES.get(item["emotion"], 0)
+        numerical_values.append(numerical_value)
+        timeline.append({
+            "timestamp": item["timestamp"].isoformat(),
+            "emotion": item["emotion"],
+            "confidence": item["confidence"],
+            "color": EMOTION_COLORS.get(item["emotion"], "#34C759"),
+            "value": numerical_value,
+            "short_message": item["short_message"]
+        })
+    
+    # Calculate trend
+    trend = "stable"
+    if len(numerical_values) >= 3:
+        # Simple linear regression
+        x = list(range(len(numerical_values)))
+        y = numerical_values
+        
+        n = len(x)
+        sum_x = sum(x)
+        sum_y = sum(y)
+        sum_x_squared = sum(i ** 2 for i in x)
+        sum_xy = sum(x[i] * y[i] for i in range(n))
+        
+        # Calculate slope
+        m = (n * sum_xy - sum_x * sum_y) / (n * sum_x_squared - sum_x ** 2) if (n * sum_x_squared - sum_x ** 2) != 0 else 0
+        
+        if m > 0.1:
+            trend = "improving"
+        elif m < -0.1:
+            trend = "declining"
+    
+    # Get current state (last message)
+    current_state = timeline[-1]["emotion"]
+    
+    return timeline, {
+        "state": current_state,
+        "trend": trend,
+        "color": EMOTION_COLORS.get(current_state, "#34C759"),
+        "description": describe(current_state, trend)
+    }
+
+def recommendations_for(emotion: str, trend: str) -> List[str]:
+    """
+    Recommendations for the current state, plus a few more when the trend calls for them
+    """
+    state_recommendations = STATE_RECOMMENDATIONS.get(emotion, STATE_RECOMMENDATIONS["neutral"])
+    
+    # Additional recommendations based on trend
+    trend_recommendations = []
+    if trend == "declining" and emotion in ["neutral", "content", "hopeful"]:
+        trend_recommendations = [
+            "Notice early signs of stress and address them proactively",
+            "Maintain supportive routines as prevention"
+        ]
+    elif trend == "declining" and emotion in ["sad", "anxious", "angry", "distressed"]:
+        trend_recommendations = [
+            "Consider reaching out to a mental health professional",
+            "Increase self-care activities and supportive connections"
+        ]
+    elif trend == "improving" and emotion in ["sad", "anxious", "angry", "distressed"]:
+        trend_recommendations = [
+            "Notice what's helping and continue those practices",
+            "Document effective coping strategies for future reference"
+        ]
+    
+    # Combine recommendations
+    return state_recommendations + trend_recommendations
+
 def track_emotional_state(user_id: int, db: Session):
     """
     Track the emotional state of a user over time
@@ -76,89 +288,29 @@ def track_emotional_state(user_id: int, db: Session):
         dict: Emotional state data
     """
     if not user_id:
-        return {
-            "state": "neutral",
-            "confidence": 0.5,
-            "trend": "stable",
-            "history": []
-        }
+        return dict(NEUTRAL_STATE)
     
     try:
         # Get recent messages from the last 7 days
-        seven_days_ago = datetime.now() - timedelta(days=7)
+        seven_days_ago = datetime.now() - timedelta(days=STATE_WINDOW_DAYS)
         recent_messages = db.query(ChatMessage).filter(
             ChatMessage.user_id == user_id,
             ChatMessage.timestamp >= seven_days_ago
         ).order_by(ChatMessage.timestamp.asc()).all()
         
-        if not recent_messages:
-            return {
-                "state": "neutral",
-                "confidence": 0.5,
-                "trend": "stable",
-                "history": []
-            }
-        
-        # Analyze each message
-        emotion_history = []
-        for msg in recent_messages:
-            emotion, confidence = analyze_message_emotion(msg.message)
-            emotion_history.append({
-                "timestamp": msg.timestamp.isoformat(),
-                "emotion": emotion,
-                "confidence": confidence,
-                "message": msg.message[:50] + "..." if len(msg.message) > 50 else msg.message
-            })
-        
-        # Determine current state (most recent emotion)
-        current_state = emotion_history[-1]["emotion"] if emotion_history else "neutral"
-        current_confidence = emotion_history[-1]["confidence"] if emotion_history else 0.5
-        
-        # Determine trend
-        if len(emotion_history) >= 3:
-            # Map emotions to numerical values for trend analysis
-            emotion_values = {
-                "distressed": -3,
-                "sad": -2,
-                "anxious": -1,
-                "angry": -1,
-                "neutral": 0,
-                "content": 1,
-                "hopeful": 2
-            }
-            
-            # Get recent values
-            recent_values = [emotion_values.get(e["emotion"], 0) for e in emotion_history[-3:]]
-            
-            if recent_values[2] > recent_values[0]:
-                trend = "improving"
-            elif recent_values[2] < recent_values[0]:
-                trend = "declining"
-            else:
-                trend = "stable"
-        else:
-            trend = "stable"
-        
-        return {
-            "state": current_state,
-            "confidence": current_confidence,
-            "trend": trend,
-            "history": emotion_history
-        }
+        return state_from_analysis(analyze_messages(recent_messages))
         
     except Exception as e:
         logger.error(f"Error tracking emotional state: {str(e)}")
-        return {
-            "state": "neutral",
-            "confidence": 0.5,
-            "trend": "stable",
-            "history": []
-        }
+        return dict(NEUTRAL_STATE)
 
 @router.get("/current/{user_id}", response_model=EmotionalStateResponse)
-async def get_current_emotional_state(user_id: int, db: Session = Depends(get_db)):
+async def get_current_emotional_state(user_id: int, request: Request, response: Response,
+                                      db: Session = Depends(get_db)):
     """
     Get the current emotional state of a user
+    
+    Supports If-None-Match: an unchanged state is answered with 304 before any analysis.
     """
     try:
         # Check if user exists
@@ -166,6 +318,14 @@ async def get_current_emotional_state(user_id: int, db: Session = Depends(get_db
         if not user:
             raise HTTPException(status_code=404, detail="User not found")
         
+        # The state only depends on the messages track_emotional_state looks at
+        etag = make_etag(request, "current", user_id,
+                         message_validator(db, user_id, datetime.now() - timedelta(days=STATE_WINDOW_DAYS)))
+        unchanged = not_modified(request, etag)
+        if unchanged:
+            return unchanged
+        set_validators(response, etag)
+        
         # Get emotional state data
         user_state = track_emotional_state(user_id, db)
         
@@ -174,9 +334,7 @@ async def get_current_emotional_state(user_id: int, db: Session = Depends(get_db
         color_code = EMOTION_COLORS.get(emotion, "#34C759")  # Default to green if not found
         
         # Create description
-        emotion_desc = EMOTION_DESCRIPTIONS.get(emotion, "")
-        trend_desc = TREND_DESCRIPTIONS.get(user_state["trend"], "")
-        description = f"{emotion_desc} {trend_desc}".strip()
+        description = describe(emotion, user_state["trend"])
         
         # Return enhanced state data
         return {
@@ -194,9 +352,13 @@ async def get_current_emotional_state(user_id: int, db: Session = Depends(get_db
         raise HTTPException(status_code=500, detail=str(e))
 
 @router.get("/timeline/{user_id}", response_model=EmotionalTimelineResponse)
-async def get_emotional_timeline(user_id: int, days: int = 7, db: Session = Depends(get_db)):
+async def get_emotional_timeline(user_id: int, request: Request, response: Response, days: int = 7,
+                                 db: Session = Depends(get_db)):
     """
     Get emotional state timeline for visualization
+    
+    Sent as MessagePack instead of JSON when the Accept header asks for it.
+    Supports If-None-Match: an unchanged timeline is answered with 304 before any analysis.
     """
     try:
         # Check if user exists
@@ -206,76 +368,20 @@ async def get_emotional_timeline(user_id: int, days: int = 7, db: Session = Depe
         
         # Get messages from the specified time period
         start_date = datetime.now() - timedelta(days=days)
+        
+        etag = make_etag(request, "timeline", user_id, days, message_validator(db, user_id, start_date))
+        unchanged = not_modified(request, etag)
+        if unchanged:
+            return unchanged
+        set_validators(response, etag)
+        
         messages = db.query(ChatMessage).filter(
             ChatMessage.user_id == user_id,
             ChatMessage.timestamp >= start_date
         ).order_by(ChatMessage.timestamp.asc()).all()
         
-        if not messages:
-            return {"timeline": [], "summary": {"state": "neutral", "trend": "stable"}}
-        
-        # Analyze emotional state for each message
-        timeline = []
-        emotion_values = {
-            "distressed": -3,
-            "sad": -2,
-            "anxious": -1,
-            "angry": -1,
-            "neutral": 0,
-            "content": 1,
-            "hopeful": 2
-        }
-        
-        numerical_values = []
-        
-        for msg in messages:
-            emotion, confidence = analyze_message_emotion(msg.message)
-            color = EMOTION_COLORS.get(emotion, "#34C759")
-            numerical_value = emotion_values.get(emotion, 0)
-            numerical_values.append(numerical_value)
-            
-            timeline.append({
-                "timestamp": msg.timestamp.isoformat(),
-                "emotion": emotion,
-                "confidence": confidence,
-                "color": color,
-                "value": numerical_value,
-                "short_message": msg.message[:50] + "..." if len(msg.message) > 50 else msg.message
-            })
-        
-        # Calculate trend
-        trend = "stable"
-        if len(numerical_values) >= 3:
-            # Simple linear regression
-            x = list(range(len(numerical_values)))
-            y = numerical_values
-            
-            n = len(x)
-            sum_x = sum(x)
-            sum_y = sum(y)
-            sum_x_squared = sum(i ** 2 for i in x)
-            sum_xy = sum(x[i] * y[i] for i in range(n))
-            
-            # Calculate slope
-            m = (n * sum_xy - sum_x * sum_y) / (n * sum_x_squared - sum_x ** 2) if (n * sum_x_squared - sum_x ** 2) != 0 else 0
-            
-            if m > 0.1:
-                trend = "improving"
-            elif m < -0.1:
-                trend = "declining"
-        
-        # Get current state (last message)
-        current_state = timeline[-1]["emotion"] if timeline else "neutral"
-        
-        return {
-            "timeline": timeline,
-            "summary": {
-                "state": current_state,
-                "trend": trend,
-                "color": EMOTION_COLORS.get(current_state, "#34C759"),
-                "description": f"{EMOTION_DESCRIPTIONS.get(current_state, '')} {TREND_DESCRIPTIONS.get(trend, '')}".strip()
-            }
-        }
+        timeline, summary = timeline_from_analysis(analyze_messages(messages))
+        return negotiated(request, response, {"timeline": timeline, "summary": summary})
     except HTTPException:
         raise
     except Exception as e:
@@ -283,9 +389,12 @@ async def get_emotional_timeline(user_id: int, days: int = 7, db: Session = Depe
         raise HTTPException(status_code=500, detail=str(e))
 
 @router.get("/recommendations/{user_id}", response_model=RecommendationsResponse)
-async def get_recommendations(user_id: int, db: Session = Depends(get_db)):
+async def get_recommendations(user_id: int, request: Request, response: Response, db: Session = Depends(get_db)):
     """
     Get personalized recommendations based on emotional state
+    
+    Sent as MessagePack instead of JSON when the Accept header asks for it.
+    Supports If-None-Match: unchanged recommendations are answered with 304 before any analysis.
     """
     try:
         # Check if user exists
@@ -293,101 +402,94 @@ async def get_recommendations(user_id: int, db: Session = Depends(get_db)):
         if not user:
             raise HTTPException(status_code=404, detail="User not found")
         
+        etag = make_etag(request, "recommendations", user_id,
+                         message_validator(db, user_id, datetime.now() - timedelta(days=STATE_WINDOW_DAYS)))
+        unchanged = not_modified(request, etag)
+        if unchanged:
+            return unchanged
+        set_validators(response, etag)
+        
         # Get current emotional state
         user_state = track_emotional_state(user_id, db)
         emotion = user_state["state"]
         trend = user_state["trend"]
         
-        # Define recommendations for each emotional state
-        recommendations = {
-            "distressed": [
-                "Practice deep breathing for 5 minutes",
-                "Reach out to a trusted friend or family member",
-                "Consider speaking with a mental health professional",
-                "Use grounding techniques (name 5 things you can see, 4 you can touch, etc.)",
-                "Take a break from stressful activities"
-            ],
-            "sad": [
-                "Engage in a small activity you usually enjoy",
-                "Listen to uplifting music",
-                "Spend time in nature if possible",
-                "Journal about your feelings",
-                "Practice self-compassion meditation"
-            ],
-            "anxious": [
-                "Try progressive muscle relaxation",
-                "Write down specific worries and examine evidence for/against them",
-                "Limit caffeine and sugar intake",
-                "Practice mindfulness meditation",
-                "Break large tasks into smaller, manageable steps"
-            ],
-            "angry": [
-                "Take a timeout before responding",
-                "Physical activity to release tension",
-                "Write out your thoughts before expressing them",
-                "Practice assertive (not aggressive) communication",
-                "Identify triggers and prepare coping strategies"
-            ],
-            "neutral": [
-                "Maintain regular sleep schedule",
-                "Continue physical activity routines",
-                "Practice gratitude journaling",
-                "Connect with others socially",
-                "Learn something new today"
-            ],
-            "content": [
-                "Savor this positive state with mindfulness",
-                "Express gratitude to someone in your life",
-                "Document what's working well for future reference",
-                "Share your positive energy with others",
-                "Build on this foundation with activities you enjoy"
-            ],
-            "hopeful": [
-                "Set meaningful goals while in this positive state",
-                "Reflect on your strengths and resources",
-                "Create a vision board or journal about aspirations",
-                "Practice optimistic thinking about specific challenges",
-                "Share your hope with someone who may need encouragement"
-            ]
-        }
-        
-        # Get recommendations for the current state
-        state_recommendations = recommendations.get(emotion, recommendations["neutral"])
-        
-        # Additional recommendations based on trend
-        trend_recommendations = []
-        if trend == "declining" and emotion in ["neutral", "content", "hopeful"]:
-            trend_recommendations = [
-                "Notice early signs of stress and address them proactively",
-                "Maintain supportive routines as prevention"
-            ]
-        elif trend == "declining" and emotion in ["sad", "anxious", "angry", "distressed"]:
-            trend_recommendations = [
-                "Consider reaching out to a mental health professional",
-                "Increase self-care activities and supportive connections"
-            ]
-        elif trend == "improving" and emotion in ["sad", "anxious", "angry", "distressed"]:
-            trend_recommendations = [
-                "Notice what's helping and continue those practices",
-                "Document effective coping strategies for future reference"
-            ]
-        
-        # Combine recommendations
-        all_recommendations = state_recommendations + trend_recommendations
-        
-        return {
+        return negotiated(request, response, {
             "current_state": {
                 "emotion": emotion,
                 "trend": trend
             },
-            "recommendations": all_recommendations
-        }
+            "recommendations": recommendations_for(emotion, trend)
+        })
     except HTTPException:
         raise
     except Exception as e:
         logger.error(f"Error getting recommendations: {str(e)}")
         raise HTTPException(status_code=500, detail=str(e))
 
+@router.get("/dashboard/{user_id}", response_model=DashboardResponse)
+async def get_dashboard(user_id: int, request: Request, response: Response, days: int = 7,
+                        db: Session = Depends(get_db)):
+    """
+    Everything the emotional state screen shows, from one analysis pass
+    
+    The current state, timeline summary, recommendations and timeline are built from
+    the same analyzed messages instead of each route re-querying and re-classifying
+    them. The timeline is sent last so clients can render the small sections while
+    it is still arriving.
+    
+    Sent as MessagePack instead of JSON when the Accept header asks for it.
+    Supports If-None-Match: an unchanged dashboard is answered with 304 before any analysis.
+    """
+    try:
+        # Check if user exists
+        user = db.query(User).filter(User.id == user_id).first()
+        if not user:
+            raise HTTPException(status_code=404, detail="User not found")
+        
+        now = datetime.now()
+        state_start = now - timedelta(days=STATE_WINDOW_DAYS)
+        timeline_start = now - timedelta(days=days)
+        
+        # Either window can change on its own, e.g. when a message ages out of the shorter one
+        etag = make_etag(request, "dashboard", user_id, days,
+                         message_validator(db, user_id, state_start),
+                         message_validator(db, user_id, timeline_start))
+        unchanged = not_modified(request, etag)
+        if unchanged:
+            return unchanged
+        set_validators(response, etag)
+        
+        # One query and one classification pass over the wider of the two windows
+        messages = db.query(ChatMessage).filter(
+            ChatMessage.user_id == user_id,
+            ChatMessage.timestamp >= min(state_start, timeline_start)
+        ).order_by(ChatMessage.timestamp.asc()).all()
+        analyzed = analyze_messages(messages)
+        
+        user_state = state_from_analysis([item for item in analyzed if item["timestamp"] >= state_start])
+        timeline, summary = timeline_from_analysis([item for item in analyzed if item["timestamp"] >= timeline_start])
+        emotion = user_state["state"]
+        trend = user_state["trend"]
+        
+        return negotiated(request, response, {
+            "current_state": {
+                "state": emotion,
+                "confidence": user_state["confidence"],
+                "trend": trend,
+                "color_code": EMOTION_COLORS.get(emotion, "#34C759"),
+                "description": describe(emotion, trend)
+            },
+            "summary": summary,
+            "recommendations": recommendations_for(emotion, trend),
+            "timeline": timeline
+        })
+    except HTTPException:
+        raise
+    except Exception as e:
+        logger.error(f"Error getting dashboard: {str(e)}")
+        raise HTTPException(status_code=500, detail=str(e))
+
 @router.get("/insights/{user_id}")
 async def get_emotional_insights(user_id: int, days: int = 30, db: Session = Depends(get_db)):
     """
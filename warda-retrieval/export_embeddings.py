@@ -0,0 +1,114 @@
+"""
+Script to export embeddings.pt for the JVM retrieval module
+
+Writes, into the output directory:
+  embeddings.f32       row-major little-endian float32, one L2-normalized row per text
+  texts.txt            one text per line, with backslash, newline and carriage return escaped
+  manifest.properties  rows, dimension and layout of the two files above
+
+With --check N it also writes N query vectors (queries.f32) and the top results that
+util.pytorch_cos_sim and torch.topk give for them (expected.tsv), so the JVM side can be
+checked against the backend's own retrieval.
+"""
+import argparse
+import logging
+import os
+import sys
+
+import torch
+import torch.nn.functional as F
+from sentence_transformers import util
+
+# Configure logging
+logging.basicConfig(level=logging.INFO, format='%(asctime)s - %(levelname)s - %(message)s')
+logger = logging.getLogger(__name__)
+
+CHECK_TOP_K = 20
+CHECK_NOISE = 0.05
+CHECK_SEED = 42
+
+
+def escape(text):
+    return text.replace('\\', '\\\\').replace('\n', '\\n').replace('\r', '\\r')
+
+
+def write_floats(tensor, path):
+    # '<f4' pins the byte order whatever the host is
+    tensor.detach().cpu().contiguous().numpy().astype('<f4').tofile(path)
+
+
+def export_embeddings(source, output, check):
+    """Export the embeddings and texts of source into output"""
+    try:
+        if not os.path.exists(source):
+            logger.error(f"{source} not found. Run generate_embedding.py (or git lfs pull) first.")
+            sys.exit(1)
+
+        logger.info(f"Loading {source}...")
+        data = torch.load(source, map_location=torch.device('cpu'))
+        texts = data["texts"]
+        embeddings = data["embeddings"].float()
+        rows, dimension = embeddings.shape
+        if rows != len(texts):
+            logger.error(f"{rows} embeddings but {len(texts)} texts")
+            sys.exit(1)
+        logger.info(f"Loaded {rows} embeddings of dimension {dimension}")
+
+        os.makedirs(output, exist_ok=True)
+
+        # The same normalization util.pytorch_cos_sim applies, done once here so the JVM
+        # side only needs dot products
+        normalized = F.normalize(embeddings, p=2, dim=1)
+        write_floats(normalized, os.path.join(output, "embeddings.f32"))
+
+        with open(os.path.join(output, "texts.txt"), "w", encoding="utf-8", newline="\n") as f:
+            for text in texts:
+                f.write(escape(str(text)))
+                f.write("\n")
+
+        with open(os.path.join(output, "manifest.properties"), "w", encoding="utf-8") as f:
+            f.write(f"rows={rows}\n")
+            f.write(f"dimension={dimension}\n")
+            f.write("dtype=float32\n")
+            f.write("byteOrder=little-endian\n")
+            f.write("normalized=true\n")
+
+        if check > 0:
+            export_check(embeddings, output, check)
+
+        logger.info(f"Exported to {output}")
+
+    except Exception as e:
+        logger.error(f"Error exporting embeddings: {str(e)}")
+        sys.exit(1)
+
+
+def export_check(embeddings, output, count):
+    """Write query vectors and the backend's top results for them"""
+    # Stored rows plus some noise stand in for encoded queries, which would need the model
+    generator = torch.Generator().manual_seed(CHECK_SEED)
+    picks = torch.randint(0, embeddings.shape[0], (count,), generator=generator)
+    queries = embeddings[picks]
+    queries = queries + CHECK_NOISE * queries.norm(dim=1, keepdim=True) \
+        * torch.randn(queries.shape, generator=generator) / queries.shape[1] ** 0.5
+    write_floats(queries, os.path.join(output, "queries.f32"))
+
+    k = min(CHECK_TOP_K, embeddings.shape[0])
+    with open(os.path.join(output, "expected.tsv"), "w", encoding="utf-8", newline="\n") as f:
+        for query_index in range(count):
+            # As in retrieve_enhanced_context
+            similarities = util.pytorch_cos_sim(queries[query_index], embeddings)[0]
+            top = torch.topk(similarities, k=k)
+            for rank in range(k):
+                f.write(f"{query_index}\t{rank}\t{top.indices[rank].item()}\t{top.values[rank].item():.9g}\n")
+    logger.info(f"Wrote {count} check queries with their top {k} results")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description="Export embeddings.pt for warda-retrieval")
+    parser.add_argument("--source", default="../warda-backend/embeddings.pt")
+    parser.add_argument("--output", default="export")
+    parser.add_argument("--check", type=int, default=100,
+                        help="number of check queries to export (0 for none)")
+    args = parser.parse_args()
+    export_embeddings(args.source, args.output, args.check)
@@ -0,0 +1,66 @@
+package com.example.warda_retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Growable max-heap of (row, score) pairs: the frontier of a graph search, best first.
+ */
+final class CandidateQueue {
+
+    private int[] rows = new int[64];
+    private float[] scores = new float[64];
+    private int size;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(int row, float score) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] >= score) {
+                break;
+            }
+            rows[i] = rows[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        rows[i] = row;
+        scores[i] = score;
+    }
+
+    float bestScore() {
+        return scores[0];
+    }
+
+    // Removes the best pair and returns its row
+    int pop() {
+        int best = rows[0];
+        int row = rows[--size];
+        float score = scores[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && scores[child + 1] > scores[child]) {
+                child++;
+            }
+            if (scores[child] <= score) {
+                break;
+            }
+            rows[i] = rows[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        rows[i] = row;
+        scores[i] = score;
+        return best;
+    }
+}
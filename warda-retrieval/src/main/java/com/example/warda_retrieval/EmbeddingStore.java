@@ -0,0 +1,190 @@
+package com.example.warda_retrieval;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.zip.CRC32C;
+
+/**
+ * The transcript embeddings written by export_embeddings.py, memory-mapped read-only.
+ *
+ * Rows are L2-normalized float32 in little-endian order, so the vectors are never copied onto
+ * the heap: the OS pages them in on first use and shares them between processes. Only the
+ * texts are loaded, one String per row.
+ */
+public final class EmbeddingStore implements Closeable {
+
+    public static final String VECTORS_FILE = "embeddings.f32";
+    public static final String TEXTS_FILE = "texts.txt";
+    public static final String MANIFEST_FILE = "manifest.properties";
+
+    private final int rows;
+    private final int dimension;
+    private final MappedByteBuffer vectors;
+    private final String[] texts;
+    private final FileChannel channel;
+
+    // CRC32C of the vectors, or -1 until first asked for
+    private volatile long checksum = -1;
+
+    private EmbeddingStore(int rows, int dimension, FileChannel channel, MappedByteBuffer vectors, String[] texts) {
+        this.rows = rows;
+        this.dimension = dimension;
+        this.channel = channel;
+        this.vectors = vectors;
+        this.texts = texts;
+    }
+
+    public static EmbeddingStore open(Path directory) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(directory.resolve(MANIFEST_FILE))) {
+            manifest.load(in);
+        }
+        int rows = intProperty(manifest, "rows");
+        int dimension = intProperty(manifest, "dimension");
+        if (!"float32".equals(manifest.getProperty("dtype"))
+                || !"little-endian".equals(manifest.getProperty("byteOrder"))
+                || !"true".equals(manifest.getProperty("normalized"))) {
+            throw new IOException("Unsupported layout in " + MANIFEST_FILE + ": " + manifest);
+        }
+
+        long bytes = (long) rows * dimension * Float.BYTES;
+        // One mapping covers about 2 GB, i.e. 500k rows of 1024 floats
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException(rows + " x " + dimension + " floats do not fit in one mapping");
+        }
+
+        FileChannel channel = FileChannel.open(directory.resolve(VECTORS_FILE), StandardOpenOption.READ);
+        try {
+            if (channel.size() != bytes) {
+                throw new IOException(VECTORS_FILE + " has " + channel.size() + " bytes, expected " + bytes);
+            }
+            MappedByteBuffer vectors = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+            vectors.order(ByteOrder.LITTLE_ENDIAN);
+            String[] texts = readTexts(directory.resolve(TEXTS_FILE), rows);
+            return new EmbeddingStore(rows, dimension, channel, vectors, texts);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public String text(int row) {
+        return texts[row];
+    }
+
+    // Byte offset of a row in vectors()
+    public long offset(int row) {
+        return (long) row * dimension * Float.BYTES;
+    }
+
+    // Shares the mapping; each caller gets its own position, so this is safe across threads
+    public ByteBuffer vectors() {
+        return vectors.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Copy of one row, e.g. to use a stored text as a query
+    public float[] vector(int row) {
+        float[] vector = new float[dimension];
+        vectors().position((int) offset(row)).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    // CRC32C of embeddings.f32, computed on first use. Indexes built from the store record it,
+    // so one built from another export of the same shape is not taken for this one's.
+    public int vectorsChecksum() {
+        long value = checksum;
+        if (value < 0) {
+            CRC32C crc = new CRC32C();
+            crc.update(vectors());
+            value = crc.getValue();
+            checksum = value;
+        }
+        return (int) value;
+    }
+
+    // Copy of v scaled to unit length like the stored rows, as torch.nn.functional.normalize does it
+    public static float[] normalize(float[] v) {
+        double squares = 0;
+        for (float x : v) {
+            squares += (double) x * x;
+        }
+        float norm = (float) Math.max(Math.sqrt(squares), 1e-12);
+        float[] unit = new float[v.length];
+        for (int i = 0; i < v.length; i++) {
+            unit[i] = v[i] / norm;
+        }
+        return unit;
+    }
+
+    // Unmapping is left to the GC; closing only releases the file handle
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int intProperty(Properties manifest, String name) throws IOException {
+        String value = manifest.getProperty(name);
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed <= 0) {
+                throw new IOException("Invalid " + name + " in " + MANIFEST_FILE + ": " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid " + name + " in " + MANIFEST_FILE + ": " + value, e);
+        }
+    }
+
+    private static String[] readTexts(Path path, int rows) throws IOException {
+        String[] texts = new String[rows];
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(in)) {
+            for (int row = 0; row < rows; row++) {
+                String line = reader.readLine();
+                if (line == null) {
+                    throw new IOException(TEXTS_FILE + " has " + row + " lines, expected " + rows);
+                }
+                texts[row] = unescape(line);
+            }
+        }
+        return texts;
+    }
+
+    // Undoes escape() in export_embeddings.py
+    private static String unescape(String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+        StringBuilder text = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                text.append(escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}
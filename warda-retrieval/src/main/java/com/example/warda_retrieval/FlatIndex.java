@@ -0,0 +1,41 @@
+package com.example.warda_retrieval;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Exact top-k cosine search: every row of the store is scored against the query, the same
+ * as util.pytorch_cos_sim followed by torch.topk in the backend.
+ *
+ * Rows are stored normalized, so each score is one dot product with the normalized query.
+ * Searches are independent and may run on any number of threads at once.
+ */
+public final class FlatIndex implements VectorIndex {
+
+    private final EmbeddingStore store;
+
+    public FlatIndex(EmbeddingStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public EmbeddingStore store() {
+        return store;
+    }
+
+    @Override
+    public Hit[] search(float[] query, int k) {
+        if (query.length != store.dimension()) {
+            throw new IllegalArgumentException("Query has dimension " + query.length
+                    + ", store has " + store.dimension());
+        }
+        float[] unit = EmbeddingStore.normalize(query);
+        ByteBuffer vectors = store.vectors();
+        TopK top = new TopK(Math.min(k, store.size()));
+        long stride = (long) store.dimension() * Float.BYTES;
+        long offset = 0;
+        for (int row = 0, rows = store.size(); row < rows; row++, offset += stride) {
+            top.offer(row, VectorMath.dot(unit, vectors, offset));
+        }
+        return top.drain();
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.warda_retrieval;
+
+/**
+ * One search result: a row of the store and its cosine similarity to the query.
+ */
+public final class Hit {
+    public final int row;
+    public final float score;
+
+    public Hit(int row, float score) {
+        this.row = row;
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return row + ":" + score;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.warda_retrieval;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Recall against latency of HnswIndex over an export of embeddings.pt, for several efSearch
+ * values, next to exact search with FlatIndex on the same queries.
+ *
+ * The graph is built on first use and kept in the export directory as
+ * hnsw-m&lt;m&gt;-ef&lt;efConstruction&gt;.graph, so later runs only map it; a graph built from other
+ * vectors, such as an earlier export of the same shape, is rebuilt. Recall@k is the share of
+ * the exact top k that HNSW also returns; recall@0.3 is the same restricted to the exact hits
+ * that pass the backend's 0.3 similarity cutoff, i.e. the ones retrieval would actually use.
+ *
+ * Usage: HnswBenchmark &lt;export dir&gt; [m=16] [efConstruction=100] [efSearch=16,32,64,128,256] [k=10]
+ */
+public final class HnswBenchmark {
+
+    private static final long SEED = 42;
+    private static final int WARMUP_PASSES = 5;
+
+    // Keeps results observable so the JIT cannot drop the work
+    private static volatile int blackhole;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: HnswBenchmark <export dir> [m=16] [efConstruction=100] "
+                    + "[efSearch=16,32,64,128,256] [k=10]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        int m = HnswIndex.DEFAULT_M;
+        int efConstruction = HnswIndex.DEFAULT_EF_CONSTRUCTION;
+        int[] efSearches = {16, 32, 64, 128, 256};
+        int k = 10;
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            switch (option[0]) {
+                case "m":
+                    m = Integer.parseInt(option[1]);
+                    break;
+                case "efConstruction":
+                    efConstruction = Integer.parseInt(option[1]);
+                    break;
+                case "efSearch":
+                    efSearches = Arrays.stream(option[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "k":
+                    k = Integer.parseInt(option[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (EmbeddingStore store = EmbeddingStore.open(directory)) {
+            Path file = directory.resolve("hnsw-m" + m + "-ef" + efConstruction + ".graph");
+            HnswIndex hnsw = null;
+            if (Files.isRegularFile(file)) {
+                try {
+                    hnsw = HnswIndex.open(file, store);
+                    System.out.println("Mapped " + file);
+                } catch (IOException e) {
+                    // E.g. left over from an earlier export of the same shape
+                    System.out.println("Not using " + file + ": " + e.getMessage());
+                }
+            }
+            if (hnsw == null) {
+                long start = System.nanoTime();
+                hnsw = HnswIndex.build(store, m, efConstruction, SEED, file);
+                System.out.println(String.format(Locale.US, "Built %s in %.1f s", file,
+                        (System.nanoTime() - start) / 1e9));
+            }
+            System.out.println(String.format(Locale.US, "%d rows, graph %.1f MB (%.0f bytes/row), m=%d efConstruction=%d",
+                    store.size(), Files.size(file) / (double) (1 << 20), Files.size(file) / (double) store.size(),
+                    hnsw.m(), hnsw.efConstruction()));
+
+            float[][] queries = Files.isRegularFile(directory.resolve(SearchBenchmark.QUERIES_FILE))
+                    ? SearchBenchmark.readQueries(directory.resolve(SearchBenchmark.QUERIES_FILE), store.dimension())
+                    : SearchBenchmark.sampleQueries(store);
+
+            FlatIndex flat = new FlatIndex(store);
+            warmUp(flat, queries, k);
+            Hit[][] exact = new Hit[queries.length][];
+            long[] exactLatencies = measure(flat, queries, k, exact);
+
+            System.out.println(String.format(Locale.US, "%-10s %10s %10s %10s %10s %10s",
+                    "efSearch", "recall@" + k, "recall@0.3", "p50 ms", "p99 ms", "speedup"));
+            System.out.println(String.format(Locale.US, "%-10s %10.4f %10.4f %10.3f %10.3f %10s",
+                    "exact", 1.0, 1.0, SearchBenchmark.percentile(exactLatencies, 0.50) / 1e6,
+                    SearchBenchmark.percentile(exactLatencies, 0.99) / 1e6, "1.0x"));
+
+            for (int efSearch : efSearches) {
+                HnswIndex index = hnsw.withEfSearch(efSearch);
+                warmUp(index, queries, k);
+                Hit[][] approximate = new Hit[queries.length][];
+                long[] latencies = measure(index, queries, k, approximate);
+
+                System.out.println(String.format(Locale.US, "%-10d %10.4f %10.4f %10.3f %10.3f %9.1fx",
+                        efSearch, recall(exact, approximate, Float.NEGATIVE_INFINITY),
+                        recall(exact, approximate, Retriever.MIN_SIMILARITY),
+                        SearchBenchmark.percentile(latencies, 0.50) / 1e6,
+                        SearchBenchmark.percentile(latencies, 0.99) / 1e6,
+                        SearchBenchmark.percentile(exactLatencies, 0.50) / (double) SearchBenchmark.percentile(latencies, 0.50)));
+            }
+        }
+    }
+
+    // Share of the exact hits scoring at least minScore that the approximate results contain
+    static double recall(Hit[][] exact, Hit[][] approximate, float minScore) {
+        int found = 0;
+        int total = 0;
+        for (int q = 0; q < exact.length; q++) {
+            Set<Integer> returned = new HashSet<>();
+            for (Hit hit : approximate[q]) {
+                returned.add(hit.row);
+            }
+            for (Hit hit : exact[q]) {
+                if (hit.score >= minScore) {
+                    total++;
+                    found += returned.contains(hit.row) ? 1 : 0;
+                }
+            }
+        }
+        return total == 0 ? 1.0 : found / (double) total;
+    }
+
+    // Untimed passes, to warm up
+    static void warmUp(VectorIndex index, float[][] queries, int k) {
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+            measure(index, queries, k, new Hit[queries.length][]);
+        }
+    }
+
+    // Sorted latencies of one pass over the queries; the results go into hits
+    static long[] measure(VectorIndex index, float[][] queries, int k, Hit[][] hits) {
+        long[] latencies = new long[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            long start = System.nanoTime();
+            hits[q] = index.search(queries[q], k);
+            latencies[q] = System.nanoTime() - start;
+            blackhole = hits[q].length;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+}
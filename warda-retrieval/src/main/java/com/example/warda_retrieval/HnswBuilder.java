@@ -0,0 +1,187 @@
+package com.example.warda_retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Inserts the store's rows one by one into an HNSW graph laid out exactly as the file HnswIndex
+ * maps, so the builder searches the partial graph with HnswIndex's own code and writes the
+ * buffer out as is.
+ *
+ * Each row's top layer is drawn up front from the usual exponential distribution (one row in m
+ * reaches layer 1, one in m squared layer 2, ...), which fixes the file layout before the first
+ * insertion. Links are chosen with the paper's heuristic: a candidate is kept only if it is
+ * more similar to the new row than to any link already kept, which spreads the links out.
+ */
+final class HnswBuilder {
+
+    // Far above what 2^31 rows would reach with m >= 2
+    private static final int MAX_LEVEL = 30;
+
+    private final EmbeddingStore store;
+    private final HnswIndex index;
+    private final IntBuffer graph;
+    private final ByteBuffer vectors;
+    private final int[] levels;
+    private final int m;
+    private final int efConstruction;
+
+    private int entryPoint = -1;
+    private int entryLevel = -1;
+
+    private HnswBuilder(EmbeddingStore store, HnswIndex index, IntBuffer graph, int[] levels,
+                        int m, int efConstruction) {
+        this.store = store;
+        this.index = index;
+        this.graph = graph;
+        this.vectors = store.vectors();
+        this.levels = levels;
+        this.m = m;
+        this.efConstruction = efConstruction;
+    }
+
+    static void build(EmbeddingStore store, int m, int efConstruction, long seed, Path file) throws IOException {
+        if (m < 2 || efConstruction < m) {
+            throw new IllegalArgumentException("Need m >= 2 and efConstruction >= m, got " + m + " and " + efConstruction);
+        }
+        int rows = store.size();
+        Random random = new Random(seed);
+        double levelScale = 1 / Math.log(m);
+        int[] levels = new int[rows];
+        int topLevel = 0;
+        for (int row = 0; row < rows; row++) {
+            levels[row] = Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelScale));
+            topLevel = Math.max(topLevel, levels[row]);
+        }
+        int[] layerSizes = new int[topLevel + 1];
+        for (int level : levels) {
+            for (int l = 1; l <= level; l++) {
+                layerSizes[l]++;
+            }
+        }
+
+        long ints = HnswIndex.sizeInInts(rows, m, layerSizes);
+        if (ints * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Graph of " + rows + " rows with m = " + m + " is too large");
+        }
+        ByteBuffer bytes = ByteBuffer.allocate((int) ints * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer graph = bytes.asIntBuffer();
+        graph.put(HnswIndex.MAGIC).put(HnswIndex.VERSION).put(rows).put(store.dimension())
+                .put(m).put(efConstruction).put(topLevel).put(-1).put(store.vectorsChecksum());
+        // Link counts start at zero; only the upper layers' row lists need filling in
+        graph.position(HnswIndex.HEADER_INTS + rows * (2 * m + 1));
+        for (int level = 1; level <= topLevel; level++) {
+            graph.put(layerSizes[level]);
+            for (int row = 0; row < rows; row++) {
+                if (levels[row] >= level) {
+                    graph.put(row);
+                }
+            }
+            graph.position(graph.position() + layerSizes[level] * (m + 1));
+        }
+        graph.rewind();
+
+        HnswBuilder builder = new HnswBuilder(store, new HnswIndex(store, graph, efConstruction), graph,
+                levels, m, efConstruction);
+        for (int row = 0; row < rows; row++) {
+            builder.insert(row);
+        }
+        graph.put(HnswIndex.ENTRY_POINT, builder.entryPoint);
+
+        // Written next to the target and moved into place, so a reader never maps half a file
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        Files.write(partial, bytes.array());
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void insert(int row) {
+        int level = levels[row];
+        if (entryPoint < 0) {
+            entryPoint = row;
+            entryLevel = level;
+            return;
+        }
+
+        // Stored rows are unit length already
+        float[] unit = store.vector(row);
+        int entry = entryPoint;
+        for (int l = entryLevel; l > level; l--) {
+            entry = index.closest(unit, vectors, entry, l);
+        }
+        for (int l = Math.min(level, entryLevel); l >= 0; l--) {
+            Hit[] candidates = index.searchLayer(unit, vectors, entry, efConstruction, l).drain();
+            int[] chosen = selectLinks(candidates, m);
+            int links = index.links(row, l);
+            graph.put(links, chosen.length);
+            for (int i = 0; i < chosen.length; i++) {
+                graph.put(links + 1 + i, chosen[i]);
+                addLink(chosen[i], row, l);
+            }
+            entry = candidates[0].row;
+        }
+
+        if (level > entryLevel) {
+            entryPoint = row;
+            entryLevel = level;
+        }
+    }
+
+    // Links row to neighbour on a layer, re-selecting the neighbour's links when it has no room
+    private void addLink(int row, int neighbour, int level) {
+        int max = level == 0 ? 2 * m : m;
+        int links = index.links(row, level);
+        int count = graph.get(links);
+        if (count < max) {
+            graph.put(links + 1 + count, neighbour);
+            graph.put(links, count + 1);
+            return;
+        }
+
+        Hit[] candidates = new Hit[count + 1];
+        for (int i = 0; i < count; i++) {
+            int linked = graph.get(links + 1 + i);
+            candidates[i] = new Hit(linked, similarity(row, linked));
+        }
+        candidates[count] = new Hit(neighbour, similarity(row, neighbour));
+        Arrays.sort(candidates, (a, b) -> a.score != b.score ? Float.compare(b.score, a.score) : Integer.compare(a.row, b.row));
+
+        int[] kept = selectLinks(candidates, max);
+        graph.put(links, kept.length);
+        for (int i = 0; i < kept.length; i++) {
+            graph.put(links + 1 + i, kept[i]);
+        }
+    }
+
+    // Up to max candidates (best first, scored against the row being linked) by the heuristic
+    private int[] selectLinks(Hit[] candidates, int max) {
+        int[] kept = new int[max];
+        int count = 0;
+        for (Hit candidate : candidates) {
+            if (count == max) {
+                break;
+            }
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (similarity(candidate.row, kept[i]) > candidate.score) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                kept[count++] = candidate.row;
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    private float similarity(int a, int b) {
+        return VectorMath.dot(vectors, store.offset(a), store.offset(b), store.dimension());
+    }
+}
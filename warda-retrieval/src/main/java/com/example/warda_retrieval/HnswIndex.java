@@ -0,0 +1,284 @@
+package com.example.warda_retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Approximate top-k cosine search over a hierarchical navigable small world graph (Malkov and
+ * Yashunin) of the store's rows. A query walks greedily down the sparse upper layers to a good
+ * entry point, then explores the bottom layer best first, keeping the efSearch best rows seen;
+ * it scores a few thousand rows instead of all of them, so its cost grows roughly with the
+ * log of the corpus rather than linearly. A larger efSearch trades speed for recall.
+ *
+ * The graph is built offline by {@link #build} and memory-mapped by {@link #open}; the vectors
+ * stay in the EmbeddingStore. The file is little-endian ints:
+ * <pre>
+ *   header   magic, version, rows, dimension, m, efConstruction, top level, entry point,
+ *            CRC32C of the store's vectors
+ *   layer 0  for each row: link count, then 2m link slots
+ *   layer l  node count n, the n rows on the layer in ascending order,
+ *            then for each of them: link count, then m link slots
+ * </pre>
+ * The fixed-size link blocks let a search find a row's links with one multiplication on layer 0
+ * and a binary search on the upper layers, which hold only about one row in m.
+ */
+public final class HnswIndex implements VectorIndex {
+
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    static final int MAGIC = 0x57534E48;  // "HNSW" in file order
+    // Version 1 graphs have no checksum to check, so they are rejected and must be rebuilt
+    static final int VERSION = 2;
+    static final int HEADER_INTS = 9;
+    static final int ENTRY_POINT = 7;
+    static final int VECTORS_CHECKSUM = 8;
+
+    private final EmbeddingStore store;
+    private final IntBuffer graph;
+    private final int m;
+    private final int efConstruction;
+    private final int topLevel;
+    private final int entryPoint;
+    private final int efSearch;
+
+    // Per layer above 0: where its sorted rows and its link blocks start, and how many rows it has
+    private final int[] layerRows;
+    private final int[] layerLinks;
+    private final int[] layerSizes;
+
+    private final ThreadLocal<Visited> visited;
+
+    HnswIndex(EmbeddingStore store, IntBuffer graph, int efSearch) throws IOException {
+        if (graph.limit() < HEADER_INTS || graph.get(0) != MAGIC) {
+            throw new IOException("Not an HNSW graph file");
+        }
+        if (graph.get(1) != VERSION) {
+            throw new IOException("Graph file version " + graph.get(1) + ", expected " + VERSION + "; rebuild it");
+        }
+        if (graph.get(2) != store.size() || graph.get(3) != store.dimension()) {
+            throw new IOException("Graph is for " + graph.get(2) + " x " + graph.get(3) + " rows, store has "
+                    + store.size() + " x " + store.dimension());
+        }
+        if (graph.get(VECTORS_CHECKSUM) != store.vectorsChecksum()) {
+            throw new IOException("Graph was built from other vectors than the store's "
+                    + EmbeddingStore.VECTORS_FILE + "; rebuild it");
+        }
+        this.store = store;
+        this.graph = graph;
+        this.m = graph.get(4);
+        this.efConstruction = graph.get(5);
+        this.topLevel = graph.get(6);
+        this.entryPoint = graph.get(ENTRY_POINT);
+        this.efSearch = efSearch;
+
+        layerRows = new int[topLevel + 1];
+        layerLinks = new int[topLevel + 1];
+        layerSizes = new int[topLevel + 1];
+        long position = HEADER_INTS + (long) store.size() * (2 * m + 1);
+        for (int level = 1; level <= topLevel; level++) {
+            if (position >= graph.limit()) {
+                throw new IOException("Graph file is truncated");
+            }
+            layerSizes[level] = graph.get((int) position);
+            layerRows[level] = (int) position + 1;
+            layerLinks[level] = layerRows[level] + layerSizes[level];
+            position = layerLinks[level] + (long) layerSizes[level] * (m + 1);
+        }
+        if (position != graph.limit()) {
+            throw new IOException("Graph file has " + graph.limit() + " ints, expected " + position);
+        }
+        int rows = store.size();
+        visited = ThreadLocal.withInitial(() -> new Visited(rows));
+    }
+
+    private HnswIndex(HnswIndex index, int efSearch) {
+        this.store = index.store;
+        this.graph = index.graph;
+        this.m = index.m;
+        this.efConstruction = index.efConstruction;
+        this.topLevel = index.topLevel;
+        this.entryPoint = index.entryPoint;
+        this.layerRows = index.layerRows;
+        this.layerLinks = index.layerLinks;
+        this.layerSizes = index.layerSizes;
+        this.visited = index.visited;
+        this.efSearch = efSearch;
+    }
+
+    // Builds the graph of every row in the store, writes it to file and maps it
+    public static HnswIndex build(EmbeddingStore store, int m, int efConstruction, long seed, Path file)
+            throws IOException {
+        HnswBuilder.build(store, m, efConstruction, seed, file);
+        return open(file, store);
+    }
+
+    public static HnswIndex open(Path file, EmbeddingStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() % Integer.BYTES != 0) {
+                throw new IOException("Unexpected size of " + file + ": " + channel.size());
+            }
+            // The mapping outlives the channel
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new HnswIndex(store, mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), DEFAULT_EF_SEARCH);
+        }
+    }
+
+    // Same graph, searched with another efSearch
+    public HnswIndex withEfSearch(int efSearch) {
+        if (efSearch <= 0) {
+            throw new IllegalArgumentException("efSearch must be positive, got " + efSearch);
+        }
+        return new HnswIndex(this, efSearch);
+    }
+
+    public int m() {
+        return m;
+    }
+
+    public int efConstruction() {
+        return efConstruction;
+    }
+
+    public int efSearch() {
+        return efSearch;
+    }
+
+    @Override
+    public EmbeddingStore store() {
+        return store;
+    }
+
+    @Override
+    public Hit[] search(float[] query, int k) {
+        if (query.length != store.dimension()) {
+            throw new IllegalArgumentException("Query has dimension " + query.length
+                    + ", store has " + store.dimension());
+        }
+        float[] unit = EmbeddingStore.normalize(query);
+        ByteBuffer vectors = store.vectors();
+        int entry = entryPoint;
+        for (int level = topLevel; level > 0; level--) {
+            entry = closest(unit, vectors, entry, level);
+        }
+        Hit[] hits = searchLayer(unit, vectors, entry, Math.max(efSearch, k), 0).drain();
+        return hits.length > k ? Arrays.copyOf(hits, k) : hits;
+    }
+
+    // Greedy walk on one layer to the row most similar to unit
+    int closest(float[] unit, ByteBuffer vectors, int entry, int level) {
+        float best = VectorMath.dot(unit, vectors, store.offset(entry));
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int links = links(entry, level);
+            for (int i = 1, count = graph.get(links); i <= count; i++) {
+                int next = graph.get(links + i);
+                float score = VectorMath.dot(unit, vectors, store.offset(next));
+                if (score > best) {
+                    best = score;
+                    entry = next;
+                    moved = true;
+                }
+            }
+        }
+        return entry;
+    }
+
+    // Best-first search of one layer from entry; the ef best rows it reached
+    TopK searchLayer(float[] unit, ByteBuffer vectors, int entry, int ef, int level) {
+        Visited seen = visited.get();
+        seen.begin();
+        seen.visit(entry);
+        float entryScore = VectorMath.dot(unit, vectors, store.offset(entry));
+        CandidateQueue frontier = new CandidateQueue();
+        frontier.push(entry, entryScore);
+        TopK found = new TopK(ef);
+        found.offer(entry, entryScore);
+
+        while (!frontier.isEmpty()) {
+            // Nothing left on the frontier can improve the results
+            if (found.isFull() && frontier.bestScore() < found.worstScore()) {
+                break;
+            }
+            int links = links(frontier.pop(), level);
+            for (int i = 1, count = graph.get(links); i <= count; i++) {
+                int next = graph.get(links + i);
+                if (!seen.visit(next)) {
+                    continue;
+                }
+                float score = VectorMath.dot(unit, vectors, store.offset(next));
+                if (!found.isFull() || score > found.worstScore()) {
+                    frontier.push(next, score);
+                    found.offer(next, score);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Index in the graph of a row's link count on a layer; its links follow
+    int links(int row, int level) {
+        if (level == 0) {
+            return HEADER_INTS + row * (2 * m + 1);
+        }
+        int low = 0;
+        int high = layerSizes[level] - 1;
+        int rows = layerRows[level];
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int candidate = graph.get(rows + middle);
+            if (candidate < row) {
+                low = middle + 1;
+            } else if (candidate > row) {
+                high = middle - 1;
+            } else {
+                return layerLinks[level] + middle * (m + 1);
+            }
+        }
+        throw new IllegalStateException("Row " + row + " is not on layer " + level);
+    }
+
+    // Ints in a graph file with layerSizes[l] rows on each layer l >= 1
+    static long sizeInInts(int rows, int m, int[] layerSizes) {
+        long size = HEADER_INTS + (long) rows * (2 * m + 1);
+        for (int level = 1; level < layerSizes.length; level++) {
+            size += 1 + (long) layerSizes[level] * (m + 2);
+        }
+        return size;
+    }
+
+    // Rows already reached by the current search; reset by bumping the epoch, not by clearing
+    private static final class Visited {
+        private final int[] marks;
+        private int epoch;
+
+        Visited(int rows) {
+            marks = new int[rows];
+        }
+
+        void begin() {
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        // False if the row was already visited
+        boolean visit(int row) {
+            if (marks[row] == epoch) {
+                return false;
+            }
+            marks[row] = epoch;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.warda_retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Scalar quantization: every float of every row becomes one byte, on a per-dimension scale
+ * from that dimension's smallest to its largest value in the corpus. A quarter of the float
+ * store's size.
+ *
+ * A row's estimated score is offset . q + sum of (q[d] * scale[d]) * code[d], so a query
+ * folds the scales into its own weights once and then costs one multiply-add per byte. The
+ * weights are rounded to integers of about 14 bits (for 1024 dimensions), far finer than the
+ * codes, so the sum runs in int arithmetic.
+ *
+ * What int8 buys is the 4x smaller footprint, not speed: on a 6000 x 128 export,
+ * QuantizationBenchmark measured this scan at about 3x the latency of FlatIndex over the
+ * floats. Use it when the float matrix does not fit in memory.
+ *
+ * File: magic, version, rows, dimension (ints), then offset[dimension] and
+ * scale[dimension] (floats), then rows x dimension signed byte codes, row by row.
+ */
+public final class Int8Index extends QuantizedIndex {
+
+    static final int MAGIC = 0x38544E49;  // "INT8" in file order
+    static final int VERSION = 1;
+
+    // Codes are stored minus 128, so the bytes can be used signed as they are
+    private static final int LEVELS = 255;
+    private static final int CODE_BIAS = 128;
+
+    private final int dimension;
+    private final float[] offsets;
+    private final float[] scales;
+    private final int codes;
+
+    private Int8Index(EmbeddingStore store, ByteBuffer data, int rerank) throws IOException {
+        super(store, data, rerank);
+        int position = checkHeader(data, MAGIC, VERSION, store);
+        dimension = store.dimension();
+        offsets = new float[dimension];
+        scales = new float[dimension];
+        for (int d = 0; d < dimension; d++, position += Float.BYTES) {
+            offsets[d] = data.getFloat(position);
+        }
+        for (int d = 0; d < dimension; d++, position += Float.BYTES) {
+            scales[d] = data.getFloat(position);
+        }
+        codes = position;
+        if (data.capacity() != codes + (long) store.size() * dimension) {
+            throw new IOException("Index has " + data.capacity() + " bytes, expected "
+                    + (codes + (long) store.size() * dimension));
+        }
+    }
+
+    private Int8Index(Int8Index index, int rerank) {
+        super(index.store, index.data, rerank);
+        this.dimension = index.dimension;
+        this.offsets = index.offsets;
+        this.scales = index.scales;
+        this.codes = index.codes;
+    }
+
+    public static Int8Index build(EmbeddingStore store) throws IOException {
+        int rows = store.size();
+        int dimension = store.dimension();
+        ByteBuffer vectors = store.vectors();
+
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (int row = 0; row < rows; row++) {
+            int offset = (int) store.offset(row);
+            for (int d = 0; d < dimension; d++) {
+                float x = vectors.getFloat(offset + d * Float.BYTES);
+                min[d] = Math.min(min[d], x);
+                max[d] = Math.max(max[d], x);
+            }
+        }
+
+        long size = 4L * Integer.BYTES + 2L * dimension * Float.BYTES + (long) rows * dimension;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(rows + " x " + dimension + " codes do not fit in one buffer");
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(dimension);
+        float[] scales = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            data.putFloat(min[d]);
+        }
+        for (int d = 0; d < dimension; d++) {
+            scales[d] = (max[d] - min[d]) / LEVELS;
+            data.putFloat(scales[d]);
+        }
+        for (int row = 0; row < rows; row++) {
+            int offset = (int) store.offset(row);
+            for (int d = 0; d < dimension; d++) {
+                float x = vectors.getFloat(offset + d * Float.BYTES);
+                int level = scales[d] == 0 ? 0 : Math.round((x - min[d]) / scales[d]);
+                data.put((byte) (Math.min(LEVELS, Math.max(0, level)) - CODE_BIAS));
+            }
+        }
+        return new Int8Index(store, data, 0);
+    }
+
+    public static Int8Index open(Path file, EmbeddingStore store) throws IOException {
+        return new Int8Index(store, map(file), 0);
+    }
+
+    @Override
+    public Int8Index withRerank(int rerank) {
+        return new Int8Index(this, rerank);
+    }
+
+    @Override
+    void scan(float[] unit, TopK top) {
+        // x[d] = offset[d] + scale[d] * (code[d] + 128)
+        float[] weights = new float[dimension];
+        float base = 0;
+        for (int d = 0; d < dimension; d++) {
+            weights[d] = unit[d] * scales[d];
+            base += unit[d] * (offsets[d] + CODE_BIAS * scales[d]);
+        }
+
+        // Weights become integers as large as they can be without any row's sum overflowing
+        float maxWeight = 0;
+        for (float weight : weights) {
+            maxWeight = Math.max(maxWeight, Math.abs(weight));
+        }
+        float factor = maxWeight == 0 ? 0 : (Integer.MAX_VALUE / (CODE_BIAS * dimension) - 1) / maxWeight;
+        float unscale = factor == 0 ? 0 : 1 / factor;
+        int[] quantized = new int[dimension];
+        for (int d = 0; d < dimension; d++) {
+            quantized[d] = Math.round(weights[d] * factor);
+        }
+
+        // Rows are read in bulk and in order; a get() per byte is several times slower
+        ByteBuffer codes = data.duplicate();
+        codes.position(this.codes);
+        byte[] row = new byte[dimension];
+        for (int r = 0, rows = store.size(); r < rows; r++) {
+            codes.get(row);
+            int sum = 0;
+            for (int d = 0; d < dimension; d++) {
+                sum += quantized[d] * row[d];
+            }
+            top.offer(r, base + sum * unscale);
+        }
+    }
+}
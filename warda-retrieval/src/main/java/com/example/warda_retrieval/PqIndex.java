@@ -0,0 +1,231 @@
+package com.example.warda_retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Product quantization: each row is cut into subspaces of dimension / subspaces floats, and
+ * each piece is replaced by the index of the nearest of 256 centroids learned for that
+ * subspace by k-means, so a row costs one byte per subspace. For 1024 dimensions, 128
+ * subspaces are 32x smaller than float32 and 512 subspaces 8x.
+ *
+ * A query first scores its own pieces against every centroid, a table of subspaces x 256
+ * floats; a row's estimated score is then the sum of one table entry per code byte.
+ *
+ * File: magic, version, rows, dimension, subspaces (ints), then the centroids (floats,
+ * subspace by subspace, 256 each), then rows x subspaces unsigned byte codes, row by row.
+ */
+public final class PqIndex extends QuantizedIndex {
+
+    public static final int CENTROIDS = 256;
+    public static final int DEFAULT_TRAINING_ROWS = 10_000;
+
+    static final int MAGIC = 0x20385150;  // "PQ8 " in file order
+    static final int VERSION = 1;
+
+    private static final int ITERATIONS = 15;
+
+    private final int subspaces;
+    private final int subDimension;
+    private final float[] centroids;
+    private final int codes;
+
+    private PqIndex(EmbeddingStore store, ByteBuffer data, int rerank) throws IOException {
+        super(store, data, rerank);
+        int position = checkHeader(data, MAGIC, VERSION, store);
+        subspaces = data.getInt(position);
+        position += Integer.BYTES;
+        if (subspaces <= 0 || store.dimension() % subspaces != 0) {
+            throw new IOException(subspaces + " subspaces do not divide dimension " + store.dimension());
+        }
+        subDimension = store.dimension() / subspaces;
+        centroids = new float[subspaces * CENTROIDS * subDimension];
+        for (int i = 0; i < centroids.length; i++, position += Float.BYTES) {
+            centroids[i] = data.getFloat(position);
+        }
+        codes = position;
+        if (data.capacity() != codes + (long) store.size() * subspaces) {
+            throw new IOException("Index has " + data.capacity() + " bytes, expected "
+                    + (codes + (long) store.size() * subspaces));
+        }
+    }
+
+    private PqIndex(PqIndex index, int rerank) {
+        super(index.store, index.data, rerank);
+        this.subspaces = index.subspaces;
+        this.subDimension = index.subDimension;
+        this.centroids = index.centroids;
+        this.codes = index.codes;
+    }
+
+    // Trains the codebooks on up to trainingRows random rows, then encodes every row
+    public static PqIndex build(EmbeddingStore store, int subspaces, int trainingRows, long seed) throws IOException {
+        int rows = store.size();
+        int dimension = store.dimension();
+        if (subspaces <= 0 || dimension % subspaces != 0) {
+            throw new IllegalArgumentException(subspaces + " subspaces do not divide dimension " + dimension);
+        }
+        if (rows < CENTROIDS) {
+            throw new IllegalArgumentException("Need at least " + CENTROIDS + " rows, got " + rows);
+        }
+        int subDimension = dimension / subspaces;
+
+        // A random sample, as the first rows of a partial Fisher-Yates shuffle
+        Random random = new Random(seed);
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            order[i] = i;
+        }
+        int samples = Math.max(CENTROIDS, Math.min(trainingRows, rows));
+        float[][] sample = new float[samples][];
+        for (int i = 0; i < samples; i++) {
+            int pick = i + random.nextInt(rows - i);
+            int row = order[pick];
+            order[pick] = order[i];
+            order[i] = row;
+            sample[i] = store.vector(row);
+        }
+
+        float[] centroids = new float[subspaces * CENTROIDS * subDimension];
+        float[] points = new float[samples * subDimension];
+        for (int s = 0; s < subspaces; s++) {
+            for (int i = 0; i < samples; i++) {
+                System.arraycopy(sample[i], s * subDimension, points, i * subDimension, subDimension);
+            }
+            float[] trained = kMeans(points, samples, subDimension, random);
+            System.arraycopy(trained, 0, centroids, s * CENTROIDS * subDimension, trained.length);
+        }
+
+        long size = 5L * Integer.BYTES + (long) centroids.length * Float.BYTES + (long) rows * subspaces;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(rows + " x " + subspaces + " codes do not fit in one buffer");
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(dimension).putInt(subspaces);
+        for (float c : centroids) {
+            data.putFloat(c);
+        }
+        float[][] transposed = new float[subspaces][];
+        for (int s = 0; s < subspaces; s++) {
+            transposed[s] = transpose(centroids, s * CENTROIDS * subDimension, subDimension);
+        }
+        float[] distances = new float[CENTROIDS];
+        for (int row = 0; row < rows; row++) {
+            float[] vector = store.vector(row);
+            for (int s = 0; s < subspaces; s++) {
+                data.put((byte) nearest(vector, s * subDimension, transposed[s], subDimension, distances));
+            }
+        }
+        return new PqIndex(store, data, 0);
+    }
+
+    public static PqIndex open(Path file, EmbeddingStore store) throws IOException {
+        return new PqIndex(store, map(file), 0);
+    }
+
+    @Override
+    public PqIndex withRerank(int rerank) {
+        return new PqIndex(this, rerank);
+    }
+
+    public int subspaces() {
+        return subspaces;
+    }
+
+    @Override
+    void scan(float[] unit, TopK top) {
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0, centroid = 0; s < subspaces; s++) {
+            int piece = s * subDimension;
+            for (int c = 0; c < CENTROIDS; c++, centroid += subDimension) {
+                float sum = 0;
+                for (int d = 0; d < subDimension; d++) {
+                    sum += unit[piece + d] * centroids[centroid + d];
+                }
+                table[s * CENTROIDS + c] = sum;
+            }
+        }
+
+        ByteBuffer codes = data.duplicate();
+        codes.position(this.codes);
+        byte[] row = new byte[subspaces];
+        for (int r = 0, rows = store.size(); r < rows; r++) {
+            codes.get(row);
+            float score = 0;
+            for (int s = 0; s < subspaces; s++) {
+                score += table[s * CENTROIDS + (row[s] & 0xFF)];
+            }
+            top.offer(r, score);
+        }
+    }
+
+    // Lloyd's algorithm on count points of size dimension; starts from random points
+    private static float[] kMeans(float[] points, int count, int dimension, Random random) {
+        float[] centroids = new float[CENTROIDS * dimension];
+        // The sample is shuffled already, so its first points are a random start
+        System.arraycopy(points, 0, centroids, 0, centroids.length);
+
+        int[] sizes = new int[CENTROIDS];
+        float[] sums = new float[CENTROIDS * dimension];
+        float[] distances = new float[CENTROIDS];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            float[] transposed = transpose(centroids, 0, dimension);
+            Arrays.fill(sizes, 0);
+            Arrays.fill(sums, 0);
+            for (int p = 0; p < count; p++) {
+                int c = nearest(points, p * dimension, transposed, dimension, distances);
+                sizes[c]++;
+                for (int d = 0; d < dimension; d++) {
+                    sums[c * dimension + d] += points[p * dimension + d];
+                }
+            }
+            for (int c = 0; c < CENTROIDS; c++) {
+                if (sizes[c] == 0) {
+                    // An empty cluster restarts at a random point
+                    System.arraycopy(points, random.nextInt(count) * dimension, centroids, c * dimension, dimension);
+                    continue;
+                }
+                for (int d = 0; d < dimension; d++) {
+                    centroids[c * dimension + d] = sums[c * dimension + d] / sizes[c];
+                }
+            }
+        }
+        return centroids;
+    }
+
+    // One subspace's centroids, dimension by dimension, for nearest()
+    private static float[] transpose(float[] centroids, int first, int dimension) {
+        float[] transposed = new float[dimension * CENTROIDS];
+        for (int c = 0; c < CENTROIDS; c++) {
+            for (int d = 0; d < dimension; d++) {
+                transposed[d * CENTROIDS + c] = centroids[first + c * dimension + d];
+            }
+        }
+        return transposed;
+    }
+
+    // Index of the centroid closest in Euclidean distance to the piece of vector at from. The
+    // inner loop runs over all 256 centroids at once, which the JIT turns into SIMD code
+    private static int nearest(float[] vector, int from, float[] transposed, int dimension, float[] distances) {
+        Arrays.fill(distances, 0);
+        for (int d = 0; d < dimension; d++) {
+            float x = vector[from + d];
+            int at = d * CENTROIDS;
+            for (int c = 0; c < CENTROIDS; c++) {
+                float delta = x - transposed[at + c];
+                distances[c] += delta * delta;
+            }
+        }
+        int best = 0;
+        for (int c = 1; c < CENTROIDS; c++) {
+            if (distances[c] < distances[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.warda_retrieval;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Size, build time, latency and recall of the quantized indexes over an export of
+ * embeddings.pt: Int8Index and PqIndex at several subspace counts, each searched with
+ * several rerank counts, against exact search with FlatIndex on the same queries.
+ *
+ * Every index is built from scratch, written to the export directory as int8.codes or
+ * pq&lt;subspaces&gt;.codes, and searched through a mapping of that file. Size is the file's,
+ * next to the float32 matrix it replaces; recall@k is the share of the exact top k returned.
+ *
+ * Usage: QuantizationBenchmark &lt;export dir&gt; [subspaces=128,256,512] [rerank=0,50,200] [k=10]
+ */
+public final class QuantizationBenchmark {
+
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: QuantizationBenchmark <export dir> [subspaces=128,256,512] "
+                    + "[rerank=0,50,200] [k=10]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        int[] subspaceCounts = {128, 256, 512};
+        int[] rerankCounts = {0, 50, 200};
+        int k = 10;
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            switch (option[0]) {
+                case "subspaces":
+                    subspaceCounts = Arrays.stream(option[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "rerank":
+                    rerankCounts = Arrays.stream(option[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "k":
+                    k = Integer.parseInt(option[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (EmbeddingStore store = EmbeddingStore.open(directory)) {
+            float[][] queries = Files.isRegularFile(directory.resolve(SearchBenchmark.QUERIES_FILE))
+                    ? SearchBenchmark.readQueries(directory.resolve(SearchBenchmark.QUERIES_FILE), store.dimension())
+                    : SearchBenchmark.sampleQueries(store);
+
+            FlatIndex flat = new FlatIndex(store);
+            HnswBenchmark.warmUp(flat, queries, k);
+            Hit[][] exact = new Hit[queries.length][];
+            long[] exactLatencies = HnswBenchmark.measure(flat, queries, k, exact);
+            long floatBytes = (long) store.size() * store.dimension() * Float.BYTES;
+
+            System.out.println(String.format(Locale.US, "%-8s %9s %8s %8s %7s %10s %9s %9s",
+                    "index", "MB", "smaller", "build s", "rerank", "recall@" + k, "p50 ms", "p99 ms"));
+            System.out.println(String.format(Locale.US, "%-8s %9.1f %7.1fx %8s %7s %10.4f %9.3f %9.3f",
+                    "float32", floatBytes / (double) (1 << 20), 1.0, "-", "-", 1.0,
+                    SearchBenchmark.percentile(exactLatencies, 0.50) / 1e6,
+                    SearchBenchmark.percentile(exactLatencies, 0.99) / 1e6));
+
+            long start = System.nanoTime();
+            Path int8File = directory.resolve("int8.codes");
+            Int8Index.build(store).write(int8File);
+            double int8Seconds = (System.nanoTime() - start) / 1e9;
+            report("int8", Int8Index.open(int8File, store), int8Seconds, floatBytes,
+                    rerankCounts, queries, k, exact);
+
+            for (int subspaces : subspaceCounts) {
+                start = System.nanoTime();
+                Path pqFile = directory.resolve("pq" + subspaces + ".codes");
+                PqIndex.build(store, subspaces, PqIndex.DEFAULT_TRAINING_ROWS, SEED).write(pqFile);
+                double pqSeconds = (System.nanoTime() - start) / 1e9;
+                report("pq" + subspaces, PqIndex.open(pqFile, store), pqSeconds, floatBytes,
+                        rerankCounts, queries, k, exact);
+            }
+        }
+    }
+
+    private static void report(String name, QuantizedIndex index, double buildSeconds, long floatBytes,
+                               int[] rerankCounts, float[][] queries, int k, Hit[][] exact) {
+        for (int rerank : rerankCounts) {
+            QuantizedIndex reranking = index.withRerank(rerank);
+            HnswBenchmark.warmUp(reranking, queries, k);
+            Hit[][] approximate = new Hit[queries.length][];
+            long[] latencies = HnswBenchmark.measure(reranking, queries, k, approximate);
+            System.out.println(String.format(Locale.US, "%-8s %9.1f %7.1fx %8.1f %7d %10.4f %9.3f %9.3f",
+                    name, index.sizeInBytes() / (double) (1 << 20), floatBytes / (double) index.sizeInBytes(),
+                    buildSeconds, rerank, HnswBenchmark.recall(exact, approximate, Float.NEGATIVE_INFINITY),
+                    SearchBenchmark.percentile(latencies, 0.50) / 1e6,
+                    SearchBenchmark.percentile(latencies, 0.99) / 1e6));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.warda_retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Top-k cosine search over compressed codes of the store's rows instead of their floats.
+ *
+ * Queries stay in float and are compared with the codes directly (asymmetric distance
+ * computation), so only the corpus loses precision, never the query. The scores are then
+ * estimates; with a rerank count r, the r best rows by estimate are scored again against the
+ * float rows and the top k of those is returned, which recovers most of the lost recall for
+ * the price of r exact dot products.
+ *
+ * Index data is one little-endian buffer in the same layout as its file, built on the heap or
+ * memory-mapped by open(). Search uses plain Java with no Vector API, so the code also runs on
+ * Android, where the codes can be searched without the float rows when r is 0.
+ */
+public abstract class QuantizedIndex implements VectorIndex {
+
+    final EmbeddingStore store;
+    final ByteBuffer data;
+    final int rerank;
+
+    QuantizedIndex(EmbeddingStore store, ByteBuffer data, int rerank) {
+        if (rerank < 0) {
+            throw new IllegalArgumentException("rerank must not be negative, got " + rerank);
+        }
+        this.store = store;
+        this.data = data;
+        this.rerank = rerank;
+    }
+
+    // Same codes, with another number of rows re-scored in float
+    public abstract QuantizedIndex withRerank(int rerank);
+
+    // Offers every row to top with its estimated score against the normalized query
+    abstract void scan(float[] unit, TopK top);
+
+    public int rerank() {
+        return rerank;
+    }
+
+    // Bytes of codes and codebooks, i.e. of the file
+    public long sizeInBytes() {
+        return data.capacity();
+    }
+
+    @Override
+    public EmbeddingStore store() {
+        return store;
+    }
+
+    @Override
+    public Hit[] search(float[] query, int k) {
+        if (query.length != store.dimension()) {
+            throw new IllegalArgumentException("Query has dimension " + query.length
+                    + ", store has " + store.dimension());
+        }
+        float[] unit = EmbeddingStore.normalize(query);
+        TopK top = new TopK(Math.min(Math.max(k, rerank), store.size()));
+        scan(unit, top);
+        Hit[] hits = top.drain();
+        if (rerank == 0) {
+            return hits.length > k ? Arrays.copyOf(hits, k) : hits;
+        }
+
+        ByteBuffer vectors = store.vectors();
+        TopK exact = new TopK(Math.min(k, hits.length));
+        for (Hit hit : hits) {
+            exact.offer(hit.row, dot(unit, vectors, (int) store.offset(hit.row)));
+        }
+        return exact.drain();
+    }
+
+    public void write(Path file) throws IOException {
+        // Written next to the target and moved into place, so a reader never maps half a file
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = data.duplicate();
+            bytes.clear();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map: " + channel.size() + " bytes");
+            }
+            // The mapping outlives the channel
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    // Checks a file's header against the store; returns the byte after the common fields
+    static int checkHeader(ByteBuffer data, int magic, int version, EmbeddingStore store) throws IOException {
+        if (data.capacity() < 4 * Integer.BYTES || data.getInt(0) != magic || data.getInt(4) != version) {
+            throw new IOException("Not a quantized index file of this kind");
+        }
+        if (data.getInt(8) != store.size() || data.getInt(12) != store.dimension()) {
+            throw new IOException("Index is for " + data.getInt(8) + " x " + data.getInt(12) + " rows, store has "
+                    + store.size() + " x " + store.dimension());
+        }
+        return 4 * Integer.BYTES;
+    }
+
+    // Scalar on purpose: only r rows are re-scored
+    private static float dot(float[] unit, ByteBuffer vectors, int offset) {
+        float sum = 0;
+        for (int i = 0; i < unit.length; i++) {
+            sum += unit[i] * vectors.getFloat(offset + i * Float.BYTES);
+        }
+        return sum;
+    }
+}
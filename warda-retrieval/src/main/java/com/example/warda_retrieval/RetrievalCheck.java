@@ -0,0 +1,206 @@
+package com.example.warda_retrieval;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks the parts of retrieval that must agree with the backend exactly, without an export
+ * of embeddings.pt: TopK's order and tie-breaking, Retriever's top_k, fingerprint and 0.3
+ * cutoff, and the escaping of texts.txt. Builds a small synthetic export in a temporary
+ * directory, writing texts the way export_embeddings.py does, and deletes it afterwards.
+ *
+ * The expected values were worked out with the Python expressions they stand for.
+ *
+ * Usage: RetrievalCheck
+ */
+public final class RetrievalCheck {
+
+    private static final int DIMENSION = 32;
+
+    private RetrievalCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        checkTopKOrder();
+        checkTopKAgainstSort();
+        checkTopK();
+        checkFingerprint();
+        checkExport();
+        System.out.println("Retrieval checks passed");
+    }
+
+    private static void checkTopKOrder() {
+        TopK top = new TopK(3);
+        int[] rows = {5, 2, 7, 1, 3, 0};
+        float[] scores = {0.5f, 0.9f, 0.5f, 0.5f, 0.1f, 0.9f};
+        for (int i = 0; i < rows.length; i++) {
+            top.offer(rows[i], scores[i]);
+        }
+        // Equal scores rank the lower row first
+        expectHits("TopK with ties", top.drain(), 0, 2, 1);
+
+        TopK partial = new TopK(5);
+        partial.offer(4, -0.25f);
+        partial.offer(9, 0.75f);
+        expectHits("TopK with fewer rows than k", partial.drain(), 9, 4);
+    }
+
+    // Many ties, offered in random orders: always the first k of a sort by score, then row
+    private static void checkTopKAgainstSort() {
+        Random random = new Random(42);
+        int rows = 1000;
+        float[] scores = new float[rows];
+        for (int row = 0; row < rows; row++) {
+            scores[row] = random.nextInt(20) / 20f;
+        }
+        List<Integer> sorted = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            sorted.add(row);
+        }
+        sorted.sort(Comparator.<Integer>comparingDouble(row -> -scores[row]).thenComparingInt(row -> row));
+        int[] expected = sorted.subList(0, 50).stream().mapToInt(Integer::intValue).toArray();
+
+        List<Integer> order = new ArrayList<>(sorted);
+        for (int round = 0; round < 10; round++) {
+            Collections.shuffle(order, random);
+            TopK top = new TopK(50);
+            for (int row : order) {
+                top.offer(row, scores[row]);
+            }
+            expectHits("TopK of shuffled ties, round " + round, top.drain(), expected);
+        }
+    }
+
+    // max(3, int(5 * min(1.0, len(query) / 100) * emotion_factor * length_factor))
+    private static void checkTopK() {
+        String hundred = "x".repeat(100);
+        expect("top_k, long distressed query", 11, Retriever.topK(hundred, "distressed", "long"));
+        expect("top_k, short query", 3, Retriever.topK("x".repeat(40), "neutral", "medium"));
+        expect("top_k, content and short", 3, Retriever.topK("x".repeat(90), "content", "short"));
+        expect("top_k, unknown emotion and length", 5, Retriever.topK(hundred + "!", "puzzled", "epic"));
+        // 50 emoji are 100 UTF-16 units but 50 code points for Python's len()
+        expect("top_k counts code points", 5, Retriever.topK("\ud83d\ude00".repeat(50), "distressed", "long"));
+    }
+
+    // ' '.join(text.split()[:10])
+    private static void checkFingerprint() {
+        expect("fingerprint, tabs and NEL", "Hello world again and more",
+                Retriever.fingerprint("  Hello\tworld\u0085again and more  "));
+        expect("fingerprint, ten words", "one two three four five six seven eight nine ten",
+                Retriever.fingerprint("one two three four five six seven eight nine ten eleven twelve"));
+        expect("fingerprint, control separators", "x",
+                Retriever.fingerprint("\n\r\u000b\u000c\u001c\u001d\u001e\u001f x"));
+        expect("fingerprint, no-break and ideographic spaces", "a b c d e",
+                Retriever.fingerprint("a\u00a0b\u2028c\u3000d\u202fe"));
+        expect("fingerprint, zero-width space is not a separator", "x\u200by",
+                Retriever.fingerprint("x\u200by"));
+        expect("fingerprint, empty", "", Retriever.fingerprint(""));
+    }
+
+    // Retrieval over a store whose rows score exactly the given similarity against the first axis
+    private static void checkExport() throws IOException {
+        float[] similarities = {0.9f, 0.8f, 0.75f, 0.7f, 0.6f, 0.3f, 0.29f, -0.5f};
+        String tenWords = "one two three four five six seven eight nine ten";
+        String[] texts = {
+                "I feel  anxious\tall the time",
+                // Same fingerprint as row 0
+                "I feel anxious all the time\u0085",
+                tenWords + " and then some",
+                // Differs only after the tenth word, so it is a duplicate of row 2
+                tenWords + " but ends elsewhere",
+                "Work keeps me up at night\nand\r\nit shows",
+                "back\\slash, a literal \\n and a trailing \\",
+                "Just below the cutoff",
+                "Opposite",
+        };
+
+        Path directory = Files.createTempDirectory("retrieval-check");
+        try {
+            writeExport(directory, similarities, texts);
+            try (EmbeddingStore store = EmbeddingStore.open(directory)) {
+                for (int row = 0; row < texts.length; row++) {
+                    expect("text of row " + row + " after escape and unescape", texts[row], store.text(row));
+                }
+
+                Retriever retriever = new Retriever(new FlatIndex(store));
+                float[] query = new float[DIMENSION];
+                query[0] = 1;
+
+                // Candidates are the top 6; rows 1 and 3 are near-duplicates
+                expectHits("retrieve, top_k 3", retriever.retrieve(query, 3).toArray(new Hit[0]), 0, 2, 4);
+                // Row 5 scores exactly 0.3 and is kept; row 6 is below the cutoff
+                expectHits("retrieve, top_k 5", retriever.retrieve(query, 5).toArray(new Hit[0]), 0, 2, 4, 5);
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void writeExport(Path directory, float[] similarities, String[] texts) throws IOException {
+        ByteBuffer vectors = ByteBuffer.allocate(similarities.length * DIMENSION * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (float similarity : similarities) {
+            vectors.putFloat(similarity).putFloat((float) Math.sqrt(1 - similarity * similarity));
+            for (int i = 2; i < DIMENSION; i++) {
+                vectors.putFloat(0);
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(directory.resolve(EmbeddingStore.VECTORS_FILE))) {
+            out.write(vectors.array());
+        }
+        try (Writer out = Files.newBufferedWriter(directory.resolve(EmbeddingStore.TEXTS_FILE), StandardCharsets.UTF_8)) {
+            for (String text : texts) {
+                out.write(escape(text));
+                out.write('\n');
+            }
+        }
+        Files.write(directory.resolve(EmbeddingStore.MANIFEST_FILE), Arrays.asList(
+                "rows=" + similarities.length,
+                "dimension=" + DIMENSION,
+                "dtype=float32",
+                "byteOrder=little-endian",
+                "normalized=true"), StandardCharsets.UTF_8);
+    }
+
+    // escape() in export_embeddings.py
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static void expectHits(String what, Hit[] hits, int... rows) {
+        int[] actual = Arrays.stream(hits).mapToInt(hit -> hit.row).toArray();
+        if (!Arrays.equals(actual, rows)) {
+            throw new AssertionError(what + ": got rows " + Arrays.toString(actual)
+                    + ", expected " + Arrays.toString(rows));
+        }
+        for (int i = 1; i < hits.length; i++) {
+            if (hits[i].score > hits[i - 1].score) {
+                throw new AssertionError(what + ": not best first: " + Arrays.toString(hits));
+            }
+        }
+    }
+
+    private static void expect(String what, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(what + ": got \"" + actual + "\", expected \"" + expected + "\"");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.warda_retrieval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The selection step of retrieve_enhanced_context in enhanced_rag.py on top of a VectorIndex:
+ * how many results a query gets, the top 2k candidates, the 0.3 similarity cutoff and the
+ * first-ten-words fingerprint that drops near-duplicates. Over a FlatIndex, given the same
+ * query embedding, it picks the same texts in the same order as the backend.
+ */
+public final class Retriever {
+
+    public static final float MIN_SIMILARITY = 0.3f;
+
+    private static final int BASE_RESULTS = 5;
+    private static final int MIN_RESULTS = 3;
+    private static final int FINGERPRINT_WORDS = 10;
+
+    private static final Map<String, Double> EMOTION_FACTORS = new HashMap<>();
+    private static final Map<String, Double> LENGTH_FACTORS = new HashMap<>();
+
+    static {
+        // More results for distressed users
+        EMOTION_FACTORS.put("distressed", 1.5);
+        EMOTION_FACTORS.put("sad", 1.2);
+        EMOTION_FACTORS.put("anxious", 1.2);
+        EMOTION_FACTORS.put("angry", 1.3);
+        EMOTION_FACTORS.put("neutral", 1.0);
+        EMOTION_FACTORS.put("content", 0.9);
+        EMOTION_FACTORS.put("hopeful", 0.9);
+
+        LENGTH_FACTORS.put("short", 0.8);
+        LENGTH_FACTORS.put("medium", 1.0);
+        LENGTH_FACTORS.put("long", 1.5);
+    }
+
+    private final VectorIndex index;
+
+    public Retriever(VectorIndex index) {
+        this.index = index;
+    }
+
+    // top_k for a query, from its length and the response style
+    public static int topK(String query, String emotion, String length) {
+        // Python's len() counts code points
+        double complexity = Math.min(1.0, query.codePointCount(0, query.length()) / 100.0);
+        double emotionFactor = EMOTION_FACTORS.getOrDefault(emotion, 1.0);
+        double lengthFactor = LENGTH_FACTORS.getOrDefault(length, 1.0);
+        return Math.max(MIN_RESULTS, (int) (BASE_RESULTS * complexity * emotionFactor * lengthFactor));
+    }
+
+    // Up to topK distinct rows at or above MIN_SIMILARITY, best first
+    public List<Hit> retrieve(float[] queryEmbedding, int topK) {
+        EmbeddingStore store = index.store();
+        Hit[] candidates = index.search(queryEmbedding, Math.min(topK * 2, store.size()));
+
+        List<Hit> selected = new ArrayList<>();
+        Set<String> seenFingerprints = new HashSet<>();
+        for (Hit candidate : candidates) {
+            if (candidate.score < MIN_SIMILARITY) {
+                continue;
+            }
+            if (!seenFingerprints.add(fingerprint(store.text(candidate.row)))) {
+                continue;
+            }
+            selected.add(candidate);
+        }
+
+        // Candidates come best first, so this is the backend's sort and slice
+        return selected.size() > topK ? new ArrayList<>(selected.subList(0, topK)) : selected;
+    }
+
+    // ' '.join(text.split()[:10])
+    static String fingerprint(String text) {
+        StringBuilder fingerprint = new StringBuilder();
+        int words = 0;
+        int i = 0;
+        int length = text.length();
+        while (words < FINGERPRINT_WORDS) {
+            while (i < length && isPythonSpace(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && !isPythonSpace(text.charAt(i))) {
+                i++;
+            }
+            if (words++ > 0) {
+                fingerprint.append(' ');
+            }
+            fingerprint.append(text, start, i);
+        }
+        return fingerprint.toString();
+    }
+
+    // What str.split() splits on
+    private static boolean isPythonSpace(char c) {
+        return Character.isWhitespace(c) || Character.isSpaceChar(c) || c == '\u0085';
+    }
+}
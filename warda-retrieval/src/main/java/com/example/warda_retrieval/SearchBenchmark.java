@@ -0,0 +1,237 @@
+package com.example.warda_retrieval;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Throughput and latency of FlatIndex over an export of embeddings.pt, at several thread
+ * counts. Each thread runs whole queries back to back for a fixed time; the report gives
+ * queries per second over all threads and the median and 99th percentile latency of a query.
+ *
+ * Before timing anything, the results are checked against the backend's: if the export has
+ * check queries (export_embeddings.py --check), every query's top k must match what
+ * util.pytorch_cos_sim and torch.topk returned, up to float rounding.
+ *
+ * Usage: SearchBenchmark &lt;export dir&gt; [threads=1,2,4,8] [seconds=5] [k=10]
+ */
+public final class SearchBenchmark {
+
+    static final String QUERIES_FILE = "queries.f32";
+    private static final String EXPECTED_FILE = "expected.tsv";
+
+    // Scores may differ in the last bits: the sums run in another order than torch's
+    private static final float TOLERANCE = 1e-5f;
+    private static final int SAMPLED_QUERIES = 200;
+    private static final float SAMPLE_NOISE = 0.05f;
+    private static final long WARMUP_NANOS = 3_000_000_000L;
+
+    // Keeps results observable so the JIT cannot drop the work
+    private static volatile int blackhole;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SearchBenchmark <export dir> [threads=1,2,4,8] [seconds=5] [k=10]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        int[] threadCounts = {1, 2, 4, 8};
+        int seconds = 5;
+        int k = 10;
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            switch (option[0]) {
+                case "threads":
+                    threadCounts = Arrays.stream(option[1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "seconds":
+                    seconds = Integer.parseInt(option[1]);
+                    break;
+                case "k":
+                    k = Integer.parseInt(option[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (EmbeddingStore store = EmbeddingStore.open(directory)) {
+            FlatIndex index = new FlatIndex(store);
+            System.out.println(String.format(Locale.US, "%d rows x %d floats (%.1f MB mapped), %s",
+                    store.size(), store.dimension(),
+                    store.size() * (double) store.dimension() * Float.BYTES / (1 << 20), VectorMath.SPECIES));
+
+            float[][] queries;
+            if (Files.isRegularFile(directory.resolve(QUERIES_FILE))
+                    && Files.isRegularFile(directory.resolve(EXPECTED_FILE))) {
+                queries = readQueries(directory.resolve(QUERIES_FILE), store.dimension());
+                checkAgainstBackend(index, queries, directory.resolve(EXPECTED_FILE));
+            } else {
+                System.out.println("No check queries in the export; using sampled rows, unchecked");
+                queries = sampleQueries(store);
+            }
+
+            final int topK = k;
+            long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+            for (int i = 0; System.nanoTime() < warmupEnd; i++) {
+                blackhole = index.search(queries[i % queries.length], topK)[0].row;
+            }
+
+            System.out.println(String.format(Locale.US, "%-8s %10s %10s %10s", "threads", "QPS", "p50 ms", "p99 ms"));
+            for (int threads : threadCounts) {
+                long[] latencies = run(index, queries, topK, threads, seconds * 1_000_000_000L);
+                long elapsed = latencies[latencies.length - 1];
+                long[] sorted = Arrays.copyOf(latencies, latencies.length - 1);
+                Arrays.sort(sorted);
+                System.out.println(String.format(Locale.US, "%-8d %10.1f %10.3f %10.3f",
+                        threads, sorted.length * 1e9 / elapsed,
+                        percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6));
+            }
+        }
+    }
+
+    // Latency of every query run, followed by the wall time of the whole run
+    private static long[] run(VectorIndex index, float[][] queries, int k, int threads, long durationNanos)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<long[]> perThread = new ArrayList<>();
+        int[] counts = new int[threads];
+        Thread[] workers = new Thread[threads];
+        long[] startedAt = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            perThread.add(new long[1024]);
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long[] latencies = perThread.get(id);
+                int count = 0;
+                int sink = 0;
+                long end = startedAt[0] + durationNanos;
+                // Threads start at different queries so they do not walk in lockstep
+                for (int i = id * queries.length / threads; ; i++) {
+                    long before = System.nanoTime();
+                    if (before >= end) {
+                        break;
+                    }
+                    sink += index.search(queries[i % queries.length], k)[0].row;
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - before;
+                }
+                perThread.set(id, latencies);
+                counts[id] = count;
+                blackhole = sink;
+            }, "search-" + t);
+            workers[t].start();
+        }
+
+        startedAt[0] = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startedAt[0];
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total + 1];
+        int at = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(perThread.get(t), 0, all, at, counts[t]);
+            at += counts[t];
+        }
+        all[total] = elapsed;
+        return all;
+    }
+
+    static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    // expected.tsv rows are query, rank, row, score
+    private static void checkAgainstBackend(FlatIndex index, float[][] queries, Path expectedFile) throws IOException {
+        List<List<Hit>> expected = new ArrayList<>();
+        for (int q = 0; q < queries.length; q++) {
+            expected.add(new ArrayList<>());
+        }
+        try (BufferedReader reader = Files.newBufferedReader(expectedFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t");
+                expected.get(Integer.parseInt(columns[0]))
+                        .add(new Hit(Integer.parseInt(columns[2]), Float.parseFloat(columns[3])));
+            }
+        }
+
+        int ties = 0;
+        for (int q = 0; q < queries.length; q++) {
+            List<Hit> backend = expected.get(q);
+            Hit[] hits = index.search(queries[q], backend.size());
+            if (hits.length != backend.size()) {
+                throw new AssertionError("Query " + q + ": " + hits.length + " results, backend has " + backend.size());
+            }
+            for (int rank = 0; rank < hits.length; rank++) {
+                Hit want = backend.get(rank);
+                if (Math.abs(hits[rank].score - want.score) > TOLERANCE) {
+                    throw new AssertionError("Query " + q + " rank " + rank + ": got " + hits[rank]
+                            + ", backend has " + want);
+                }
+                // Another row with the same score is a tie that rounding broke the other way
+                if (hits[rank].row != want.row) {
+                    ties++;
+                }
+            }
+        }
+        System.out.println(String.format(Locale.US,
+                "%d check queries agree with the backend's top %d (%d near-tie swaps)",
+                queries.length, expected.get(0).size(), ties));
+    }
+
+    static float[][] readQueries(Path path, int dimension) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        int count = bytes.remaining() / (dimension * Float.BYTES);
+        float[][] queries = new float[count][dimension];
+        for (float[] query : queries) {
+            bytes.asFloatBuffer().get(query);
+            bytes.position(bytes.position() + dimension * Float.BYTES);
+        }
+        return queries;
+    }
+
+    // Stored rows with some noise, as export_embeddings.py makes its check queries
+    static float[][] sampleQueries(EmbeddingStore store) {
+        Random random = new Random(42);
+        float[][] queries = new float[SAMPLED_QUERIES][];
+        double scale = SAMPLE_NOISE / Math.sqrt(store.dimension());
+        for (int q = 0; q < queries.length; q++) {
+            float[] query = store.vector(random.nextInt(store.size()));
+            for (int i = 0; i < query.length; i++) {
+                query[i] += (float) (scale * random.nextGaussian());
+            }
+            queries[q] = query;
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.warda_retrieval;
+
+/**
+ * The k best (row, score) pairs seen so far, kept in a min-heap of primitives so offering a
+ * candidate that does not make the cut costs one comparison and allocates nothing.
+ *
+ * Equal scores rank the lower row first, so results do not depend on scan order.
+ */
+final class TopK {
+
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive, got " + k);
+        }
+        rows = new int[k];
+        scores = new float[k];
+    }
+
+    void offer(int row, float score) {
+        if (size < rows.length) {
+            rows[size] = row;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (worse(rows[0], scores[0], row, score)) {
+            rows[0] = row;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    boolean isFull() {
+        return size == rows.length;
+    }
+
+    // Lowest score kept; only meaningful once something has been offered
+    float worstScore() {
+        return scores[0];
+    }
+
+    // Best first; empties the heap
+    Hit[] drain() {
+        Hit[] hits = new Hit[size];
+        for (int i = size - 1; i >= 0; i--) {
+            hits[i] = new Hit(rows[0], scores[0]);
+            size--;
+            rows[0] = rows[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return hits;
+    }
+
+    // Whether (rowA, scoreA) ranks below (rowB, scoreB)
+    private static boolean worse(int rowA, float scoreA, int rowB, float scoreB) {
+        return scoreA < scoreB || (scoreA == scoreB && rowA > rowB);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(rows[i], scores[i], rows[parent], scores[parent])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int child = left;
+            int right = left + 1;
+            if (right < size && worse(rows[right], scores[right], rows[left], scores[left])) {
+                child = right;
+            }
+            if (!worse(rows[child], scores[child], rows[i], scores[i])) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.warda_retrieval;
+
+/**
+ * Top-k cosine search over the rows of an EmbeddingStore, exact (FlatIndex) or approximate
+ * (HnswIndex). Implementations are safe to search from many threads at once.
+ */
+public interface VectorIndex {
+
+    EmbeddingStore store();
+
+    // The k most similar rows, best first; the query need not be normalized
+    Hit[] search(float[] query, int k);
+}
@@ -0,0 +1,67 @@
+package com.example.warda_retrieval;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Dot products between a query on the heap and rows of the memory-mapped store, using the
+ * widest float vectors the CPU has (8 lanes with AVX2, 16 with AVX-512).
+ *
+ * Needs {@code --add-modules jdk.incubator.vector}, at compile time and at run time.
+ */
+final class VectorMath {
+
+    static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorMath() {
+    }
+
+    // query . row, where the row starts at byteOffset in the little-endian buffer
+    static float dot(float[] query, ByteBuffer vectors, long byteOffset) {
+        int dimension = query.length;
+        int lanes = SPECIES.length();
+        int base = (int) byteOffset;
+
+        // Two accumulators hide the latency of the fused multiply-adds
+        FloatVector first = FloatVector.zero(SPECIES);
+        FloatVector second = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = dimension - 2 * lanes; i <= bound; i += 2 * lanes) {
+            first = FloatVector.fromByteBuffer(SPECIES, vectors, base + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN)
+                    .fma(FloatVector.fromArray(SPECIES, query, i), first);
+            second = FloatVector.fromByteBuffer(SPECIES, vectors, base + (i + lanes) * Float.BYTES, ByteOrder.LITTLE_ENDIAN)
+                    .fma(FloatVector.fromArray(SPECIES, query, i + lanes), second);
+        }
+        for (int bound = SPECIES.loopBound(dimension); i < bound; i += lanes) {
+            first = FloatVector.fromByteBuffer(SPECIES, vectors, base + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN)
+                    .fma(FloatVector.fromArray(SPECIES, query, i), first);
+        }
+        float sum = first.add(second).reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            sum += query[i] * vectors.getFloat(base + i * Float.BYTES);
+        }
+        return sum;
+    }
+
+    // row a . row b, both in the little-endian buffer
+    static float dot(ByteBuffer vectors, long offsetA, long offsetB, int dimension) {
+        int lanes = SPECIES.length();
+        int a = (int) offsetA;
+        int b = (int) offsetB;
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(dimension); i < bound; i += lanes) {
+            sum = FloatVector.fromByteBuffer(SPECIES, vectors, a + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN)
+                    .fma(FloatVector.fromByteBuffer(SPECIES, vectors, b + i * Float.BYTES, ByteOrder.LITTLE_ENDIAN), sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < dimension; i++) {
+            result += vectors.getFloat(a + i * Float.BYTES) * vectors.getFloat(b + i * Float.BYTES);
+        }
+        return result;
+    }
+}